@@ -0,0 +1,313 @@
+package privacyguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Content-Addressed Cache of Privacy Attack Results
+ *
+ * A privacy evaluation is identified by the SHA-256 of its inputs: the bytes
+ * of the original and synthetic files (streamed, not parsed) and the attack
+ * parameters that affect the results (attack.reid.maxRank, sampleWidth,
+ * sampleConfidence, attack.linkage.levels, trials, the attack.dcr settings
+ * and evaluation.random_seed; the ReID search mode, deduplication and thread
+ * count give identical results and are left out). The result of an evaluation is stored under that key as
+ * "<key>.pgar", so an unchanged evaluation is answered from the cache and a
+ * changed input simply misses.
+ *
+ * Cache file format (little-endian, version 3; the version is also part of
+ * the key, so results of earlier attack code are not reused):
+ *   int magic "PGAR", int version, byte[32] key, int numRanks, int[numRanks] ranks,
+ *   int numReIdStatistics, numReIdStatistics x (int nameLength, byte[] name (UTF-8), double value),
+ *   int numLinkageStatistics, likewise, int numDcrStatistics, likewise,
+ *   double reIdRisk, double linkageRisk,
+ *   long CRC32 of all preceding bytes
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class AttackResultCache {
+
+    public static final String EXTENSION = ".pgar";
+
+    private static final int MAGIC = 0x50474152;   // "PGAR"
+    private static final int VERSION = 3;
+    private static final int KEY_BYTES = 32;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    private static final String[] RESULT_PARAMETERS = {
+            "attack.reid.maxRank", "attack.reid.sampleWidth", "attack.reid.sampleConfidence",
+            "attack.linkage.levels", "attack.linkage.trials", "attack.dcr.enabled", "attack.dcr.search",
+            "attack.dcr.trees", "attack.dcr.leafSize", "attack.dcr.candidates", "attack.dcr.recallSample",
+            "evaluation.random_seed"};
+
+    // File digests of this session, valid while size and modification time are unchanged
+    private static final Map<String, FileDigest> DIGESTS = new HashMap<>();
+
+    /**
+     * Result of one privacy evaluation (what the results CSV is written from)
+     */
+    public static class Result {
+        public final int[] ranks;
+        public final LinkedHashMap<String, Double> reIdStatistics;
+        public final LinkedHashMap<String, Double> linkageStatistics;
+        public final LinkedHashMap<String, Double> dcrStatistics;     // empty when DCR is off
+        public final double reIdRisk;
+        public final double linkageRisk;
+
+        public Result(int[] ranks, LinkedHashMap<String, Double> reIdStatistics,
+                      LinkedHashMap<String, Double> linkageStatistics, LinkedHashMap<String, Double> dcrStatistics,
+                      double reIdRisk, double linkageRisk) {
+            this.ranks = ranks;
+            this.reIdStatistics = reIdStatistics;
+            this.linkageStatistics = linkageStatistics;
+            this.dcrStatistics = dcrStatistics;
+            this.reIdRisk = reIdRisk;
+            this.linkageRisk = linkageRisk;
+        }
+
+        public double combinedRisk() {
+            return (reIdRisk + linkageRisk) / 2.0;
+        }
+    }
+
+    /**
+     * Hex SHA-256 of a dataset file's bytes (the compressed or archived file
+     * when the dataset is stored that way), streamed in blocks. Digests are
+     * remembered for the session while the file keeps its size and
+     * modification time.
+     */
+    public static String digest(String filePath) throws IOException {
+        File file = new File(FastArffLoader.resolveDatasetPath(filePath));
+        String path = file.getCanonicalPath();
+        long size = file.length();
+        long modified = file.lastModified();
+
+        synchronized (DIGESTS) {
+            FileDigest known = DIGESTS.get(path);
+            if (known != null && known.size == size && known.modified == modified) {
+                return known.digest;
+            }
+        }
+
+        MessageDigest sha = sha256();
+        byte[] buffer = new byte[READ_BUFFER_BYTES];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                sha.update(buffer, 0, read);
+            }
+        }
+        String digest = hex(sha.digest());
+
+        synchronized (DIGESTS) {
+            DIGESTS.put(path, new FileDigest(size, modified, digest));
+        }
+        return digest;
+    }
+
+    /**
+     * Cache key of an evaluation: SHA-256 of both file digests and the result parameters
+     */
+    public static String key(String originalDigest, String syntheticDigest) {
+        StringBuilder inputs = new StringBuilder();
+        inputs.append("version=").append(VERSION).append('\n');
+        inputs.append("original=").append(originalDigest).append('\n');
+        inputs.append("synthetic=").append(syntheticDigest).append('\n');
+        for (String parameter : RESULT_PARAMETERS) {
+            inputs.append(parameter).append('=').append(ConfigLoader.getProperty(parameter, "")).append('\n');
+        }
+        return hex(sha256().digest(inputs.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Cache file of a key in a directory
+     */
+    public static File cacheFile(String directory, String key) {
+        return new File(directory, key + EXTENSION);
+    }
+
+    /**
+     * Load a cached result
+     *
+     * @return The result, or null when there is no valid cache file for the key
+     */
+    public static Result load(String directory, String key) {
+        File cache = cacheFile(directory, key);
+        if (!cache.isFile()) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(cache.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < 8 + KEY_BYTES + Long.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, buffer.limit() - Long.BYTES);
+            if (buffer.getLong(buffer.limit() - Long.BYTES) != crc.getValue()) {
+                return null;
+            }
+
+            byte[] storedKey = new byte[KEY_BYTES];
+            buffer.get(storedKey);
+            if (!hex(storedKey).equals(key)) {
+                return null;
+            }
+
+            int[] ranks = new int[buffer.getInt()];
+            buffer.asIntBuffer().get(ranks);
+            buffer.position(buffer.position() + ranks.length * Integer.BYTES);
+            LinkedHashMap<String, Double> reIdStatistics = readStatistics(buffer);
+            LinkedHashMap<String, Double> linkageStatistics = readStatistics(buffer);
+            LinkedHashMap<String, Double> dcrStatistics = readStatistics(buffer);
+            double reIdRisk = buffer.getDouble();
+            double linkageRisk = buffer.getDouble();
+            return new Result(ranks, reIdStatistics, linkageStatistics, dcrStatistics, reIdRisk, linkageRisk);
+        } catch (Exception e) {
+            System.out.println("  (ignoring unreadable result cache " + cache.getName() + ": " + e + ")");
+            return null;
+        }
+    }
+
+    /**
+     * Store a result under its key. The file is written under a temporary
+     * name and moved into place, so readers never see a partial cache.
+     */
+    public static void store(String directory, String key, Result result) throws IOException {
+        new File(directory).mkdirs();
+        File cache = cacheFile(directory, key);
+        Path temp = Paths.get(cache.getPath() + ".tmp" + ProcessHandle.current().pid());
+
+        byte[][] reIdNames = names(result.reIdStatistics);
+        byte[][] linkageNames = names(result.linkageStatistics);
+        byte[][] dcrNames = names(result.dcrStatistics);
+        long length = 8 + KEY_BYTES + 4 + (long) result.ranks.length * Integer.BYTES
+                + statisticsLength(reIdNames) + statisticsLength(linkageNames) + statisticsLength(dcrNames)
+                + 2 * Double.BYTES + Long.BYTES;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Result too large to cache");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        buffer.put(unhex(key));
+        buffer.putInt(result.ranks.length);
+        buffer.asIntBuffer().put(result.ranks);
+        buffer.position(buffer.position() + result.ranks.length * Integer.BYTES);
+        writeStatistics(buffer, reIdNames, result.reIdStatistics);
+        writeStatistics(buffer, linkageNames, result.linkageStatistics);
+        writeStatistics(buffer, dcrNames, result.dcrStatistics);
+        buffer.putDouble(result.reIdRisk).putDouble(result.linkageRisk);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        try {
+            Files.move(temp, cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // ==================== HELPERS ====================
+
+    private static byte[][] names(Map<String, Double> statistics) {
+        byte[][] names = new byte[statistics.size()][];
+        int i = 0;
+        for (String name : statistics.keySet()) {
+            names[i++] = name.getBytes(StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    private static long statisticsLength(byte[][] names) {
+        long length = Integer.BYTES;
+        for (byte[] name : names) {
+            length += Integer.BYTES + name.length + Double.BYTES;
+        }
+        return length;
+    }
+
+    private static void writeStatistics(ByteBuffer buffer, byte[][] names, Map<String, Double> statistics) {
+        buffer.putInt(names.length);
+        int i = 0;
+        for (double value : statistics.values()) {
+            buffer.putInt(names[i].length).put(names[i]).putDouble(value);
+            i++;
+        }
+    }
+
+    private static LinkedHashMap<String, Double> readStatistics(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        LinkedHashMap<String, Double> statistics = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            statistics.put(new String(name, StandardCharsets.UTF_8), buffer.getDouble());
+        }
+        return statistics;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);   // every JRE provides SHA-256
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] unhex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static class FileDigest {
+        final long size;
+        final long modified;
+        final String digest;
+
+        FileDigest(long size, long modified, String digest) {
+            this.size = size;
+            this.modified = modified;
+            this.digest = digest;
+        }
+    }
+}
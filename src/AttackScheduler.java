@@ -0,0 +1,197 @@
+package privacyguard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide Scheduler for Privacy Attack Workloads
+ *
+ * One work-stealing pool runs every attack computation: whole evaluations
+ * submitted by PrivacyAttackEvaluator as well as the blocks and trials the
+ * attacks split their work into, so concurrent evaluations share the cores
+ * instead of each starting its own threads. The pool's parallelism is the
+ * global cap (attack.threads, 0 = all cores).
+ *
+ * Evaluations declare an estimated heap footprint and are only admitted while
+ * the footprints of the running ones fit under the budget (attack.memoryMB,
+ * 0 = three quarters of the maximum heap); one evaluation is always admitted,
+ * however large, so nothing waits forever.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class AttackScheduler {
+
+    private static ForkJoinPool pool;
+    private static long reservedBytes;
+    private static int running;
+
+    /**
+     * The shared pool (created on first use)
+     */
+    public static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            int threads = ConfigLoader.getIntProperty("attack.threads", 0);
+            pool = new ForkJoinPool((threads <= 0) ? Runtime.getRuntime().availableProcessors() : threads);
+        }
+        return pool;
+    }
+
+    public static int parallelism() {
+        return pool().getParallelism();
+    }
+
+    /**
+     * Heap budget for admitted evaluations
+     */
+    public static long budgetBytes() {
+        long megabytes = ConfigLoader.getIntProperty("attack.memoryMB", 0);
+        if (megabytes <= 0) {
+            return Runtime.getRuntime().maxMemory() / 4 * 3;
+        }
+        return megabytes * 1024 * 1024;
+    }
+
+    /**
+     * Approximate heap use of evaluating the attacks on m synthetic records
+     * against n shared original records with d attributes: the loaded
+     * synthetic dataset, its matrices (ReID, DCR) and centred copy, the
+     * linkage columns and index, the per-record results, one distance
+     * buffer pair per thread, and the original-side search indexes
+     * (indexBytes). The indexes are built once per original dataset and
+     * shared, but every evaluation is charged for them, which keeps admission
+     * on the safe side while they are being built.
+     */
+    public static long estimateBytes(long n, long m, long d, long indexBytes) {
+        long syntheticDataset = m * (8 * (d + 1) + 64);
+        long matrices = 4 * 8 * m * d;
+        long perRecord = 200 * m;
+        long buffers = 16 * n * parallelism();
+        return syntheticDataset + matrices + perRecord + buffers + indexBytes;
+    }
+
+    /**
+     * Submit an evaluation once its estimated footprint fits under the budget.
+     * Blocks the calling thread (which must not be a worker of the pool) until
+     * the evaluation is admitted; the reservation is released when it ends.
+     */
+    public static <T> Future<T> submit(long estimatedBytes, Callable<T> task) throws InterruptedException {
+        synchronized (AttackScheduler.class) {
+            long budget = budgetBytes();
+            while (running > 0 && reservedBytes + estimatedBytes > budget) {
+                AttackScheduler.class.wait();
+            }
+            reservedBytes += estimatedBytes;
+            running++;
+        }
+        try {
+            return pool().submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    release(estimatedBytes);
+                }
+            });
+        } catch (RuntimeException e) {
+            release(estimatedBytes);
+            throw e;
+        }
+    }
+
+    /**
+     * Run 'lanes' copies of a worker on the shared pool and wait for all of
+     * them (workers usually pull their work from a shared counter, see forEachBlock)
+     */
+    public static void invokeLanes(int lanes, Runnable worker) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int lane = 0; lane < lanes; lane++) {
+            futures.add(pool().submit(worker));
+        }
+        for (Future<?> future : futures) {
+            await(future);
+        }
+    }
+
+    /**
+     * Process blocks [start, start + blockSize) of [from, to) on at most 'lanes'
+     * workers of the shared pool
+     */
+    public static void forEachBlock(int from, int to, int blockSize, int lanes, BlockTask task) {
+        AtomicInteger next = new AtomicInteger(from);
+        int numBlocks = (to - from + blockSize - 1) / blockSize;
+        invokeLanes(Math.max(1, Math.min(lanes, numBlocks)), () -> {
+            int start;
+            while ((start = next.getAndAdd(blockSize)) < to) {
+                task.run(start, Math.min(to, start + blockSize));
+            }
+        });
+    }
+
+    /**
+     * Pool for nested parallel work such as parsing or writing a dataset: the
+     * pool of the calling thread when it is a pool worker (e.g. inside a
+     * scheduled attack), so the nested work shares that pool's threads instead
+     * of oversubscribing the cores; otherwise a new pool of 'threads' workers.
+     * Release it with releaseNestedPool.
+     */
+    public static ForkJoinPool nestedPool(int threads) {
+        ForkJoinPool current = ForkJoinTask.getPool();
+        return (current != null) ? current : new ForkJoinPool(Math.max(1, threads));
+    }
+
+    /**
+     * Shut down a pool from nestedPool unless it is the caller's own pool
+     */
+    public static void releaseNestedPool(ForkJoinPool pool) {
+        if (pool != ForkJoinTask.getPool()) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Wait for a task; rethrow its failure as-is
+     */
+    public static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Privacy attack interrupted", e);
+        }
+    }
+
+    /**
+     * One-line summary of the scheduler state
+     */
+    public static synchronized String statistics() {
+        return String.format("%d threads, %d evaluations running, %.1f MB of %.1f MB reserved",
+                parallelism(), running, reservedBytes / (1024.0 * 1024.0), budgetBytes() / (1024.0 * 1024.0));
+    }
+
+    private static synchronized void release(long estimatedBytes) {
+        reservedBytes -= estimatedBytes;
+        running--;
+        AttackScheduler.class.notifyAll();
+    }
+
+    /**
+     * Work on the range [start, end)
+     */
+    public interface BlockTask {
+        void run(int start, int end);
+    }
+}
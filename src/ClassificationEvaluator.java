@@ -6,7 +6,6 @@ import weka.classifiers.bayes.NaiveBayes;
 import weka.classifiers.trees.J48;
 import weka.classifiers.trees.RandomForest;
 import weka.core.Instances;
-import weka.core.converters.ConverterUtils.DataSource;
 
 import java.io.*;
 import java.util.*;
@@ -98,7 +97,7 @@ public class ClassificationEvaluator {
                 }
 
                 // Check if file exists
-                if (!new File(dataFile).exists()) {
+                if (!FastArffLoader.datasetExists(dataFile)) {
                     System.out.println("  ✗ Data file not found: " + dataFile);
                     System.out.println("  ⊳ Skipping method: " + method);
                     System.out.println();
@@ -232,8 +231,7 @@ public class ClassificationEvaluator {
      * Load dataset from file
      */
     private static Instances loadDataset(String filePath) throws Exception {
-        DataSource source = new DataSource(filePath);
-        return source.getDataSet();
+        return DatasetCache.load(filePath);
     }
 
     /**
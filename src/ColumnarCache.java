@@ -0,0 +1,251 @@
+package privacyguard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import weka.core.Instances;
+
+/**
+ * Binary Columnar Dataset Cache
+ *
+ * The first time an ARFF file is parsed, its columns are written next to it as
+ * "<file>.pgc". Later loads memory-map the cache instead of parsing the text,
+ * so concurrent JVMs share the same pages of the OS page cache. A cache is used
+ * only while the ARFF file keeps the size, modification time and fingerprint
+ * (CRC32 of its first and last megabyte) recorded in it; otherwise it is rebuilt.
+ *
+ * Cache file format (little-endian, version 1):
+ *   int magic "PGCC", int version, long sourceSize, long sourceModified,
+ *   long sourceFingerprint, int headerLength, byte[headerLength] ARFF header (UTF-8),
+ *   long headerChecksum, int numRows, int numAttributes, padding to 8 bytes,
+ *   per attribute: double[numRows], or int[numRows] padded to 8 bytes for a nominal class
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class ColumnarCache {
+
+    public static final String EXTENSION = ".pgc";
+
+    private static final int MAGIC = 0x50474343;   // "PGCC"
+    private static final int VERSION = 1;
+    private static final int FINGERPRINT_BYTES = 1 << 20;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final int FIXED_HEADER_BYTES = 36;
+
+    /**
+     * Cache file belonging to an ARFF file
+     */
+    public static File cacheFile(String arffPath) {
+        return new File(arffPath + EXTENSION);
+    }
+
+    /**
+     * Load the cached columns of an ARFF file
+     *
+     * @return The cached data, or null when there is no valid cache
+     */
+    public static FastArffLoader.ColumnarData load(String arffPath) {
+        File cache = cacheFile(arffPath);
+        if (!cache.isFile()) {
+            return null;
+        }
+
+        long startTime = System.nanoTime();
+        try (RandomAccessFile file = new RandomAccessFile(cache, "r");
+             FileChannel channel = file.getChannel()) {
+            long cacheSize = channel.size();
+            ByteBuffer fixed = read(channel, 0, FIXED_HEADER_BYTES);
+            if (fixed.getInt() != MAGIC || fixed.getInt() != VERSION) {
+                return null;
+            }
+
+            File source = new File(arffPath);
+            if (fixed.getLong() != source.length()
+                    || fixed.getLong() != source.lastModified()
+                    || fixed.getLong() != fingerprint(source)) {
+                return null;
+            }
+
+            int headerLength = fixed.getInt();
+            if (headerLength < 0 || FIXED_HEADER_BYTES + (long) headerLength + 16 > cacheSize) {
+                return null;
+            }
+            byte[] headerBytes = new byte[headerLength];
+            read(channel, FIXED_HEADER_BYTES, headerLength).get(headerBytes);
+
+            ByteBuffer layout = read(channel, FIXED_HEADER_BYTES + (long) headerLength, 16);
+            if (layout.getLong() != checksum(headerBytes)) {
+                return null;
+            }
+            int numRows = layout.getInt();
+            int numAttributes = layout.getInt();
+
+            Instances header = new Instances(new StringReader(new String(headerBytes, StandardCharsets.UTF_8)));
+            if (header.numAttributes() != numAttributes || numRows < 0) {
+                return null;
+            }
+
+            FastArffLoader.ColumnarData data = new FastArffLoader.ColumnarData(header, numRows);
+            long position = align(FIXED_HEADER_BYTES + (long) headerLength + 16);
+            if (position + dataLength(data) != cacheSize) {
+                return null;
+            }
+
+            for (int a = 0; a < numAttributes; a++) {
+                long length = columnLength(data, a);
+                if (length == 0) continue;
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                mapped.order(ByteOrder.LITTLE_ENDIAN);
+                if (data.columns[a] != null) {
+                    mapped.asDoubleBuffer().get(data.columns[a]);
+                } else {
+                    mapped.asIntBuffer().get(data.classValues);
+                }
+                position += length;
+            }
+
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.println(String.format("  ✓ Loaded %s from columnar cache: %d rows in %.2f s",
+                    source.getName(), numRows, seconds));
+            return data;
+        } catch (Exception e) {
+            System.out.println("  (ignoring unreadable cache " + cache.getName() + ": " + e + ")");
+            return null;
+        }
+    }
+
+    /**
+     * Write the cache of an ARFF file. The file is written under a temporary
+     * name and moved into place, so readers never see a partial cache.
+     */
+    public static void store(String arffPath, FastArffLoader.ColumnarData data) throws IOException {
+        File source = new File(arffPath);
+        File cache = cacheFile(arffPath);
+        Path temp = Paths.get(cache.getPath() + ".tmp" + ProcessHandle.current().pid());
+
+        byte[] headerBytes = new Instances(data.header, 0).toString().getBytes(StandardCharsets.UTF_8);
+        long sourceSize = source.length();
+        long sourceModified = source.lastModified();
+        long sourceFingerprint = fingerprint(source);
+
+        // The temporary file is removed whether the write or the move fails
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(Math.max(WRITE_BUFFER_BYTES, headerBytes.length + 64))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION);
+                buffer.putLong(sourceSize).putLong(sourceModified).putLong(sourceFingerprint);
+                buffer.putInt(headerBytes.length).put(headerBytes);
+                buffer.putLong(checksum(headerBytes));
+                buffer.putInt(data.numRows).putInt(data.header.numAttributes());
+                while (buffer.position() % 8 != 0) {
+                    buffer.put((byte) 0);
+                }
+
+                for (int a = 0; a < data.header.numAttributes(); a++) {
+                    if (data.columns[a] != null) {
+                        for (double value : data.columns[a]) {
+                            if (buffer.remaining() < Double.BYTES) flush(channel, buffer);
+                            buffer.putDouble(value);
+                        }
+                    } else if (data.classValues != null) {
+                        for (int value : data.classValues) {
+                            if (buffer.remaining() < Integer.BYTES) flush(channel, buffer);
+                            buffer.putInt(value);
+                        }
+                        if (data.numRows % 2 != 0) {
+                            if (buffer.remaining() < Integer.BYTES) flush(channel, buffer);
+                            buffer.putInt(0);
+                        }
+                    }
+                }
+                flush(channel, buffer);
+            }
+
+            try {
+                Files.move(temp, cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // ==================== HELPERS ====================
+
+    /**
+     * CRC32 of the first and last megabyte of a file
+     */
+    private static long fingerprint(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int head = (int) Math.min(size, FINGERPRINT_BYTES);
+            crc.update(read(channel, 0, head));
+            if (size > head) {
+                int tail = (int) Math.min(size - head, FINGERPRINT_BYTES);
+                crc.update(read(channel, size - tail, tail));
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static long columnLength(FastArffLoader.ColumnarData data, int attributeIndex) {
+        if (data.columns[attributeIndex] != null) {
+            return (long) data.numRows * Double.BYTES;
+        }
+        return (data.classValues != null) ? align((long) data.numRows * Integer.BYTES) : 0;
+    }
+
+    private static long dataLength(FastArffLoader.ColumnarData data) {
+        long length = 0;
+        for (int a = 0; a < data.header.numAttributes(); a++) {
+            length += columnLength(data, a);
+        }
+        return length;
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+}
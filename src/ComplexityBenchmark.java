@@ -1,7 +1,6 @@
 package privacyguard;
 
 import weka.core.Instances;
-import weka.core.converters.ArffLoader;
 import weka.filters.Filter;
 import weka.filters.unsupervised.instance.Resample;
 
@@ -195,9 +194,7 @@ public class ComplexityBenchmark {
      * Load dataset from ARFF file
      */
     private static Instances loadDataset(String path) throws Exception {
-        ArffLoader loader = new ArffLoader();
-        loader.setFile(new File(path));
-        Instances data = loader.getDataSet();
+        Instances data = FastArffLoader.loadDataset(path);
         data.setClassIndex(data.numAttributes() - 1);
         return data;
     }
@@ -245,6 +242,7 @@ public class ComplexityBenchmark {
                 // Scale clusters based on data percentage: 10%->100, 20%->200, ..., 100%->1000
                 int numClusters = percentage * 10;
                 KMeansBaseline kmeans = new KMeansBaseline(numClusters);
+                kmeans.setEngine(ConfigLoader.getProperty("kmeans.engine", KMeansBaseline.ENGINE_WEKA));
                 kmeans.generateSyntheticData(dataCopy);
                 break;
 
@@ -49,6 +49,34 @@ public class ConfigLoader {
         properties.setProperty("privacyguard.beta_percent", "5");
         properties.setProperty("vwc.betaPercentage", "5");
         properties.setProperty("vwc.maxClusterSize", "5");
+        properties.setProperty("privacyguard.threads", "1");
+        properties.setProperty("privacyguard.engine", "weka");
+        properties.setProperty("privacyguard.lowCardinality", "16");
+        properties.setProperty("kmeans.engine", "weka");
+        properties.setProperty("kanonymity.sweep", "");
+        properties.setProperty("privacyguard.outOfCore", "false");
+        properties.setProperty("privacyguard.memoryBudgetMB", "512");
+        properties.setProperty("loader.threads", "0");
+        properties.setProperty("loader.cache", "true");
+        properties.setProperty("writer.threads", "0");
+        properties.setProperty("output.compress", "false");
+        properties.setProperty("dataset.cache.maxMB", "0");
+        properties.setProperty("attack.reid.search", "bruteforce");
+        properties.setProperty("attack.reid.maxRank", "0");
+        properties.setProperty("attack.reid.dedup", "true");
+        properties.setProperty("attack.reid.sampleWidth", "0");
+        properties.setProperty("attack.reid.sampleConfidence", "0.95");
+        properties.setProperty("attack.linkage.levels", "0.25,0.5,0.75");
+        properties.setProperty("attack.linkage.trials", "0");
+        properties.setProperty("attack.threads", "0");
+        properties.setProperty("attack.memoryMB", "0");
+        properties.setProperty("attack.cache", "true");
+        properties.setProperty("attack.dcr.enabled", "false");
+        properties.setProperty("attack.dcr.search", "approximate");
+        properties.setProperty("attack.dcr.trees", "8");
+        properties.setProperty("attack.dcr.leafSize", "64");
+        properties.setProperty("attack.dcr.candidates", "512");
+        properties.setProperty("attack.dcr.recallSample", "1000");
         properties.setProperty("evaluation.train_ratio", "0.7");
         properties.setProperty("evaluation.num_runs", "5");
         properties.setProperty("evaluation.random_seed", "180");
@@ -62,6 +90,14 @@ public class ConfigLoader {
         return properties.getProperty(key);
     }
     
+    /**
+     * Get a property value, falling back to a default if it is missing
+     */
+    public static String getProperty(String key, String defaultValue) {
+        String value = getProperty(key);
+        return (value == null) ? defaultValue : value.trim();
+    }
+    
     /**
      * Get a property value as integer
      */
@@ -69,12 +105,28 @@ public class ConfigLoader {
         return Integer.parseInt(getProperty(key));
     }
     
+    /**
+     * Get a property value as integer, falling back to a default if it is missing
+     */
+    public static int getIntProperty(String key, int defaultValue) {
+        String value = getProperty(key);
+        return (value == null) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
     /**
      * Get a property value as double
      */
     public static double getDoubleProperty(String key) {
         return Double.parseDouble(getProperty(key));
     }
+
+    /**
+     * Get a property value as double, falling back to a default if it is missing
+     */
+    public static double getDoubleProperty(String key, double defaultValue) {
+        String value = getProperty(key);
+        return (value == null) ? defaultValue : Double.parseDouble(value.trim());
+    }
     
     /**
      * Get a property value as boolean
@@ -0,0 +1,161 @@
+package privacyguard;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import weka.core.Instances;
+
+/**
+ * Process-wide Dataset Cache
+ *
+ * Keeps datasets loaded during one session in memory, so the menu operations
+ * (dataset explorer, generation of every method, indices, classification and
+ * privacy attacks) do not load the same file again. Entries are keyed by the
+ * canonical path and validated against the file's size and modification time;
+ * the least recently used entries are evicted once the estimated size of all
+ * cached datasets exceeds the heap budget (dataset.cache.maxMB, 0 = a quarter
+ * of the maximum heap).
+ *
+ * Callers get a copy-on-write view: a new Instances object whose instances
+ * share the cached value arrays. Weka's DenseInstance copies its array before
+ * the first change, so callers may modify, filter or re-class their view
+ * without affecting the cached dataset.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class DatasetCache {
+
+    private static final long INSTANCE_OVERHEAD_BYTES = 48;
+
+    private static final LinkedHashMap<String, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedBytes;
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+    private static long savedNanos;
+
+    /**
+     * Load a dataset through the cache (class index as stored in the file, i.e. unset for ARFF)
+     */
+    public static Instances load(String filePath) throws Exception {
+        File file = new File(FastArffLoader.resolveDatasetPath(filePath));
+        String key = file.getCanonicalPath();
+        long size = file.length();
+        long modified = file.lastModified();
+
+        synchronized (DatasetCache.class) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null && entry.size == size && entry.modified == modified) {
+                hits++;
+                savedNanos += entry.loadNanos;
+                return view(entry.data);
+            }
+            if (entry != null) {
+                remove(key);
+            }
+            misses++;
+        }
+
+        long startTime = System.nanoTime();
+        Instances data = FastArffLoader.loadDataset(filePath);
+        long loadNanos = System.nanoTime() - startTime;
+
+        long bytes = estimateBytes(data);
+        synchronized (DatasetCache.class) {
+            long budget = budgetBytes();
+            if (bytes <= budget) {
+                Entry previous = ENTRIES.put(key, new Entry(data, size, modified, bytes, loadNanos));
+                if (previous != null) {
+                    cachedBytes -= previous.bytes;
+                }
+                cachedBytes += bytes;
+                evict(budget);
+            }
+        }
+        return view(data);
+    }
+
+    /**
+     * Drop all cached datasets
+     */
+    public static synchronized void clear() {
+        ENTRIES.clear();
+        cachedBytes = 0;
+    }
+
+    /**
+     * One-line summary of the hit/miss counters
+     */
+    public static synchronized String statistics() {
+        return String.format("%d hits, %d misses, %d evictions, %d datasets cached (%.1f MB of %.1f MB), %.1f s of loading saved",
+                hits, misses, evictions, ENTRIES.size(), cachedBytes / (1024.0 * 1024.0),
+                budgetBytes() / (1024.0 * 1024.0), savedNanos / 1e9);
+    }
+
+    public static synchronized long hits() {
+        return hits;
+    }
+
+    public static synchronized long misses() {
+        return misses;
+    }
+
+    // ==================== HELPERS ====================
+
+    /**
+     * Copy-on-write view: own header and Instance objects, shared value arrays
+     */
+    private static Instances view(Instances data) {
+        return new Instances(data);
+    }
+
+    private static void evict(long budget) {
+        Iterator<Map.Entry<String, Entry>> iterator = ENTRIES.entrySet().iterator();
+        while (cachedBytes > budget && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            cachedBytes -= eldest.bytes;
+            evictions++;
+        }
+    }
+
+    private static void remove(String key) {
+        Entry entry = ENTRIES.remove(key);
+        if (entry != null) {
+            cachedBytes -= entry.bytes;
+        }
+    }
+
+    private static long budgetBytes() {
+        long megabytes = ConfigLoader.getIntProperty("dataset.cache.maxMB", 0);
+        if (megabytes <= 0) {
+            return Runtime.getRuntime().maxMemory() / 4;
+        }
+        return megabytes * 1024 * 1024;
+    }
+
+    /**
+     * Approximate heap use of a dense dataset
+     */
+    private static long estimateBytes(Instances data) {
+        long perInstance = INSTANCE_OVERHEAD_BYTES + 16L + 8L * data.numAttributes();
+        return perInstance * data.numInstances();
+    }
+
+    private static class Entry {
+        final Instances data;
+        final long size;
+        final long modified;
+        final long bytes;
+        final long loadNanos;
+
+        Entry(Instances data, long size, long modified, long bytes, long loadNanos) {
+            this.data = data;
+            this.size = size;
+            this.modified = modified;
+            this.bytes = bytes;
+            this.loadNanos = loadNanos;
+        }
+    }
+}
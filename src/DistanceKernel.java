@@ -0,0 +1,356 @@
+package privacyguard;
+
+/**
+ * Blocked Distance Kernel for the Re-identification Attack
+ *
+ * Scans all original records for tiles of synthetic records and finds, for
+ * every synthetic record s_j, the closest original record and the number of
+ * original records strictly closer than x_j (the record s_j was generated from).
+ *
+ * Both datasets are row-major primitive matrices without the class column.
+ * Squared distances are first screened with the expansion
+ *   ||a - b||^2 = ||a||^2 + ||b||^2 - 2 a·b
+ * where the dot products of a tile of synthetic rows against a tile of original
+ * rows are computed together, on mean-centred copies to limit cancellation.
+ * The expansion only decides pairs that are clearly farther than the best match
+ * so far, or clearly closer/farther than x_j, by more than its rounding error
+ * bound. Every other pair is recomputed with the exact distance, so results are
+ * identical to computing all distances directly.
+ *
+ * Missing values (NaN) are recorded in a per-row mask; pairs involving such a
+ * row always use the exact distance over the attributes present in both rows.
+ *
+ * Workspaces are kept per thread, so a scan allocates nothing per record. The
+ * original side (centred copy, norms, missing-value mask) is a Reference that
+ * can be built once and shared by kernels for several synthetic datasets.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class DistanceKernel {
+
+    public static final int SYNTHETIC_TILE = 32;
+    private static final int ORIGINAL_TILE = 256;
+    private static final double MARGIN = 1e-9;        // relative margin on sums of squares
+    private static final double TINY = 1e-300;        // absolute margin near zero
+
+    private final int numOriginal;
+    private final int numSynthetic;
+    private final int dims;
+    private final double[] original;              // exact values (NaN = missing)
+    private final double[] synthetic;
+    private final double[] centredOriginal;       // centred, missing = 0
+    private final double[] centredSynthetic;
+    private final double[] originalNorms;         // squared norms of the centred rows
+    private final double[] syntheticNorms;
+    private final boolean[] originalMissing;      // row has a missing value
+    private final boolean[] syntheticMissing;
+    private final double errorFactor;             // expansion error per unit of ||a||^2 + ||b||^2
+
+    private final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
+
+    /**
+     * @param original Original records, row-major (original[i * dims + k])
+     * @param numOriginal Number of original records (n)
+     * @param synthetic Synthetic records, row-major
+     * @param numSynthetic Number of synthetic records (m)
+     * @param dims Number of attributes per row
+     */
+    public DistanceKernel(double[] original, int numOriginal, double[] synthetic, int numSynthetic, int dims) {
+        this(new Reference(original, numOriginal, dims), synthetic, numSynthetic);
+    }
+
+    /**
+     * @param reference Prepared original records
+     * @param synthetic Synthetic records, row-major, with the reference's attributes
+     * @param numSynthetic Number of synthetic records (m)
+     */
+    public DistanceKernel(Reference reference, double[] synthetic, int numSynthetic) {
+        this.numOriginal = reference.numOriginal;
+        this.numSynthetic = numSynthetic;
+        this.dims = reference.dims;
+        this.original = reference.original;
+        this.synthetic = synthetic;
+        this.errorFactor = 8.0 * (dims + 2) * Math.ulp(1.0);
+
+        this.originalMissing = reference.missing;
+        this.originalNorms = reference.norms;
+        this.centredOriginal = reference.centred;
+        this.syntheticMissing = new boolean[numSynthetic];
+        this.syntheticNorms = new double[numSynthetic];
+        this.centredSynthetic = centre(synthetic, numSynthetic, dims, reference.means, syntheticNorms, syntheticMissing);
+    }
+
+    /**
+     * Exact distance d(a, b) = sqrt(Σ (a_k - b_k)^2 / d') over the d' attributes
+     * present in both rows (Double.MAX_VALUE when there are none)
+     */
+    public static double distance(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+        double sum = 0.0;
+        int count = 0;
+        for (int k = 0; k < dims; k++) {
+            double v1 = a[aOffset + k];
+            double v2 = b[bOffset + k];
+            if (!Double.isNaN(v1) && !Double.isNaN(v2)) {
+                double diff = v1 - v2;
+                sum += diff * diff;
+                count++;
+            }
+        }
+        return count > 0 ? Math.sqrt(sum / count) : Double.MAX_VALUE;
+    }
+
+    /**
+     * Scan all original records for the synthetic records rows[start..end)
+     *
+     * @param rows Synthetic record indices
+     * @param closestOut closestOut[j] receives the index of the closest original record
+     * @param distanceOut distanceOut[j] receives the distance to it
+     * @param closerOut closerOut[j] receives the number of original records other than
+     *                  x_j strictly closer than x_j (-1 when j has no original record)
+     */
+    public void scan(int[] rows, int start, int end, int[] closestOut, double[] distanceOut, int[] closerOut) {
+        Workspace ws = workspaces.get();
+        for (int tileStart = start; tileStart < end; tileStart += SYNTHETIC_TILE) {
+            int tileEnd = Math.min(end, tileStart + SYNTHETIC_TILE);
+            scanTile(ws, rows, tileStart, tileEnd);
+            for (int p = tileStart; p < tileEnd; p++) {
+                int t = p - tileStart;
+                int j = rows[p];
+                closestOut[j] = ws.bestIndex[t];
+                distanceOut[j] = ws.bestDistance[t];
+                closerOut[j] = (j < numOriginal) ? ws.closer[t] : -1;
+            }
+        }
+    }
+
+    // ==================== TILES ====================
+
+    private void scanTile(Workspace ws, int[] rows, int tileStart, int tileEnd) {
+        int size = tileEnd - tileStart;
+        for (int t = 0; t < size; t++) {
+            int j = rows[tileStart + t];
+            ws.bestIndex[t] = -1;
+            ws.bestDistance[t] = Double.POSITIVE_INFINITY;
+            ws.bestSum[t] = Double.POSITIVE_INFINITY;
+            ws.closer[t] = 0;
+            if (j < numOriginal) {
+                ws.correctDistance[t] = distance(synthetic, j * dims, original, j * dims, dims);
+                ws.correctSum[t] = equivalentSum(ws.correctDistance[t]);
+            }
+        }
+
+        for (int oStart = 0; oStart < numOriginal; oStart += ORIGINAL_TILE) {
+            int oEnd = Math.min(numOriginal, oStart + ORIGINAL_TILE);
+            dotProducts(ws.dots, rows, tileStart, tileEnd, oStart, oEnd);
+            for (int t = 0; t < size; t++) {
+                visit(ws, t, rows[tileStart + t], oStart, oEnd);
+            }
+        }
+    }
+
+    /**
+     * dots[t * ORIGINAL_TILE + (i - oStart)] = s_rows[tileStart + t] · x_i (centred rows),
+     * four synthetic rows at a time so each original row is loaded once per group
+     */
+    private void dotProducts(double[] dots, int[] rows, int tileStart, int tileEnd, int oStart, int oEnd) {
+        double[] s = centredSynthetic;
+        double[] x = centredOriginal;
+        int p = tileStart;
+        for (; p + 4 <= tileEnd; p += 4) {
+            int s0 = rows[p] * dims;
+            int s1 = rows[p + 1] * dims;
+            int s2 = rows[p + 2] * dims;
+            int s3 = rows[p + 3] * dims;
+            int out = (p - tileStart) * ORIGINAL_TILE;
+            for (int i = oStart; i < oEnd; i++) {
+                int xi = i * dims;
+                double d0 = 0.0, d1 = 0.0, d2 = 0.0, d3 = 0.0;
+                for (int k = 0; k < dims; k++) {
+                    double v = x[xi + k];
+                    d0 += s[s0 + k] * v;
+                    d1 += s[s1 + k] * v;
+                    d2 += s[s2 + k] * v;
+                    d3 += s[s3 + k] * v;
+                }
+                int o = out + (i - oStart);
+                dots[o] = d0;
+                dots[o + ORIGINAL_TILE] = d1;
+                dots[o + 2 * ORIGINAL_TILE] = d2;
+                dots[o + 3 * ORIGINAL_TILE] = d3;
+            }
+        }
+        for (; p < tileEnd; p++) {
+            int sj = rows[p] * dims;
+            int out = (p - tileStart) * ORIGINAL_TILE;
+            for (int i = oStart; i < oEnd; i++) {
+                int xi = i * dims;
+                double d = 0.0;
+                for (int k = 0; k < dims; k++) {
+                    d += s[sj + k] * x[xi + k];
+                }
+                dots[out + (i - oStart)] = d;
+            }
+        }
+    }
+
+    /**
+     * Update the closest match and the closer count of synthetic row j with
+     * original rows [oStart, oEnd), visited in index order (ties keep the lowest index)
+     */
+    private void visit(Workspace ws, int t, int j, int oStart, int oEnd) {
+        boolean counting = j < numOriginal;
+        double correctSum = counting ? ws.correctSum[t] : 0.0;
+        double correctDistance = counting ? ws.correctDistance[t] : 0.0;
+        double closerBelow = correctSum * (1 - MARGIN) - TINY;
+        double closerAbove = correctSum * (1 + MARGIN) + TINY;
+        boolean exactRow = syntheticMissing[j];
+        double syntheticNorm = syntheticNorms[j];
+        int dotBase = t * ORIGINAL_TILE - oStart;
+
+        double bestDistance = ws.bestDistance[t];
+        double bestSum = ws.bestSum[t];
+        int bestIndex = ws.bestIndex[t];
+        int closer = ws.closer[t];
+
+        for (int i = oStart; i < oEnd; i++) {
+            boolean candidate;
+            boolean decided = false;
+            boolean isCloser = false;
+
+            if (exactRow || originalMissing[i]) {
+                candidate = true;
+            } else {
+                double norms = syntheticNorm + originalNorms[i];
+                double estimate = norms - 2.0 * ws.dots[dotBase + i];
+                double error = errorFactor * norms;
+                candidate = estimate - error <= bestSum * (1 + MARGIN) + TINY;
+                if (counting && i != j) {
+                    if (estimate + error < closerBelow) {
+                        decided = true;
+                        isCloser = true;
+                    } else if (estimate - error > closerAbove || correctSum == 0.0) {
+                        decided = true;
+                    }
+                } else {
+                    decided = true;
+                }
+            }
+
+            if (!candidate && decided) {
+                if (isCloser) closer++;
+                continue;
+            }
+
+            double d = distance(synthetic, j * dims, original, i * dims, dims);
+            if (d < bestDistance) {
+                bestDistance = d;
+                bestIndex = i;
+                bestSum = equivalentSum(d);
+            }
+            if (decided) {
+                if (isCloser) closer++;
+            } else if (counting && i != j && d < correctDistance) {
+                closer++;
+            }
+        }
+
+        ws.bestDistance[t] = bestDistance;
+        ws.bestSum[t] = bestSum;
+        ws.bestIndex[t] = bestIndex;
+        ws.closer[t] = closer;
+    }
+
+    // ==================== HELPERS ====================
+
+    /**
+     * Sum of squares a complete pair needs to be at distance d (within rounding,
+     * which the margins cover); also valid when d was measured over fewer attributes
+     */
+    private double equivalentSum(double d) {
+        return d * d * dims;
+    }
+
+    private static double[] centre(double[] data, int rows, int dims, double[] means, double[] norms, boolean[] missing) {
+        double[] centred = new double[rows * dims];
+        for (int r = 0; r < rows; r++) {
+            double norm = 0.0;
+            for (int k = 0; k < dims; k++) {
+                double v = data[r * dims + k];
+                if (Double.isNaN(v)) {
+                    missing[r] = true;
+                    continue;
+                }
+                double c = v - means[k];
+                centred[r * dims + k] = c;
+                norm += c * c;
+            }
+            norms[r] = norm;
+        }
+        return centred;
+    }
+
+    /**
+     * Original side of the kernel: the records centred on their column means
+     * (present values only), with squared norms and the missing-value mask
+     */
+    public static class Reference {
+        private final int numOriginal;
+        private final int dims;
+        private final double[] original;
+        private final double[] means;
+        private final double[] centred;
+        private final double[] norms;
+        private final boolean[] missing;
+
+        /**
+         * Approximate heap use: the centred copy, squared norms and missing mask
+         */
+        public static long estimateBytes(long numOriginal, long dims) {
+            return numOriginal * (8 * dims + 8 + 1);
+        }
+
+        /**
+         * @param original Original records, row-major (original[i * dims + k]); not copied
+         * @param numOriginal Number of original records (n)
+         * @param dims Number of attributes per row
+         */
+        public Reference(double[] original, int numOriginal, int dims) {
+            this.numOriginal = numOriginal;
+            this.dims = dims;
+            this.original = original;
+
+            // Column means of the original records (present values only)
+            this.means = new double[dims];
+            int[] counts = new int[dims];
+            for (int i = 0; i < numOriginal; i++) {
+                for (int k = 0; k < dims; k++) {
+                    double v = original[i * dims + k];
+                    if (!Double.isNaN(v)) {
+                        means[k] += v;
+                        counts[k]++;
+                    }
+                }
+            }
+            for (int k = 0; k < dims; k++) {
+                means[k] = (counts[k] > 0) ? means[k] / counts[k] : 0.0;
+            }
+
+            this.norms = new double[numOriginal];
+            this.missing = new boolean[numOriginal];
+            this.centred = centre(original, numOriginal, dims, means, norms, missing);
+        }
+    }
+
+    /**
+     * Reusable per-thread buffers for one tile of synthetic rows
+     */
+    private static class Workspace {
+        final double[] dots = new double[SYNTHETIC_TILE * ORIGINAL_TILE];
+        final double[] bestDistance = new double[SYNTHETIC_TILE];
+        final double[] bestSum = new double[SYNTHETIC_TILE];
+        final int[] bestIndex = new int[SYNTHETIC_TILE];
+        final int[] closer = new int[SYNTHETIC_TILE];
+        final double[] correctDistance = new double[SYNTHETIC_TILE];
+        final double[] correctSum = new double[SYNTHETIC_TILE];
+    }
+}
@@ -0,0 +1,363 @@
+package privacyguard;
+
+import weka.core.Instances;
+import java.util.*;
+
+/**
+ * Distance to Closest Record (DCR) and Nearest-Neighbour Distance Ratio (NNDR)
+ *
+ * Measures how close every synthetic record s_j lies to the original data:
+ * - DCR_j  = d(s_j, x_(1)), the distance to its nearest original record
+ * - NNDR_j = d(s_j, x_(1)) / d(s_j, x_(2)), the ratio to the second nearest
+ * with the distance of ReIdentificationAttack (DistanceKernel.distance, over
+ * the attributes present in both records). DCR_j = 0 means s_j copies an
+ * original record; an NNDR close to 0 means s_j is much closer to one original
+ * record than to any other, i.e. it singles that record out (NNDR = 1 when
+ * both distances are 0).
+ *
+ * SEARCH MODES (see setSearchMode):
+ * - "approximate": candidates come from a RandomProjectionForest over the
+ *   original records (shared through SharedOriginalData) and are verified with
+ *   exact distances, so each reported distance is a real distance, possibly to
+ *   a record that is not the true nearest one (DCR and NNDR can only be
+ *   overestimated). The recall of the index is measured against brute force
+ *   on a random sample of synthetic records (see setRecallSample).
+ * - "exact": every original record is compared (brute force).
+ *
+ * The distributions are summarised as percentiles and written into the
+ * privacy results CSV next to the re-identification and linkage metrics.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class DistanceToClosestRecordAttack {
+
+    // Search modes
+    public static final String SEARCH_APPROXIMATE = "approximate";
+    public static final String SEARCH_EXACT = "exact";
+
+    private static final int BLOCK_SIZE = 64;   // synthetic records per task
+    private static final double[] PERCENTILES = {0.05, 0.25, 0.50, 0.75, 0.95};
+
+    private SharedOriginalData sharedOriginal;
+    private Instances syntheticData;
+    private String searchMode = SEARCH_APPROXIMATE;
+    private int numTrees = 8;
+    private int leafSize = 64;
+    private int searchK = 512;
+    private int recallSample = 1000;
+    private long seed = 42;
+
+    // Results
+    private double[] closestDistances;   // DCR_j
+    private double[] secondDistances;    // distance to the second nearest original record
+    private double[] ratios;             // NNDR_j
+    private int recallSampleSize;        // 0 = recall not measured
+    private double recallAt1;            // fraction of sampled records whose DCR is exact
+    private double meanRelativeError;    // mean (approximate - exact) / exact DCR on the sample
+
+    /**
+     * @param original Original dataset, pre-processed (its matrix and forest are reused)
+     * @param syntheticData Synthetic dataset with the same attributes
+     */
+    public DistanceToClosestRecordAttack(SharedOriginalData original, Instances syntheticData) {
+        this.sharedOriginal = original;
+        this.syntheticData = syntheticData;
+    }
+
+    /**
+     * @param originalData Original dataset (with its class index set)
+     * @param syntheticData Synthetic dataset with the same attributes
+     */
+    public DistanceToClosestRecordAttack(Instances originalData, Instances syntheticData) {
+        this(new SharedOriginalData(originalData), syntheticData);
+    }
+
+    /**
+     * Select the search ("approximate" or "exact")
+     */
+    public void setSearchMode(String searchMode) {
+        if (!SEARCH_APPROXIMATE.equals(searchMode) && !SEARCH_EXACT.equals(searchMode)) {
+            throw new IllegalArgumentException("Unknown DCR search mode: " + searchMode
+                    + " (expected " + SEARCH_APPROXIMATE + " or " + SEARCH_EXACT + ")");
+        }
+        this.searchMode = searchMode;
+    }
+
+    public String getSearchMode() {
+        return searchMode;
+    }
+
+    /**
+     * Parameters of the approximate index
+     *
+     * @param numTrees Random-projection trees (more trees: better recall, more memory)
+     * @param leafSize Original records per leaf
+     * @param searchK Candidates verified per synthetic record (at least 2)
+     * @param seed Seed of the projection directions and of the recall sample
+     */
+    public void setIndex(int numTrees, int leafSize, int searchK, long seed) {
+        if (numTrees < 1 || leafSize < 2 || searchK < 2) {
+            throw new IllegalArgumentException("DCR index needs numTrees >= 1, leafSize >= 2 and searchK >= 2");
+        }
+        this.numTrees = numTrees;
+        this.leafSize = leafSize;
+        this.searchK = searchK;
+        this.seed = seed;
+    }
+
+    /**
+     * Number of synthetic records on which the approximate search is compared
+     * with brute force (0 = do not measure the recall)
+     */
+    public void setRecallSample(int recallSample) {
+        if (recallSample < 0) {
+            throw new IllegalArgumentException("Recall sample must not be negative");
+        }
+        this.recallSample = recallSample;
+    }
+
+    /**
+     * Compute DCR and NNDR for every synthetic record
+     */
+    public void performAttack() {
+        int m = syntheticData.numInstances();
+        int n = sharedOriginal.numInstances();
+        int dims = sharedOriginal.features().length;
+        double[] synthetic = SharedOriginalData.toMatrix(syntheticData, sharedOriginal.features());
+
+        System.out.println("\n=== Distance to Closest Record ===");
+        System.out.println("Original records (n): " + n);
+        System.out.println("Synthetic records (m): " + m);
+        System.out.println("Search: " + searchMode + (SEARCH_APPROXIMATE.equals(searchMode)
+                ? " (" + numTrees + " trees, leaf size " + leafSize + ", " + searchK + " candidates)" : ""));
+
+        long startTime = System.currentTimeMillis();
+        closestDistances = new double[m];
+        secondDistances = new double[m];
+        ratios = new double[m];
+        recallSampleSize = 0;
+
+        double[] original = sharedOriginal.matrix();
+        if (SEARCH_EXACT.equals(searchMode) || n <= searchK) {
+            AttackScheduler.forEachBlock(0, m, BLOCK_SIZE, AttackScheduler.parallelism(), (start, end) -> {
+                double[] best = new double[2];
+                for (int j = start; j < end; j++) {
+                    exactNearest(original, n, synthetic, j * dims, dims, best);
+                    record(j, best);
+                }
+            });
+        } else {
+            RandomProjectionForest forest = sharedOriginal.projectionForest(numTrees, leafSize, seed);
+            ThreadLocal<int[]> buffers = ThreadLocal.withInitial(() -> new int[searchK + leafSize]);
+            AttackScheduler.forEachBlock(0, m, BLOCK_SIZE, AttackScheduler.parallelism(), (start, end) -> {
+                int[] candidates = buffers.get();
+                double[] best = new double[2];
+                for (int j = start; j < end; j++) {
+                    int count = forest.candidates(synthetic, j * dims, searchK, candidates);
+                    approximateNearest(original, candidates, count, synthetic, j * dims, dims, best);
+                    record(j, best);
+                }
+            });
+            if (recallSample > 0) {
+                measureRecall(original, n, synthetic, dims);
+            }
+        }
+
+        System.out.println("DCR completed in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    // ==================== SEARCH ====================
+
+    private void record(int j, double[] best) {
+        closestDistances[j] = best[0];
+        secondDistances[j] = best[1];
+        ratios[j] = ratio(best[0], best[1]);
+    }
+
+    /**
+     * NNDR of a record (1 when both distances are 0, or when there is no
+     * second original record)
+     */
+    private static double ratio(double closest, double second) {
+        return (second > 0.0 && second < Double.POSITIVE_INFINITY) ? closest / second : 1.0;
+    }
+
+    /**
+     * Two smallest distances from a synthetic record to all original records
+     */
+    private static void exactNearest(double[] original, int n, double[] synthetic, int offset, int dims, double[] best) {
+        best[0] = Double.POSITIVE_INFINITY;
+        best[1] = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            offer(best, DistanceKernel.distance(synthetic, offset, original, i * dims, dims));
+        }
+    }
+
+    /**
+     * Two smallest distances from a synthetic record to the candidate original records
+     */
+    private static void approximateNearest(double[] original, int[] candidates, int count,
+                                           double[] synthetic, int offset, int dims, double[] best) {
+        best[0] = Double.POSITIVE_INFINITY;
+        best[1] = Double.POSITIVE_INFINITY;
+        for (int c = 0; c < count; c++) {
+            offer(best, DistanceKernel.distance(synthetic, offset, original, candidates[c] * dims, dims));
+        }
+    }
+
+    private static void offer(double[] best, double distance) {
+        if (distance < best[0]) {
+            best[1] = best[0];
+            best[0] = distance;
+        } else if (distance < best[1]) {
+            best[1] = distance;
+        }
+    }
+
+    /**
+     * Compare the approximate DCR with brute force on a random sample of
+     * synthetic records (a record counts as recalled when its DCR is exact)
+     */
+    private void measureRecall(double[] original, int n, double[] synthetic, int dims) {
+        int m = syntheticData.numInstances();
+        int[] sample = new int[m];
+        for (int j = 0; j < m; j++) {
+            sample[j] = j;
+        }
+        Random random = new Random(seed);
+        int size = Math.min(m, recallSample);
+        for (int i = 0; i < size; i++) {
+            int k = i + random.nextInt(m - i);
+            int tmp = sample[i];
+            sample[i] = sample[k];
+            sample[k] = tmp;
+        }
+
+        double[] exact = new double[size];
+        AttackScheduler.forEachBlock(0, size, BLOCK_SIZE, AttackScheduler.parallelism(), (start, end) -> {
+            double[] best = new double[2];
+            for (int s = start; s < end; s++) {
+                exactNearest(original, n, synthetic, sample[s] * dims, dims, best);
+                exact[s] = best[0];
+            }
+        });
+
+        int recalled = 0;
+        double relativeError = 0.0;
+        for (int s = 0; s < size; s++) {
+            double approximate = closestDistances[sample[s]];
+            if (approximate == exact[s]) {
+                recalled++;
+            } else if (exact[s] > 0.0) {
+                relativeError += (approximate - exact[s]) / exact[s];
+            } else {
+                relativeError += 1.0;   // missed an exact copy
+            }
+        }
+        recallSampleSize = size;
+        recallAt1 = (size > 0) ? (double) recalled / size : 1.0;
+        meanRelativeError = (size > 0) ? relativeError / size : 0.0;
+        System.out.println(String.format("  Recall@1 against brute force: %.4f on %d records (mean DCR error %.4f%%)",
+                recallAt1, size, meanRelativeError * 100));
+    }
+
+    // ==================== RESULTS ====================
+
+    /**
+     * Get detailed statistics (all values are Double)
+     */
+    public Map<String, Object> getDetailedStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        double[] dcr = closestDistances.clone();
+        double[] nndr = ratios.clone();
+        Arrays.sort(dcr);
+        Arrays.sort(nndr);
+
+        stats.put("DCR_Mean", mean(dcr));
+        stats.put("DCR_Min", (dcr.length > 0) ? dcr[0] : 0.0);
+        for (double p : PERCENTILES) {
+            stats.put("DCR_" + percentileName(p), percentile(dcr, p));
+        }
+        stats.put("DCR_Zero_Rate", (dcr.length > 0) ? (double) countZeros(dcr) / dcr.length : 0.0);
+
+        stats.put("NNDR_Mean", mean(nndr));
+        for (double p : PERCENTILES) {
+            stats.put("NNDR_" + percentileName(p), percentile(nndr, p));
+        }
+
+        if (recallSampleSize > 0) {
+            stats.put("ANN_Recall_At_1", recallAt1);
+            stats.put("ANN_Mean_Relative_DCR_Error", meanRelativeError);
+            stats.put("ANN_Recall_Sample_Size", (double) recallSampleSize);
+        }
+        return stats;
+    }
+
+    /**
+     * Print a summary report of the attack results
+     */
+    public void printReport() {
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("DISTANCE TO CLOSEST RECORD REPORT");
+        System.out.println("=".repeat(60));
+        System.out.println("Synthetic records (m): " + syntheticData.numInstances());
+        System.out.println("Original records (n): " + sharedOriginal.numInstances());
+        System.out.println("Search: " + searchMode);
+        System.out.println();
+
+        System.out.println("METRICS:");
+        System.out.println("-".repeat(60));
+        for (Map.Entry<String, Object> entry : getDetailedStatistics().entrySet()) {
+            System.out.printf("%-35s: %.6f\n", entry.getKey(), entry.getValue());
+        }
+
+        System.out.println("\n" + "=".repeat(60));
+    }
+
+    /**
+     * Get DCR_j for every synthetic record
+     */
+    public double[] getClosestDistances() {
+        return closestDistances;
+    }
+
+    /**
+     * Get NNDR_j for every synthetic record
+     */
+    public double[] getDistanceRatios() {
+        return ratios;
+    }
+
+    // ==================== HELPERS ====================
+
+    private static String percentileName(double p) {
+        return (p == 0.5) ? "Median" : "P" + Math.round(p * 100);
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values (0 when there are none)
+     */
+    private static double percentile(double[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.min(sorted.length, Math.max(1, rank)) - 1];
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0.0;
+        for (double value : values) {
+            sum += value;
+        }
+        return (values.length > 0) ? sum / values.length : 0.0;
+    }
+
+    private static int countZeros(double[] sorted) {
+        int count = 0;
+        while (count < sorted.length && sorted[count] == 0.0) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,195 @@
+package privacyguard;
+
+import java.util.Arrays;
+
+/**
+ * Equivalence Classes of Records on Quasi-Identifiers
+ *
+ * Partitions a set of rows into classes of records with identical values on
+ * the quasi-identifiers added so far (values are compared by their exact bits,
+ * so all missing values are equal and -0.0 differs from 0.0). Attributes are
+ * added one at a time with refine(), which splits every class by the new
+ * attribute's value; nested quasi-identifier sets are therefore evaluated
+ * without grouping the rows again from scratch.
+ *
+ * Each refinement hashes the pair (current class, raw value bits) into an
+ * open-addressing table whose slots remember one representative row; a hash
+ * match is only accepted after comparing the class and value bits with that
+ * row, so collisions never merge classes. The table and class arrays are
+ * allocated once, so refinements allocate nothing per row.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class EquivalenceClasses {
+
+    private final int numRows;
+    private int[] classOf;           // class of every row
+    private int[] nextClassOf;       // refinement buffer
+    private int numClasses;
+
+    // Open-addressing table: (class, value bits) -> new class
+    private final int mask;
+    private final long[] slotHash;
+    private final int[] slotRow;     // representative row, -1 = empty
+    private final int[] slotClass;
+
+    /**
+     * @param numRows Number of rows (all in one class until the first refinement)
+     */
+    public EquivalenceClasses(int numRows) {
+        this.numRows = numRows;
+        this.classOf = new int[numRows];
+        this.nextClassOf = new int[numRows];
+        this.numClasses = (numRows > 0) ? 1 : 0;
+
+        int capacity = Integer.highestOneBit(Math.max(2, numRows) * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.slotHash = new long[capacity];
+        this.slotRow = new int[capacity];
+        this.slotClass = new int[capacity];
+    }
+
+    /**
+     * Split every class by the value of one more attribute
+     *
+     * @param column Value of the attribute for every row
+     */
+    public void refine(double[] column) {
+        Arrays.fill(slotRow, -1);
+        int classes = 0;
+        for (int row = 0; row < numRows; row++) {
+            long bits = Double.doubleToLongBits(column[row]);
+            int current = classOf[row];
+            long hash = hash(current, bits);
+
+            int slot = (int) hash & mask;
+            while (true) {
+                int representative = slotRow[slot];
+                if (representative < 0) {
+                    slotHash[slot] = hash;
+                    slotRow[slot] = row;
+                    slotClass[slot] = classes++;
+                    break;
+                }
+                if (slotHash[slot] == hash && classOf[representative] == current
+                        && Double.doubleToLongBits(column[representative]) == bits) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            nextClassOf[row] = slotClass[slot];
+        }
+
+        int[] refined = nextClassOf;
+        nextClassOf = classOf;
+        classOf = refined;
+        numClasses = classes;
+    }
+
+    /**
+     * Split every class by an integer code of one more attribute (equal codes
+     * meaning equal values, e.g. QuasiIdentifierEncodings.syntheticCodes)
+     *
+     * @param codes Code of the attribute's value for every row
+     */
+    public void refine(int[] codes) {
+        Arrays.fill(slotRow, -1);
+        int classes = 0;
+        for (int row = 0; row < numRows; row++) {
+            int code = codes[row];
+            int current = classOf[row];
+            long hash = hash(current, code);
+
+            int slot = (int) hash & mask;
+            while (true) {
+                int representative = slotRow[slot];
+                if (representative < 0) {
+                    slotHash[slot] = hash;
+                    slotRow[slot] = row;
+                    slotClass[slot] = classes++;
+                    break;
+                }
+                if (slotHash[slot] == hash && classOf[representative] == current
+                        && codes[representative] == code) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            nextClassOf[row] = slotClass[slot];
+        }
+
+        int[] refined = nextClassOf;
+        nextClassOf = classOf;
+        classOf = refined;
+        numClasses = classes;
+    }
+
+    /**
+     * Put all rows back into one class
+     */
+    public void reset() {
+        Arrays.fill(classOf, 0);
+        numClasses = (numRows > 0) ? 1 : 0;
+    }
+
+    public int numClasses() {
+        return numClasses;
+    }
+
+    public int classOf(int row) {
+        return classOf[row];
+    }
+
+    /**
+     * Average class size (0 when there are no rows)
+     */
+    public double averageSize() {
+        return (numClasses > 0) ? (double) numRows / numClasses : 0.0;
+    }
+
+    /**
+     * Size of every class, in increasing order
+     */
+    public int[] sortedSizes() {
+        int[] sizes = new int[numClasses];
+        for (int row = 0; row < numRows; row++) {
+            sizes[classOf[row]]++;
+        }
+        Arrays.sort(sizes);
+        return sizes;
+    }
+
+    /**
+     * Nearest-rank percentile of sorted class sizes (0 when there are none)
+     *
+     * @param fraction Percentile as a fraction, e.g. 0.95
+     */
+    public static int percentile(int[] sortedSizes, double fraction) {
+        if (sortedSizes.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(fraction * sortedSizes.length);
+        return sortedSizes[Math.min(sortedSizes.length, Math.max(1, rank)) - 1];
+    }
+
+    /**
+     * Number of classes with a single record
+     */
+    public static int singletons(int[] sortedSizes) {
+        int count = 0;
+        while (count < sortedSizes.length && sortedSizes[count] == 1) {
+            count++;
+        }
+        return count;
+    }
+
+    // ==================== HELPERS ====================
+
+    private static long hash(int classId, long bits) {
+        long hash = bits * 0x9E3779B97F4A7C15L + classId;
+        hash ^= (hash >>> 32);
+        hash *= 0xD6E8FEB86659FD93L;
+        hash ^= (hash >>> 32);
+        return hash;
+    }
+}
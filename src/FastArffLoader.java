@@ -0,0 +1,781 @@
+package privacyguard;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Fast Parallel ARFF Loader
+ *
+ * Reads dense ARFF files straight into primitive columns: one double[] per
+ * attribute and an int[] for a nominal class (the last attribute). The @data
+ * section is memory-mapped and cut into line-aligned chunks that are counted,
+ * then parsed, in parallel. Numbers are parsed without creating Strings
+ * whenever the exact result is guaranteed; otherwise Double.parseDouble()
+ * is used, so every value is bit-identical to Weka's ArffLoader.
+ *
+ * loadDataset() goes through the binary ColumnarCache when one is valid,
+ * returns a regular Weka Instances view and falls back to
+ * DataSource for non-ARFF files and for ARFF features this parser does not
+ * handle (sparse rows, instance weights, string/date/relational attributes).
+ * An ARFF file that has not been extracted is read from the <name>.tar.xz
+ * archive next to it, parsing blocks while the archive is still decompressing;
+ * gzip-compressed .arff.gz files are streamed the same way.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class FastArffLoader {
+
+    private static final int MAX_CHUNK_BYTES = 8 * 1024 * 1024;
+    private static final String GZIP_EXTENSION = ".arff.gz";
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Load a dataset as Weka Instances (class index not set, as with DataSource)
+     */
+    public static Instances loadDataset(String filePath) throws Exception {
+        String sourcePath = resolveDatasetPath(filePath);
+        boolean archive = TarXzArchive.isArchive(sourcePath);
+        String lower = sourcePath.toLowerCase();
+        if (archive || lower.endsWith(".arff") || lower.endsWith(GZIP_EXTENSION)) {
+            try {
+                return loadColumns(sourcePath).toInstances();
+            } catch (UnsupportedArffException e) {
+                System.out.println("  (" + e.getMessage() + "; using Weka loader)");
+            }
+        }
+
+        if (archive) {
+            try (TarXzArchive tarXz = new TarXzArchive(sourcePath)) {
+                InputStream entry = tarXz.openEntry(".arff");
+                return new Instances(new BufferedReader(new InputStreamReader(entry, StandardCharsets.UTF_8)));
+            }
+        }
+        DataSource source = new DataSource(sourcePath);
+        return source.getDataSet();
+    }
+
+    /**
+     * File a dataset is read from: the path itself when it exists, otherwise
+     * <name>.arff.gz (as written with output.compress) or the <name>.tar.xz
+     * archive shipped in place of <name>.arff (if present)
+     */
+    public static String resolveDatasetPath(String filePath) {
+        if (!new File(filePath).exists() && filePath.toLowerCase().endsWith(".arff")) {
+            String compressedPath = filePath + ".gz";
+            if (new File(compressedPath).isFile()) {
+                return compressedPath;
+            }
+            String archivePath = TarXzArchive.archiveFor(filePath);
+            if (new File(archivePath).isFile()) {
+                return archivePath;
+            }
+        }
+        return filePath;
+    }
+
+    /**
+     * Whether a dataset can be loaded, either extracted or from its archive
+     */
+    public static boolean datasetExists(String filePath) {
+        return new File(resolveDatasetPath(filePath)).exists();
+    }
+
+    /**
+     * Load the columns of an ARFF file (.arff.gz or .tar.xz archive), from its columnar
+     * cache when valid. A freshly parsed file gets its cache written in the same
+     * pass (when loader.cache is on).
+     */
+    public static ColumnarData loadColumns(String filePath) throws Exception {
+        boolean useCache = Boolean.parseBoolean(ConfigLoader.getProperty("loader.cache", "true"));
+        if (!useCache) {
+            return parse(filePath);
+        }
+
+        ColumnarData data = ColumnarCache.load(filePath);
+        if (data != null) {
+            return data;
+        }
+
+        data = parse(filePath);
+        try {
+            ColumnarCache.store(filePath, data);
+            System.out.println("  ✓ Columnar cache written: " + ColumnarCache.cacheFile(filePath).getPath());
+        } catch (IOException e) {
+            System.out.println("  (could not write columnar cache: " + e.getMessage() + ")");
+        }
+        return data;
+    }
+
+    private static ColumnarData parse(String filePath) throws Exception {
+        if (filePath.toLowerCase().endsWith(GZIP_EXTENSION)) {
+            try (InputStream in = new GZIPInputStream(new FileInputStream(filePath), 1 << 16)) {
+                return load(in, new File(filePath).getName(), configuredThreads());
+            }
+        }
+        if (!TarXzArchive.isArchive(filePath)) {
+            return load(filePath);
+        }
+        try (TarXzArchive archive = new TarXzArchive(filePath)) {
+            return load(archive.openEntry(".arff"), new File(filePath).getName(), configuredThreads());
+        }
+    }
+
+    /**
+     * Parse an ARFF file into primitive columns
+     */
+    public static ColumnarData load(String filePath) throws Exception {
+        return load(filePath, configuredThreads());
+    }
+
+    private static int configuredThreads() {
+        int numThreads = ConfigLoader.getIntProperty("loader.threads", 0);
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+        return numThreads;
+    }
+
+    /**
+     * Parse an ARFF file into primitive columns with the given number of threads
+     */
+    public static ColumnarData load(String filePath, int numThreads) throws Exception {
+        long startTime = System.nanoTime();
+
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r");
+             FileChannel channel = file.getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new UnsupportedArffException("file larger than 2 GB");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            // Header: everything up to and including the @data line, parsed by Weka
+            int dataStart = findDataSection(buffer, (int) size, true);
+            if (dataStart < 0) {
+                throw new IOException("No @data section found in " + filePath);
+            }
+            byte[] headerBytes = new byte[dataStart];
+            buffer.get(0, headerBytes);
+            Instances header = parseHeader(headerBytes, dataStart);
+
+            // Line-aligned chunks of the @data section
+            List<int[]> chunks = splitIntoChunks(buffer, dataStart, (int) size, numThreads);
+
+            ForkJoinPool pool = AttackScheduler.nestedPool(numThreads);
+            try {
+                // Pass 1: rows per chunk
+                List<Future<Integer>> counts = new ArrayList<>();
+                for (int[] chunk : chunks) {
+                    counts.add(pool.submit(() -> countRows(buffer, chunk[0], chunk[1])));
+                }
+                int[] firstRow = new int[chunks.size()];
+                long totalRows = 0;
+                for (int c = 0; c < chunks.size(); c++) {
+                    firstRow[c] = (int) totalRows;
+                    totalRows += getResult(counts.get(c));
+                }
+                if (totalRows > Integer.MAX_VALUE) {
+                    throw new UnsupportedArffException("more than " + Integer.MAX_VALUE + " rows");
+                }
+
+                // Pass 2: parse every chunk into its slice of the columns
+                ColumnarData data = new ColumnarData(header, (int) totalRows);
+                List<Future<Integer>> parsed = new ArrayList<>();
+                for (int c = 0; c < chunks.size(); c++) {
+                    int[] chunk = chunks.get(c);
+                    int row = firstRow[c];
+                    parsed.add(pool.submit(() -> {
+                        byte[] bytes = new byte[chunk[1] - chunk[0]];
+                        buffer.get(chunk[0], bytes);
+                        return new ChunkParser(data).parse(bytes, bytes.length, row);
+                    }));
+                }
+                for (Future<Integer> future : parsed) {
+                    getResult(future);
+                }
+
+                double seconds = (System.nanoTime() - startTime) / 1e9;
+                double megabytes = size / (1024.0 * 1024.0);
+                System.out.println(String.format("  ✓ Parsed %s: %d rows, %.1f MB in %.2f s (%.1f MB/s, %d threads)",
+                        new File(filePath).getName(), totalRows, megabytes, seconds,
+                        megabytes / Math.max(seconds, 1e-9), pool.getParallelism()));
+                return data;
+            } finally {
+                AttackScheduler.releaseNestedPool(pool);
+            }
+        }
+    }
+
+    /**
+     * Parse an ARFF stream into primitive columns. The stream is read in
+     * line-aligned blocks that are parsed in parallel while the next block is
+     * being read; at most two blocks per thread are pending at any time.
+     */
+    public static ColumnarData load(InputStream in, String name, int numThreads) throws Exception {
+        long startTime = System.nanoTime();
+
+        // Header: read until the @data line is complete
+        byte[] buffer = new byte[MAX_CHUNK_BYTES];
+        int filled = 0;
+        int dataStart = -1;
+        boolean endOfStream = false;
+        while (dataStart < 0) {
+            if (filled == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.readNBytes(buffer, filled, buffer.length - filled);
+            filled += read;
+            endOfStream = filled < buffer.length;
+            dataStart = findDataSection(ByteBuffer.wrap(buffer), filled, endOfStream);
+            if (dataStart < 0 && endOfStream) {
+                throw new IOException("No @data section found in " + name);
+            }
+        }
+        Instances header = parseHeader(buffer, dataStart);
+        long totalBytes = filled;
+
+        ForkJoinPool pool = AttackScheduler.nestedPool(numThreads);
+        try {
+            List<Future<ColumnarData>> blocks = new ArrayList<>();
+            int waited = 0;
+
+            byte[] leftover = Arrays.copyOfRange(buffer, dataStart, filled);
+            while (true) {
+                byte[] block = Arrays.copyOf(leftover, Math.max(MAX_CHUNK_BYTES, leftover.length * 2));
+                int length = leftover.length;
+                if (!endOfStream) {
+                    int read = in.readNBytes(block, length, block.length - length);
+                    totalBytes += read;
+                    length += read;
+                    endOfStream = length < block.length;
+                }
+
+                // Cut after the last complete line; the rest starts the next block
+                int cut = length;
+                if (!endOfStream) {
+                    while (cut > 0 && block[cut - 1] != '\n') {
+                        cut--;
+                    }
+                }
+                leftover = Arrays.copyOfRange(block, cut, length);
+
+                if (cut > 0) {
+                    int blockLength = cut;
+                    blocks.add(pool.submit(() -> {
+                        ColumnarData part = new ColumnarData(header, countRows(ByteBuffer.wrap(block), 0, blockLength));
+                        new ChunkParser(part).parse(block, blockLength, 0);
+                        return part;
+                    }));
+                }
+                while (blocks.size() - waited > 2 * numThreads) {
+                    getResult(blocks.get(waited++));
+                }
+                if (endOfStream && leftover.length == 0) {
+                    break;
+                }
+            }
+
+            // Concatenate the parsed blocks
+            List<ColumnarData> parts = new ArrayList<>();
+            long totalRows = 0;
+            for (Future<ColumnarData> block : blocks) {
+                ColumnarData part = getResult(block);
+                parts.add(part);
+                totalRows += part.numRows;
+            }
+            if (totalRows > Integer.MAX_VALUE) {
+                throw new UnsupportedArffException("more than " + Integer.MAX_VALUE + " rows");
+            }
+
+            ColumnarData data = new ColumnarData(header, (int) totalRows);
+            int row = 0;
+            for (ColumnarData part : parts) {
+                for (int a = 0; a < data.columns.length; a++) {
+                    if (data.columns[a] != null) {
+                        System.arraycopy(part.columns[a], 0, data.columns[a], row, part.numRows);
+                    }
+                }
+                if (data.classValues != null) {
+                    System.arraycopy(part.classValues, 0, data.classValues, row, part.numRows);
+                }
+                row += part.numRows;
+            }
+
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            double megabytes = totalBytes / (1024.0 * 1024.0);
+            System.out.println(String.format("  ✓ Parsed %s: %d rows, %.1f MB in %.2f s (%.1f MB/s, %d threads)",
+                    name, totalRows, megabytes, seconds, megabytes / Math.max(seconds, 1e-9), pool.getParallelism()));
+            return data;
+        } finally {
+            AttackScheduler.releaseNestedPool(pool);
+        }
+    }
+
+    private static Instances parseHeader(byte[] bytes, int length) throws IOException {
+        Instances header = new Instances(new StringReader(new String(bytes, 0, length, StandardCharsets.UTF_8)));
+        checkAttributes(header);
+        return header;
+    }
+
+    // ==================== COLUMNAR RESULT ====================
+
+    /**
+     * Dataset held as primitive columns. The class is the last attribute;
+     * when it is nominal its values are kept in classValues (-1 = missing)
+     * and columns[classIndex] is null.
+     */
+    public static class ColumnarData {
+        public final Instances header;
+        public final int numRows;
+        public final int classIndex;
+        public final double[][] columns;
+        public final int[] classValues;
+
+        ColumnarData(Instances header, int numRows) {
+            this.header = header;
+            this.numRows = numRows;
+            this.classIndex = header.numAttributes() - 1;
+            this.columns = new double[header.numAttributes()][];
+            boolean nominalClass = header.attribute(classIndex).isNominal();
+            for (int a = 0; a < columns.length; a++) {
+                if (a != classIndex || !nominalClass) {
+                    columns[a] = new double[numRows];
+                }
+            }
+            this.classValues = nominalClass ? new int[numRows] : null;
+        }
+
+        /**
+         * Value of an attribute as Weka stores it (nominal = index, missing = NaN)
+         */
+        public double value(int row, int attributeIndex) {
+            if (attributeIndex == classIndex && classValues != null) {
+                int v = classValues[row];
+                return (v < 0) ? Utils.missingValue() : v;
+            }
+            return columns[attributeIndex][row];
+        }
+
+        /**
+         * Build a Weka Instances view (one DenseInstance per row)
+         */
+        public Instances toInstances() {
+            int numAttributes = header.numAttributes();
+            Instances data = new Instances(header, numRows);
+            for (int i = 0; i < numRows; i++) {
+                double[] values = new double[numAttributes];
+                for (int a = 0; a < numAttributes; a++) {
+                    values[a] = value(i, a);
+                }
+                data.add(new DenseInstance(1.0, values));
+            }
+            return data;
+        }
+    }
+
+    // ==================== CHUNKING ====================
+
+    /**
+     * Offset of the first byte after the @data line in buffer[0, limit)
+     *
+     * @param complete Whether limit is the end of the file (otherwise an
+     *                 unterminated last line is not looked at yet)
+     * @return The offset, or -1 when there is no @data line (yet)
+     */
+    private static int findDataSection(ByteBuffer buffer, int limit, boolean complete) {
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == limit && !complete) {
+                break;
+            }
+            int s = skipBlanks(buffer, lineStart, lineEnd);
+            if (lineEnd - s >= 5 && buffer.get(s) == '@'
+                    && matchesIgnoreCase(buffer, s + 1, "data")) {
+                return Math.min(limit, lineEnd + 1);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return -1;
+    }
+
+    private static boolean matchesIgnoreCase(ByteBuffer buffer, int offset, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toLowerCase((char) buffer.get(offset + i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cut [start, end) into chunks that end on a line break
+     */
+    private static List<int[]> splitIntoChunks(ByteBuffer buffer, int start, int end, int numThreads) {
+        long length = end - start;
+        int numChunks = (int) Math.max(numThreads * 4L, (length + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+        long chunkSize = Math.max(1, length / Math.max(1, numChunks));
+
+        List<int[]> chunks = new ArrayList<>();
+        int chunkStart = start;
+        while (chunkStart < end) {
+            int chunkEnd = (int) Math.min(end, chunkStart + chunkSize);
+            while (chunkEnd < end && buffer.get(chunkEnd - 1) != '\n') {
+                chunkEnd++;
+            }
+            chunks.add(new int[] {chunkStart, chunkEnd});
+            chunkStart = chunkEnd;
+        }
+        return chunks;
+    }
+
+    /**
+     * Count data lines (non-blank, not comments) in [start, end)
+     */
+    private static int countRows(ByteBuffer buffer, int start, int end) {
+        int rows = 0;
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (isDataLine(buffer, lineStart, lineEnd)) {
+                rows++;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return rows;
+    }
+
+    private static boolean isDataLine(ByteBuffer buffer, int lineStart, int lineEnd) {
+        int s = skipBlanks(buffer, lineStart, lineEnd);
+        return s < lineEnd && buffer.get(s) != '%' && buffer.get(s) != '\r';
+    }
+
+    private static int skipBlanks(ByteBuffer buffer, int from, int to) {
+        while (from < to && (buffer.get(from) == ' ' || buffer.get(from) == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    // ==================== PARSING ====================
+
+    /**
+     * Parses one chunk (copied into a local byte[]) into a slice of the columns
+     */
+    private static class ChunkParser {
+        private final ColumnarData data;
+        private final Attribute[] attributes;
+        private final byte[][][] nominalBytes;   // per nominal attribute, UTF-8 bytes of each label
+        private byte[] bytes;
+        private int currentRow;
+
+        ChunkParser(ColumnarData data) {
+            this.data = data;
+            int numAttributes = data.header.numAttributes();
+            this.attributes = new Attribute[numAttributes];
+            this.nominalBytes = new byte[numAttributes][][];
+            for (int a = 0; a < numAttributes; a++) {
+                attributes[a] = data.header.attribute(a);
+                if (attributes[a].isNominal()) {
+                    nominalBytes[a] = new byte[attributes[a].numValues()][];
+                    for (int v = 0; v < attributes[a].numValues(); v++) {
+                        nominalBytes[a][v] = attributes[a].value(v).getBytes(StandardCharsets.UTF_8);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return Number of rows parsed
+         */
+        int parse(byte[] chunk, int length, int firstRow) throws IOException {
+            bytes = chunk;
+
+            int row = firstRow;
+            int lineStart = 0;
+            while (lineStart < length) {
+                int lineEnd = lineStart;
+                while (lineEnd < length && bytes[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                int trimmedEnd = lineEnd;
+                if (trimmedEnd > lineStart && bytes[trimmedEnd - 1] == '\r') {
+                    trimmedEnd--;
+                }
+                int s = skip(lineStart, trimmedEnd);
+                if (s < trimmedEnd && bytes[s] != '%') {
+                    parseLine(s, trimmedEnd, row++);
+                }
+                lineStart = lineEnd + 1;
+            }
+            return row - firstRow;
+        }
+
+        private void parseLine(int pos, int end, int row) throws IOException {
+            currentRow = row;
+            if (bytes[pos] == '{') {
+                throw new UnsupportedArffException("sparse ARFF rows");
+            }
+
+            for (int a = 0; a < attributes.length; a++) {
+                pos = skip(pos, end);
+                if (pos >= end) {
+                    throw error("expected " + attributes.length + " values");
+                }
+
+                int tokenStart;
+                int tokenEnd;
+                boolean quoted = bytes[pos] == '\'' || bytes[pos] == '"';
+                boolean escaped = false;
+                if (quoted) {
+                    byte quote = bytes[pos];
+                    tokenStart = pos + 1;
+                    tokenEnd = tokenStart;
+                    while (tokenEnd < end && bytes[tokenEnd] != quote) {
+                        if (bytes[tokenEnd] == '\\') {
+                            escaped = true;
+                            tokenEnd++;
+                        }
+                        tokenEnd++;
+                    }
+                    if (tokenEnd >= end) {
+                        throw error("unterminated quote");
+                    }
+                    pos = skip(tokenEnd + 1, end);
+                } else {
+                    tokenStart = pos;
+                    while (pos < end && bytes[pos] != ',') {
+                        pos++;
+                    }
+                    tokenEnd = pos;
+                    while (tokenEnd > tokenStart && (bytes[tokenEnd - 1] == ' ' || bytes[tokenEnd - 1] == '\t')) {
+                        tokenEnd--;
+                    }
+                }
+
+                // Separator (or end of line after the last value)
+                if (a < attributes.length - 1) {
+                    if (pos >= end || bytes[pos] != ',') {
+                        throw error("expected " + attributes.length + " values");
+                    }
+                    pos++;
+                } else if (pos < end) {
+                    int next = skip(pos + 1, end);
+                    if (bytes[pos] == ',' && next < end && bytes[next] == '{') {
+                        throw new UnsupportedArffException("instance weights");
+                    }
+                    throw error("too many values");
+                }
+
+                store(a, row, tokenStart, tokenEnd, quoted, escaped);
+            }
+        }
+
+        private void store(int a, int row, int tokenStart, int tokenEnd, boolean quoted, boolean escaped)
+                throws IOException {
+            boolean missing = !quoted && tokenEnd - tokenStart == 1 && bytes[tokenStart] == '?';
+
+            if (attributes[a].isNumeric()) {
+                data.columns[a][row] = missing ? Utils.missingValue() : parseNumber(tokenStart, tokenEnd);
+                return;
+            }
+
+            int index = missing ? -1 : nominalIndex(a, tokenStart, tokenEnd, escaped);
+            if (a == data.classIndex && data.classValues != null) {
+                data.classValues[row] = index;
+            } else {
+                data.columns[a][row] = (index < 0) ? Utils.missingValue() : index;
+            }
+        }
+
+        private int nominalIndex(int a, int tokenStart, int tokenEnd, boolean escaped) throws IOException {
+            if (escaped) {
+                String label = Utils.unbackQuoteChars(
+                        new String(bytes, tokenStart, tokenEnd - tokenStart, StandardCharsets.UTF_8));
+                int index = attributes[a].indexOfValue(label);
+                if (index < 0) {
+                    throw error("nominal value not declared in header: " + label);
+                }
+                return index;
+            }
+
+            byte[][] labels = nominalBytes[a];
+            int length = tokenEnd - tokenStart;
+            for (int v = 0; v < labels.length; v++) {
+                byte[] label = labels[v];
+                if (label.length == length && regionMatches(label, tokenStart)) {
+                    return v;
+                }
+            }
+            throw error("nominal value not declared in header: "
+                    + new String(bytes, tokenStart, length, StandardCharsets.UTF_8));
+        }
+
+        private boolean regionMatches(byte[] label, int offset) {
+            for (int i = 0; i < label.length; i++) {
+                if (bytes[offset + i] != label[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Parse a decimal number. Mantissas below 2^53 with a power of ten up to
+         * 10^22 are computed exactly (one correctly rounded multiply/divide);
+         * anything else goes through Double.parseDouble().
+         */
+        private double parseNumber(int start, int end) throws IOException {
+            int i = start;
+            boolean negative = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negative = bytes[i] == '-';
+                i++;
+            }
+
+            long mantissa = 0;
+            int significantDigits = 0;
+            int exponent = 0;
+            boolean anyDigit = false;
+
+            while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+                mantissa = mantissa * 10 + (bytes[i] - '0');
+                if (mantissa != 0) significantDigits++;
+                anyDigit = true;
+                i++;
+            }
+            if (i < end && bytes[i] == '.') {
+                i++;
+                while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+                    mantissa = mantissa * 10 + (bytes[i] - '0');
+                    if (mantissa != 0) significantDigits++;
+                    exponent--;
+                    anyDigit = true;
+                    i++;
+                }
+            }
+            if (anyDigit && i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+                i++;
+                boolean negativeExponent = false;
+                if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                    negativeExponent = bytes[i] == '-';
+                    i++;
+                }
+                int e = 0;
+                boolean anyExponentDigit = false;
+                while (i < end && bytes[i] >= '0' && bytes[i] <= '9' && e < 10000) {
+                    e = e * 10 + (bytes[i] - '0');
+                    anyExponentDigit = true;
+                    i++;
+                }
+                if (!anyExponentDigit) {
+                    return slowParse(start, end);
+                }
+                exponent += negativeExponent ? -e : e;
+            }
+
+            if (!anyDigit || i != end || significantDigits > 18 || mantissa > (1L << 53)
+                    || exponent < -22 || exponent > 22) {
+                return slowParse(start, end);
+            }
+
+            double value = (exponent >= 0)
+                    ? mantissa * POWERS_OF_TEN[exponent]
+                    : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+
+        private double slowParse(int start, int end) throws IOException {
+            String token = new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+            try {
+                return Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw error("number expected, read '" + token + "'");
+            }
+        }
+
+        private int skip(int from, int to) {
+            while (from < to && (bytes[from] == ' ' || bytes[from] == '\t')) {
+                from++;
+            }
+            return from;
+        }
+
+        private IOException error(String message) {
+            return new IOException("ARFF data row " + (currentRow + 1) + ": " + message);
+        }
+    }
+
+    /**
+     * Checks the header only uses attribute types the parser supports
+     */
+    private static void checkAttributes(Instances header) throws UnsupportedArffException {
+        for (int a = 0; a < header.numAttributes(); a++) {
+            Attribute attribute = header.attribute(a);
+            if (!attribute.isNumeric() && !attribute.isNominal()) {
+                throw new UnsupportedArffException(Attribute.typeToString(attribute) + " attribute " + attribute.name());
+            }
+            if (attribute.isNumeric() && attribute.type() != Attribute.NUMERIC) {
+                throw new UnsupportedArffException(Attribute.typeToString(attribute) + " attribute " + attribute.name());
+            }
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // ForkJoinPool wraps checked exceptions of a Callable in plain RuntimeExceptions
+            while (cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * ARFF content the fast parser leaves to Weka's loader
+     */
+    static class UnsupportedArffException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedArffException(String reason) {
+            super("fast ARFF parser does not support " + reason);
+        }
+    }
+}
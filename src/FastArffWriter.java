@@ -0,0 +1,413 @@
+package privacyguard;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ArffSaver;
+
+/**
+ * Fast Parallel ARFF Writer
+ *
+ * Writes the same bytes as ArffSaver.writeBatch(), but formats blocks of rows
+ * in parallel into byte arrays and writes them in order through a large NIO
+ * buffer. Numbers are formatted without creating Strings: a value is scaled to
+ * ArffSaver's maximum number of decimal places and rounded as an integer, and
+ * only values whose rounding is not clear-cut (near a tie, or too large) go
+ * through Weka's Utils.doubleToString(). Rows that are not dense, have a
+ * weight, or use string/date/relational attributes use Weka's own row format.
+ *
+ * A path ending in ".gz" is gzip-compressed on a separate thread; Weka reads
+ * such .arff.gz files back directly.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class FastArffWriter {
+
+    private static final int ROWS_PER_CHUNK = 8192;
+    private static final int WRITE_BUFFER_BYTES = 4 * 1024 * 1024;
+    private static final int GZIP_QUEUE_CHUNKS = 8;
+    private static final byte[] END_OF_DATA = new byte[0];
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L,
+        1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+        100000000000000L, 1000000000000000L
+    };
+
+    /**
+     * Write a dataset as ARFF (gzip-compressed when the path ends in ".gz")
+     */
+    public static void write(Instances data, String filePath) throws Exception {
+        int numThreads = ConfigLoader.getIntProperty("writer.threads", 0);
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+        write(data, filePath, numThreads);
+    }
+
+    /**
+     * Write a dataset as ARFF with the given number of formatting threads
+     */
+    public static void write(Instances data, String filePath, int numThreads) throws Exception {
+        File file = new File(filePath);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        RowFormatter formatter = new RowFormatter(data, new ArffSaver().getMaxDecimalPlaces());
+        byte[] header = new Instances(data, 0).toString().getBytes(StandardCharsets.UTF_8);
+        int numRows = data.numInstances();
+
+        try (ChunkSink sink = filePath.toLowerCase().endsWith(".gz") ? new GzipSink(file) : new ChannelSink(file)) {
+            sink.write(header);
+
+            if (numThreads <= 1 || numRows <= ROWS_PER_CHUNK) {
+                for (int start = 0; start < numRows; start += ROWS_PER_CHUNK) {
+                    sink.write(formatter.format(start, Math.min(numRows, start + ROWS_PER_CHUNK)));
+                }
+                return;
+            }
+
+            // Chunks are formatted in parallel and written in order; at most two per thread are pending
+            ForkJoinPool pool = AttackScheduler.nestedPool(numThreads);
+            try {
+                Deque<Future<byte[]>> pending = new ArrayDeque<>();
+                for (int start = 0; start < numRows; start += ROWS_PER_CHUNK) {
+                    int from = start;
+                    int to = Math.min(numRows, start + ROWS_PER_CHUNK);
+                    pending.add(pool.submit(() -> formatter.format(from, to)));
+                    while (pending.size() > 2 * numThreads) {
+                        sink.write(getResult(pending.poll()));
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    sink.write(getResult(pending.poll()));
+                }
+            } finally {
+                AttackScheduler.releaseNestedPool(pool);
+            }
+        }
+    }
+
+    // ==================== FORMATTING ====================
+
+    /**
+     * Formats rows exactly as Instance.toStringMaxDecimalDigits() followed by a line break
+     */
+    private static class RowFormatter {
+        private final Instances data;
+        private final int maxDecimalPlaces;
+        private final boolean[] nominal;
+        private final byte[][][] quotedLabels;   // per nominal attribute, Utils.quote()d label bytes
+        private final boolean simpleAttributes;
+        private final byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+        RowFormatter(Instances data, int maxDecimalPlaces) {
+            this.data = data;
+            this.maxDecimalPlaces = maxDecimalPlaces;
+            int numAttributes = data.numAttributes();
+            this.nominal = new boolean[numAttributes];
+            this.quotedLabels = new byte[numAttributes][][];
+
+            boolean simple = true;
+            for (int a = 0; a < numAttributes; a++) {
+                Attribute attribute = data.attribute(a);
+                if (attribute.isNominal()) {
+                    nominal[a] = true;
+                    quotedLabels[a] = new byte[attribute.numValues()][];
+                    for (int v = 0; v < attribute.numValues(); v++) {
+                        quotedLabels[a][v] = Utils.quote(attribute.value(v)).getBytes(StandardCharsets.UTF_8);
+                    }
+                } else if (!attribute.isNumeric() || attribute.type() != Attribute.NUMERIC) {
+                    simple = false;
+                }
+            }
+            this.simpleAttributes = simple;
+        }
+
+        byte[] format(int from, int to) {
+            ByteBuilder out = new ByteBuilder((to - from) * data.numAttributes() * 8 + 64);
+            for (int i = from; i < to; i++) {
+                Instance row = data.instance(i);
+                if (simpleAttributes && row instanceof DenseInstance && row.weight() == 1.0) {
+                    formatDenseRow(row, out);
+                } else {
+                    out.appendString(row.toStringMaxDecimalDigits(maxDecimalPlaces));
+                }
+                out.append(lineSeparator);
+            }
+            return out.toByteArray();
+        }
+
+        private void formatDenseRow(Instance row, ByteBuilder out) {
+            int numAttributes = nominal.length;
+            for (int a = 0; a < numAttributes; a++) {
+                if (a > 0) {
+                    out.append((byte) ',');
+                }
+                double value = row.value(a);
+                if (Double.isNaN(value)) {
+                    out.append((byte) '?');
+                } else if (nominal[a]) {
+                    out.append(quotedLabels[a][(int) value]);
+                } else {
+                    appendNumber(value, out);
+                }
+            }
+        }
+
+        /**
+         * Same digits as Utils.doubleToString(value, maxDecimalPlaces): rounded
+         * half-even to maxDecimalPlaces, no trailing zeros, no grouping
+         */
+        private void appendNumber(double value, ByteBuilder out) {
+            if (maxDecimalPlaces >= POWERS_OF_TEN.length) {
+                out.appendString(Utils.doubleToString(value, maxDecimalPlaces));
+                return;
+            }
+
+            long scale = POWERS_OF_TEN[maxDecimalPlaces];
+            double scaled = Math.abs(value) * scale;
+            if (!(scaled < (double) (1L << 52))) {
+                out.appendString(Utils.doubleToString(value, maxDecimalPlaces));
+                return;
+            }
+
+            // The product is within half an ulp of the exact one, so the rounding
+            // direction is certain unless the fraction is within an ulp of one half
+            double floor = Math.floor(scaled);
+            double fraction = scaled - floor;
+            if (Math.abs(fraction - 0.5) <= Math.ulp(scaled)) {
+                out.appendString(Utils.doubleToString(value, maxDecimalPlaces));
+                return;
+            }
+            long rounded = (long) floor + (fraction > 0.5 ? 1 : 0);
+
+            if (Double.doubleToRawLongBits(value) < 0) {
+                out.append((byte) '-');
+            }
+            out.appendLong(rounded / scale);
+
+            long fractionDigits = rounded % scale;
+            if (fractionDigits != 0) {
+                int digits = maxDecimalPlaces;
+                while (fractionDigits % 10 == 0) {
+                    fractionDigits /= 10;
+                    digits--;
+                }
+                out.append((byte) '.');
+                for (int d = digits - 1; d >= 0; d--) {
+                    out.append((byte) ('0' + (fractionDigits / POWERS_OF_TEN[d]) % 10));
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable byte array
+     */
+    private static class ByteBuilder {
+        private byte[] bytes;
+        private int length;
+
+        ByteBuilder(int capacity) {
+            this.bytes = new byte[Math.max(16, capacity)];
+        }
+
+        void append(byte b) {
+            ensure(1);
+            bytes[length++] = b;
+        }
+
+        void append(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, length, b.length);
+            length += b.length;
+        }
+
+        void appendString(String s) {
+            byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+            append(encoded);
+        }
+
+        void appendLong(long value) {
+            if (value == 0) {
+                append((byte) '0');
+                return;
+            }
+            int digits = 0;
+            for (long v = value; v > 0; v /= 10) {
+                digits++;
+            }
+            ensure(digits);
+            for (int i = length + digits - 1; i >= length; i--) {
+                bytes[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += digits;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+
+    // ==================== OUTPUT ====================
+
+    private interface ChunkSink extends AutoCloseable {
+        void write(byte[] chunk) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * Plain file written through a FileChannel and a large direct buffer
+     */
+    private static class ChannelSink implements ChunkSink {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+
+        ChannelSink(File file) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        }
+
+        @Override
+        public void write(byte[] chunk) throws IOException {
+            int offset = 0;
+            while (offset < chunk.length) {
+                int count = Math.min(buffer.remaining(), chunk.length - offset);
+                buffer.put(chunk, offset, count);
+                offset += count;
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Gzip-compressed file; compression runs on its own thread behind a bounded queue
+     */
+    private static class GzipSink implements ChunkSink {
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(GZIP_QUEUE_CHUNKS);
+        private final Thread compressor;
+        private volatile IOException error;
+
+        GzipSink(File file) throws IOException {
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(file), WRITE_BUFFER_BYTES);
+            this.compressor = new Thread(() -> {
+                try (OutputStream gzip = out) {
+                    // After a failed write keep draining the queue, so producers never block on it
+                    byte[] chunk;
+                    while ((chunk = queue.take()) != END_OF_DATA) {
+                        if (error == null) {
+                            try {
+                                gzip.write(chunk);
+                            } catch (IOException e) {
+                                error = e;
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "arff-gzip");
+            compressor.setDaemon(true);
+            compressor.start();
+        }
+
+        @Override
+        public void write(byte[] chunk) throws IOException {
+            if (error != null) {
+                throw error;
+            }
+            put(chunk);
+        }
+
+        @Override
+        public void close() throws IOException {
+            put(END_OF_DATA);
+            try {
+                compressor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while compressing", e);
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        private void put(byte[] chunk) throws IOException {
+            try {
+                queue.put(chunk);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while compressing", e);
+            }
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // ForkJoinPool wraps checked exceptions of a Callable in plain RuntimeExceptions
+            while (cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package privacyguard;
 
 import weka.core.Instances;
-import weka.core.converters.ConverterUtils.DataSource;
 import java.io.*;
 import java.util.*;
 
@@ -144,8 +143,7 @@ public class IndicesGenerator {
             String datasetPath = ORIGINAL_DIR + datasetPrefix + ".arff";
             System.out.println("  Loading: " + datasetPath);
 
-            DataSource source = new DataSource(datasetPath);
-            Instances data = source.getDataSet();
+            Instances data = DatasetCache.load(datasetPath);
             data.setClassIndex(data.numAttributes() - 1);
 
             System.out.println("  Total instances: " + data.numInstances());
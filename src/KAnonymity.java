@@ -17,6 +17,13 @@ import java.util.*;
  * 2. Group consecutive records into groups of size k
  * 3. Replace each group with their centroid
  *
+ * The ordering of step 1 does not depend on k, so prepareSweep sorts once and
+ * keeps per-attribute prefix sums (and sums of squares) over the sorted order;
+ * the resulting Sweep produces the synthetic dataset of any k without
+ * re-sorting (O(n d), identical to generateSyntheticData) and its utility
+ * summary from the prefix sums alone (O(n d / k)), e.g. to explore k = 2..50
+ * in one call.
+ *
  * Parameters:
  * - k: Minimum equivalence class size (default: 5)
  *
@@ -148,6 +155,250 @@ public class KAnonymity {
         return syntheticData;
     }
 
+    /**
+     * Sort the records once for a sweep over many k values
+     *
+     * @param data Original dataset
+     * @return Sweep producing the micro-aggregation of any k
+     */
+    public Sweep prepareSweep(Instances data) {
+        System.out.println("  k-anonymity: Preparing sweep (one sort for all k)...");
+        // The centroid and distances cover every attribute, as in generateSyntheticData
+        double[] centroid = calculateCentroid(data);
+
+        int n = data.numInstances();
+        double[] distances = new double[n];
+        Integer[] sorted = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            distances[i] = euclideanDistance(data.instance(i), centroid);
+            sorted[i] = i;
+        }
+        // Stable, like generateSyntheticData: ties keep their original order
+        Arrays.sort(sorted, Comparator.comparingDouble(i -> distances[i]));
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = sorted[i];
+        }
+        return new Sweep(data, order, centroid);
+    }
+
+    /**
+     * Parse a list of k values such as "2-50" or "2,5,10,20-25"
+     */
+    public static int[] parseKValues(String values) {
+        List<Integer> ks = new ArrayList<>();
+        for (String part : values.split(",")) {
+            part = part.trim();
+            int dash = part.indexOf('-', 1);
+            if (dash < 0) {
+                ks.add(Integer.parseInt(part));
+            } else {
+                int from = Integer.parseInt(part.substring(0, dash).trim());
+                int to = Integer.parseInt(part.substring(dash + 1).trim());
+                for (int k = from; k <= to; k++) {
+                    ks.add(k);
+                }
+            }
+        }
+        int[] result = new int[ks.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ks.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Print utility summaries as a table
+     */
+    public static void printSummaries(List<UtilitySummary> summaries) {
+        System.out.println("  k-anonymity sweep (information loss = within-group SS / total SS):");
+        System.out.println(String.format("    %6s %10s %10s %12s", "k", "Groups", "Smallest", "Info Loss"));
+        for (UtilitySummary summary : summaries) {
+            System.out.println(String.format("    %6d %10d %10d %11.4f%%", summary.k, summary.numGroups,
+                    summary.smallestGroup, summary.informationLoss * 100));
+        }
+    }
+
+    /**
+     * Records sorted by distance to the dataset centroid, with prefix sums per
+     * attribute over that order for the utility summaries. Values are centred
+     * on the attribute mean before summing, which keeps the differences of
+     * prefix sums accurate. Synthetic datasets are written from exact group
+     * sums instead, so they are the same as those of generateSyntheticData.
+     * Groups are formed exactly as in generateSyntheticData: consecutive runs
+     * of k records, then one group of the n mod k remaining records.
+     */
+    public static class Sweep {
+        private final Instances data;
+        private final int[] order;
+        private final int numInstances;
+        private final int classIndex;
+        private final double[] means;
+        private final double[][] sums;        // [attribute][i]: sum of the first i sorted values (null for the class)
+        private final double[][] squares;     // likewise, sums of squares
+        private final int[][] counts;         // likewise, non-missing counts (null when nothing is missing)
+        private final double totalSS;
+
+        private Sweep(Instances data, int[] order, double[] means) {
+            this.data = data;
+            this.order = order;
+            this.numInstances = order.length;
+            this.classIndex = data.classIndex();
+            this.means = means;
+
+            int numAttributes = data.numAttributes();
+            sums = new double[numAttributes][];
+            squares = new double[numAttributes][];
+            counts = new int[numAttributes][];
+            double total = 0;
+            for (int attrIdx = 0; attrIdx < numAttributes; attrIdx++) {
+                if (attrIdx == classIndex) continue;
+                double[] sum = new double[numInstances + 1];
+                double[] square = new double[numInstances + 1];
+                int[] count = hasMissing(attrIdx) ? new int[numInstances + 1] : null;
+                for (int i = 0; i < numInstances; i++) {
+                    double val = data.instance(order[i]).value(attrIdx);
+                    if (Double.isNaN(val)) {
+                        sum[i + 1] = sum[i];
+                        square[i + 1] = square[i];
+                        count[i + 1] = count[i];
+                    } else {
+                        double centred = val - means[attrIdx];
+                        sum[i + 1] = sum[i] + centred;
+                        square[i + 1] = square[i] + centred * centred;
+                        if (count != null) {
+                            count[i + 1] = count[i] + 1;
+                        }
+                    }
+                }
+                sums[attrIdx] = sum;
+                squares[attrIdx] = square;
+                counts[attrIdx] = count;
+                total += square[numInstances];
+            }
+            this.totalSS = total;
+        }
+
+        /**
+         * Synthetic dataset for one k, identical to generateSyntheticData: each
+         * group centroid is summed exactly over the group's records in sorted
+         * order (one pass over the data, O(n d))
+         */
+        public Instances generateSyntheticData(int k) {
+            checkK(k);
+            Instances syntheticData = new Instances(data);
+            double[] groupCentroid = new double[data.numAttributes()];
+            for (int start = 0; start < numInstances; start = groupEnd(start, k)) {
+                int end = groupEnd(start, k);
+                for (int attrIdx = 0; attrIdx < groupCentroid.length; attrIdx++) {
+                    if (attrIdx == classIndex) continue;
+                    double sum = 0;
+                    int count = 0;
+                    for (int i = start; i < end; i++) {
+                        double val = data.instance(order[i]).value(attrIdx);
+                        if (!Double.isNaN(val)) {
+                            sum += val;
+                            count++;
+                        }
+                    }
+                    groupCentroid[attrIdx] = count > 0 ? sum / count : 0;
+                }
+                for (int i = start; i < end; i++) {
+                    weka.core.Instance instance = syntheticData.instance(order[i]);
+                    for (int attrIdx = 0; attrIdx < groupCentroid.length; attrIdx++) {
+                        if (attrIdx == classIndex) continue;
+                        instance.setValue(attrIdx, groupCentroid[attrIdx]);
+                    }
+                }
+            }
+            return syntheticData;
+        }
+
+        /**
+         * Utility of the micro-aggregation for one k, from the prefix sums only
+         */
+        public UtilitySummary summarize(int k) {
+            checkK(k);
+            int numGroups = 0;
+            int smallestGroup = Integer.MAX_VALUE;
+            double withinSS = 0;
+            for (int start = 0; start < numInstances; start = groupEnd(start, k)) {
+                int end = groupEnd(start, k);
+                numGroups++;
+                smallestGroup = Math.min(smallestGroup, end - start);
+                for (int attrIdx = 0; attrIdx < sums.length; attrIdx++) {
+                    if (attrIdx == classIndex) continue;
+                    int count = count(attrIdx, start, end);
+                    if (count == 0) continue;
+                    double sum = sums[attrIdx][end] - sums[attrIdx][start];
+                    double square = squares[attrIdx][end] - squares[attrIdx][start];
+                    withinSS += Math.max(0, square - sum * sum / count);
+                }
+            }
+            if (numGroups == 0) {
+                smallestGroup = 0;
+            }
+            double informationLoss = (totalSS > 0) ? withinSS / totalSS : 0;
+            return new UtilitySummary(k, numGroups, smallestGroup, withinSS, informationLoss);
+        }
+
+        /**
+         * Utility summaries for several k values, in the order given
+         */
+        public List<UtilitySummary> summarize(int[] ks) {
+            List<UtilitySummary> summaries = new ArrayList<>();
+            for (int k : ks) {
+                summaries.add(summarize(k));
+            }
+            return summaries;
+        }
+
+        private int groupEnd(int start, int k) {
+            int fullGroups = numInstances / k;
+            return (start < fullGroups * k) ? start + k : numInstances;
+        }
+
+        private int count(int attrIdx, int start, int end) {
+            int[] count = counts[attrIdx];
+            return (count == null) ? end - start : count[end] - count[start];
+        }
+
+        private boolean hasMissing(int attrIdx) {
+            for (int i = 0; i < numInstances; i++) {
+                if (Double.isNaN(data.instance(i).value(attrIdx))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static void checkK(int k) {
+            if (k < 1) {
+                throw new IllegalArgumentException("k must be at least 1: " + k);
+            }
+        }
+    }
+
+    /**
+     * Utility of the micro-aggregation for one k
+     */
+    public static class UtilitySummary {
+        public final int k;
+        public final int numGroups;
+        public final int smallestGroup;     // the remainder group when n is not a multiple of k
+        public final double withinGroupSS;  // squared distance of the values to their group centroids
+        public final double informationLoss;  // withinGroupSS / total SS around the attribute means
+
+        UtilitySummary(int k, int numGroups, int smallestGroup, double withinGroupSS, double informationLoss) {
+            this.k = k;
+            this.numGroups = numGroups;
+            this.smallestGroup = smallestGroup;
+            this.withinGroupSS = withinGroupSS;
+            this.informationLoss = informationLoss;
+        }
+    }
+
     /**
      * Remove class attribute from dataset
      */
@@ -0,0 +1,305 @@
+package privacyguard;
+
+/**
+ * KD-Tree over Dense Records for Exact Distance Queries
+ *
+ * Indexes n points of d dimensions (row-major, no missing values) and answers
+ * the two queries the re-identification attack needs, with results identical
+ * to a linear scan:
+ *   nearest()      - the closest point (lowest index on ties) and its distance
+ *   countCloser()  - how many points are strictly closer than a given distance
+ *
+ * Distances are d(a, b) = sqrt(Σ (a_k - b_k)^2 / d), summed in attribute order
+ * exactly as ReIdentificationAttack computes them. Bounding boxes are only used
+ * to skip a node, or to count a whole node at once, when the decision holds
+ * with a relative safety margin; every borderline point is compared with its
+ * exactly computed distance, so rounding never changes a result.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class KDTreeIndex {
+
+    private static final int LEAF_SIZE = 16;
+    private static final double MARGIN = 1e-9;        // relative margin on sums of squares
+    private static final double TINY = 1e-300;        // absolute margin near zero
+    private static final int MAX_DEPTH = 128;
+
+    private final int numPoints;
+    private final int dims;
+    private final double[] points;     // reordered, row-major
+    private final int[] pointIndex;    // original index of every reordered point
+    private final int[] position;      // reordered position of every original index
+
+    // Nodes (root = 0)
+    private int numNodes;
+    private int[] nodeStart;
+    private int[] nodeEnd;
+    private int[] nodeLeft;            // -1 = leaf
+    private int[] nodeRight;
+    private int[] nodeSplitDim;
+    private double[] nodeSplitValue;
+    private double[] boxMin;           // [node * dims + k]
+    private double[] boxMax;
+
+    /**
+     * Approximate heap use of the tree over numPoints points: node arrays,
+     * bounding boxes and the reordered copy of the points
+     */
+    public static long estimateBytes(long numPoints, long dims) {
+        long capacity = 2 * (numPoints / (LEAF_SIZE / 2) + 1);
+        return capacity * (5 * 4 + 8 + 2 * 8 * dims) + numPoints * (8 * dims + 2 * 4);
+    }
+
+    /**
+     * Build the tree
+     *
+     * @param data Points, row-major (data[i * dims + k]); not modified
+     * @param numPoints Number of points
+     * @param dims Number of dimensions
+     */
+    public KDTreeIndex(double[] data, int numPoints, int dims) {
+        this.numPoints = numPoints;
+        this.dims = dims;
+
+        int[] order = new int[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            order[i] = i;
+        }
+
+        int capacity = 2 * (numPoints / (LEAF_SIZE / 2) + 1);   // leaves hold at least LEAF_SIZE / 2 points
+        nodeStart = new int[capacity];
+        nodeEnd = new int[capacity];
+        nodeLeft = new int[capacity];
+        nodeRight = new int[capacity];
+        nodeSplitDim = new int[capacity];
+        nodeSplitValue = new double[capacity];
+        boxMin = new double[capacity * dims];
+        boxMax = new double[capacity * dims];
+
+        build(data, order, 0, numPoints, 0);
+
+        this.points = new double[numPoints * dims];
+        this.pointIndex = order;
+        this.position = new int[numPoints];
+        for (int p = 0; p < numPoints; p++) {
+            System.arraycopy(data, order[p] * dims, points, p * dims, dims);
+            position[order[p]] = p;
+        }
+    }
+
+    public int size() {
+        return numPoints;
+    }
+
+    /**
+     * Distance between two rows, as ReIdentificationAttack computes it
+     */
+    public static double distance(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+        return Math.sqrt(sumOfSquares(a, aOffset, b, bOffset, dims) / dims);
+    }
+
+    private static double sumOfSquares(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+        double sum = 0.0;
+        for (int k = 0; k < dims; k++) {
+            double diff = a[aOffset + k] - b[bOffset + k];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Nearest point to a query (ties go to the lowest original index)
+     *
+     * @param distanceOut distanceOut[0] receives the distance to the nearest point
+     * @return Original index of the nearest point
+     */
+    public int nearest(double[] query, int queryOffset, double[] distanceOut) {
+        int bestIndex = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        double bestSum = Double.POSITIVE_INFINITY;
+
+        int[] stack = new int[MAX_DEPTH * 2];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (lowerBound(node, query, queryOffset) > bestSum * (1 + MARGIN) + TINY) {
+                continue;
+            }
+
+            if (nodeLeft[node] < 0) {
+                for (int p = nodeStart[node]; p < nodeEnd[node]; p++) {
+                    double d = distance(query, queryOffset, points, p * dims, dims);
+                    int index = pointIndex[p];
+                    if (d < bestDistance || (d == bestDistance && index < bestIndex)) {
+                        bestDistance = d;
+                        bestIndex = index;
+                        bestSum = sumOfSquares(query, queryOffset, points, p * dims, dims);
+                    }
+                }
+                continue;
+            }
+
+            // Visit the child on the query's side first (pushed last)
+            boolean leftFirst = query[queryOffset + nodeSplitDim[node]] <= nodeSplitValue[node];
+            stack[top++] = leftFirst ? nodeRight[node] : nodeLeft[node];
+            stack[top++] = leftFirst ? nodeLeft[node] : nodeRight[node];
+        }
+
+        distanceOut[0] = bestDistance;
+        return bestIndex;
+    }
+
+    /**
+     * Number of points whose distance to the query is strictly less than 'distance',
+     * where 'distance' is the distance of the query to indexed point 'reference'.
+     * The search stops once 'limit' points are counted (the result is then ≥ limit).
+     */
+    public int countCloser(double[] query, int queryOffset, double distance, int reference, int limit) {
+        double referenceSum = sumOfSquares(query, queryOffset, points, position[reference] * dims, dims);
+        if (referenceSum == 0.0) {
+            return 0;   // nothing is closer than distance 0
+        }
+        double skipAbove = referenceSum * (1 + MARGIN) + TINY;
+        double takeBelow = referenceSum * (1 - MARGIN) - TINY;
+
+        int count = 0;
+        int[] stack = new int[MAX_DEPTH * 2];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0 && count < limit) {
+            int node = stack[--top];
+            if (lowerBound(node, query, queryOffset) > skipAbove) {
+                continue;
+            }
+            if (upperBound(node, query, queryOffset) < takeBelow) {
+                count += nodeEnd[node] - nodeStart[node];
+                continue;
+            }
+
+            if (nodeLeft[node] < 0) {
+                for (int p = nodeStart[node]; p < nodeEnd[node]; p++) {
+                    if (distance(query, queryOffset, points, p * dims, dims) < distance) {
+                        count++;
+                    }
+                }
+                continue;
+            }
+            stack[top++] = nodeLeft[node];
+            stack[top++] = nodeRight[node];
+        }
+        return count;
+    }
+
+    // ==================== CONSTRUCTION ====================
+
+    private int build(double[] data, int[] order, int start, int end, int depth) {
+        int node = numNodes++;
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        nodeLeft[node] = -1;
+        nodeRight[node] = -1;
+
+        // Bounding box
+        int box = node * dims;
+        for (int k = 0; k < dims; k++) {
+            boxMin[box + k] = Double.POSITIVE_INFINITY;
+            boxMax[box + k] = Double.NEGATIVE_INFINITY;
+        }
+        for (int i = start; i < end; i++) {
+            int row = order[i] * dims;
+            for (int k = 0; k < dims; k++) {
+                double v = data[row + k];
+                if (v < boxMin[box + k]) boxMin[box + k] = v;
+                if (v > boxMax[box + k]) boxMax[box + k] = v;
+            }
+        }
+
+        if (end - start <= LEAF_SIZE || depth >= MAX_DEPTH - 1) {
+            return node;
+        }
+
+        // Split the widest dimension at the median
+        int splitDim = 0;
+        double widest = -1;
+        for (int k = 0; k < dims; k++) {
+            double width = boxMax[box + k] - boxMin[box + k];
+            if (width > widest) {
+                widest = width;
+                splitDim = k;
+            }
+        }
+        if (widest <= 0) {
+            return node;   // all points identical
+        }
+
+        int middle = (start + end) >>> 1;
+        select(data, order, start, end - 1, middle, splitDim);
+        nodeSplitDim[node] = splitDim;
+        nodeSplitValue[node] = data[order[middle] * dims + splitDim];
+
+        nodeLeft[node] = build(data, order, start, middle, depth + 1);
+        nodeRight[node] = build(data, order, middle, end, depth + 1);
+        return node;
+    }
+
+    /**
+     * Quickselect: order[k] gets the element of rank k along dimension 'dim'
+     */
+    private void select(double[] data, int[] order, int left, int right, int k, int dim) {
+        while (left < right) {
+            double pivot = data[order[(left + right) >>> 1] * dims + dim];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (data[order[i] * dims + dim] < pivot) i++;
+                while (data[order[j] * dims + dim] > pivot) j--;
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    // ==================== BOUNDS ====================
+
+    private double lowerBound(int node, double[] query, int queryOffset) {
+        int box = node * dims;
+        double sum = 0.0;
+        for (int k = 0; k < dims; k++) {
+            double q = query[queryOffset + k];
+            double diff = 0.0;
+            if (q < boxMin[box + k]) {
+                diff = boxMin[box + k] - q;
+            } else if (q > boxMax[box + k]) {
+                diff = q - boxMax[box + k];
+            }
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    private double upperBound(int node, double[] query, int queryOffset) {
+        int box = node * dims;
+        double sum = 0.0;
+        for (int k = 0; k < dims; k++) {
+            double q = query[queryOffset + k];
+            double diff = Math.max(Math.abs(q - boxMin[box + k]), Math.abs(q - boxMax[box + k]));
+            sum += diff * diff;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,396 @@
+package privacyguard;
+
+import java.util.Arrays;
+
+/**
+ * Native 1-D k-means Engines for KMeansBaseline
+ *
+ * Clusters a single numeric feature into at most k clusters on a primitive
+ * column. Identical values always share a cluster, so both engines work on the
+ * sorted distinct values, each weighted by its number of rows, and clusters
+ * are contiguous ranges of them. Cluster IDs are assigned in increasing order
+ * of value; empty clusters are dropped (as SimpleKMeans does).
+ *
+ * - clusterOptimal(): the exact minimum of the within-cluster sum of squares.
+ *   With prefix sums of the weights, values and squares, the cost of any range
+ *   is O(1); the dynamic programme over "first j values in q clusters" is
+ *   solved one cluster count at a time, each layer being the row minima of a
+ *   totally monotone matrix found with SMAWK in O(c). A Hirschberg-style
+ *   split (forward costs for the first k/2 clusters, backward costs for the
+ *   rest, recurse on both halves) recovers the clusters in O(c) memory, so
+ *   the whole run takes O(k c) time for c distinct values.
+ * - clusterLloyd(): Lloyd iterations (at most maxIterations) started from k
+ *   centroids spread evenly over the distinct values. As the values are
+ *   sorted, the assignment step is one binary search per cluster midpoint and
+ *   the update step reads the prefix sums, so an iteration costs O(k log c).
+ *   Like SimpleKMeans it converges to a local optimum; a value halfway between
+ *   two centroids goes to the lower one.
+ *
+ * Missing values are replaced by the mean of the feature, as SimpleKMeans does.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class KMeans1D {
+
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
+
+    private final int k;
+    private int maxIterations = 100;
+
+    // Distinct values and prefix sums (index i covers distinct values [0, i))
+    private double[] distinct;
+    private double[] prefixWeight;
+    private double[] prefixSum;       // of weight * (value - shift)
+    private double[] prefixSquares;   // of weight * (value - shift)^2
+    private double shift;             // mean of the feature
+    private double withinClusterSS;
+
+    // SMAWK layer state
+    private double[] previous;
+    private double[] current;
+    private int[] argmin;
+    private int layerFrom;
+    private int layerTo;
+    private boolean layerReversed;
+
+    /**
+     * @param k Maximum number of clusters
+     */
+    public KMeans1D(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        this.k = k;
+    }
+
+    /**
+     * Maximum number of Lloyd iterations (clusterLloyd only)
+     */
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = Math.max(1, maxIterations);
+    }
+
+    /**
+     * Within-cluster sum of squares of the last clustering
+     */
+    public double getWithinClusterSS() {
+        return withinClusterSS;
+    }
+
+    /**
+     * Optimal clustering of a column (minimum within-cluster sum of squares)
+     *
+     * @param column Value of every row (NaN = missing); not modified
+     * @return Cluster ID of every row
+     */
+    public int[] clusterOptimal(double[] column) {
+        int[] rank = prepare(column);
+        int c = distinct.length;
+        int clusters = Math.min(k, c);
+        int[] starts = new int[clusters + 1];
+        starts[clusters] = c;
+        if (clusters > 0) {
+            previous = new double[c];
+            current = new double[c];
+            argmin = new int[c];
+            partition(0, c, clusters, starts, 0);
+            previous = current = null;
+            argmin = null;
+        }
+        return assign(rank, starts, clusters);
+    }
+
+    /**
+     * Lloyd's k-means on a column, assignment by binary search over the
+     * midpoints between centroids
+     *
+     * @param column Value of every row (NaN = missing); not modified
+     * @return Cluster ID of every row
+     */
+    public int[] clusterLloyd(double[] column) {
+        int[] rank = prepare(column);
+        int c = distinct.length;
+        int clusters = Math.min(k, c);
+        if (clusters == 0) {
+            return assign(rank, new int[]{0}, 0);
+        }
+
+        // Centroids spread evenly over the distinct values
+        double[] centroids = new double[clusters];
+        for (int q = 0; q < clusters; q++) {
+            centroids[q] = distinct[(int) (((long) (2 * q + 1) * c) / (2L * clusters))];
+        }
+
+        int[] starts = new int[clusters + 1];
+        int[] nextStarts = new int[clusters + 1];
+        starts[clusters] = c;
+        nextStarts[clusters] = c;
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            // Assignment: cluster q holds the values above the midpoint with q - 1
+            for (int q = 1; q < clusters; q++) {
+                double midpoint = centroids[q - 1] + (centroids[q] - centroids[q - 1]) / 2;
+                nextStarts[q] = Math.max(nextStarts[q - 1], firstAbove(midpoint));
+            }
+            boolean changed = iteration == 0 || !Arrays.equals(starts, nextStarts);
+            System.arraycopy(nextStarts, 0, starts, 0, clusters + 1);
+            if (!changed) {
+                break;
+            }
+
+            // Update: mean of each non-empty cluster
+            for (int q = 0; q < clusters; q++) {
+                double weight = prefixWeight[starts[q + 1]] - prefixWeight[starts[q]];
+                if (weight > 0) {
+                    centroids[q] = shift + (prefixSum[starts[q + 1]] - prefixSum[starts[q]]) / weight;
+                }
+            }
+        }
+        return assign(rank, starts, clusters);
+    }
+
+    // ==================== PREPARATION ====================
+
+    /**
+     * Sort the distinct values and build the prefix sums
+     *
+     * @return Rank of every row's value among the distinct values
+     */
+    private int[] prepare(double[] column) {
+        int n = column.length;
+        double mean = 0.0;
+        int present = 0;
+        for (double value : column) {
+            if (!Double.isNaN(value)) {
+                mean += value;
+                present++;
+            }
+        }
+        mean = (present > 0) ? mean / present : 0.0;
+
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = Double.isNaN(column[i]) ? mean : column[i] + 0.0;   // + 0.0 turns -0.0 into 0.0
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int c = 0;
+        for (int i = 0; i < n; i++) {
+            if (c == 0 || sorted[i] != sorted[c - 1]) {
+                sorted[c++] = sorted[i];
+            }
+        }
+        distinct = Arrays.copyOf(sorted, c);
+
+        int[] rank = new int[n];
+        double[] weights = new double[c];
+        for (int i = 0; i < n; i++) {
+            rank[i] = Arrays.binarySearch(distinct, values[i]);
+            weights[rank[i]]++;
+        }
+
+        // Prefix sums around the mean, to limit cancellation in the range costs
+        prefixWeight = new double[c + 1];
+        prefixSum = new double[c + 1];
+        prefixSquares = new double[c + 1];
+        for (int i = 0; i < c; i++) {
+            double centred = distinct[i] - mean;
+            prefixWeight[i + 1] = prefixWeight[i] + weights[i];
+            prefixSum[i + 1] = prefixSum[i] + weights[i] * centred;
+            prefixSquares[i + 1] = prefixSquares[i] + weights[i] * centred * centred;
+        }
+        shift = mean;
+        return rank;
+    }
+
+    /**
+     * Cluster IDs of the rows (empty clusters dropped) and the within-cluster
+     * sum of squares
+     */
+    private int[] assign(int[] rank, int[] starts, int clusters) {
+        int[] idOfRank = new int[distinct.length];
+        int id = 0;
+        withinClusterSS = 0.0;
+        for (int q = 0; q < clusters; q++) {
+            if (starts[q + 1] > starts[q]) {
+                for (int r = starts[q]; r < starts[q + 1]; r++) {
+                    idOfRank[r] = id;
+                }
+                withinClusterSS += rangeCost(starts[q], starts[q + 1] - 1);
+                id++;
+            }
+        }
+        int[] ids = new int[rank.length];
+        for (int i = 0; i < rank.length; i++) {
+            ids[i] = idOfRank[rank[i]];
+        }
+        return ids;
+    }
+
+    /**
+     * Sum of squared deviations from their mean of the distinct values [lo, hi]
+     */
+    private double rangeCost(int lo, int hi) {
+        double weight = prefixWeight[hi + 1] - prefixWeight[lo];
+        double sum = prefixSum[hi + 1] - prefixSum[lo];
+        double cost = (prefixSquares[hi + 1] - prefixSquares[lo]) - sum * sum / weight;
+        return (cost > 0.0) ? cost : 0.0;
+    }
+
+    /**
+     * First distinct value strictly above 'value'
+     */
+    private int firstAbove(double value) {
+        int lo = 0;
+        int hi = distinct.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (distinct[mid] > value) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    // ==================== OPTIMAL ENGINE ====================
+
+    /**
+     * Optimal split of the distinct values [from, to) into 'clusters' ranges
+     *
+     * @param startsOut startsOut[firstCluster + q] receives the first value of range q
+     */
+    private void partition(int from, int to, int clusters, int[] startsOut, int firstCluster) {
+        if (clusters == 1) {
+            startsOut[firstCluster] = from;
+            return;
+        }
+        if (to - from == clusters) {
+            for (int q = 0; q < clusters; q++) {
+                startsOut[firstCluster + q] = from + q;
+            }
+            return;
+        }
+
+        int leftClusters = clusters / 2;
+        int rightClusters = clusters - leftClusters;
+        double[] left = layers(from, to, leftClusters, false);    // left[p]: values [from, from + p]
+        double[] right = layers(from, to, rightClusters, true);   // right[p]: values [to - 1 - p, to - 1]
+
+        // The right half starts at 'split': [from, split) | [split, to)
+        int bestSplit = -1;
+        double bestCost = INFINITY;
+        for (int split = from + leftClusters; split <= to - rightClusters; split++) {
+            double cost = left[split - 1 - from] + right[to - 1 - split];
+            if (bestSplit < 0 || cost < bestCost) {
+                bestSplit = split;
+                bestCost = cost;
+            }
+        }
+
+        partition(from, bestSplit, leftClusters, startsOut, firstCluster);
+        partition(bestSplit, to, rightClusters, startsOut, firstCluster + leftClusters);
+    }
+
+    /**
+     * Optimal cost of the first p + 1 values of [from, to) (the last p + 1
+     * when reversed) in 'clusters' ranges, for every p
+     */
+    private double[] layers(int from, int to, int clusters, boolean reversed) {
+        int length = to - from;
+        layerFrom = from;
+        layerTo = to;
+        layerReversed = reversed;
+
+        double[] costs = new double[length];
+        for (int p = 0; p < length; p++) {
+            costs[p] = cost(0, p);
+        }
+
+        int[] rows = new int[length];
+        int[] cols = new int[length];
+        for (int q = 2; q <= clusters; q++) {
+            // Row p (the layer's last value) takes its minimum over the start
+            // i of its last range, both in [q - 1, length)
+            System.arraycopy(costs, 0, previous, 0, length);
+            int count = length - (q - 1);
+            for (int t = 0; t < count; t++) {
+                rows[t] = q - 1 + t;
+                cols[t] = q - 1 + t;
+            }
+            smawk(rows, count, cols, count);
+            for (int p = 0; p < q - 1; p++) {
+                costs[p] = INFINITY;
+            }
+            for (int p = q - 1; p < length; p++) {
+                costs[p] = current[p];
+            }
+        }
+        return costs;
+    }
+
+    /**
+     * Cost of the layer's positions [i, p] as one range
+     */
+    private double cost(int i, int p) {
+        return layerReversed ? rangeCost(layerTo - 1 - p, layerTo - 1 - i)
+                             : rangeCost(layerFrom + i, layerFrom + p);
+    }
+
+    /**
+     * Entry (p, i) of the layer matrix: best cost of positions [0, i) in one
+     * range fewer, plus [i, p] as the last range (infinite for i > p)
+     */
+    private double entry(int p, int i) {
+        return (i > p) ? INFINITY : previous[i - 1] + cost(i, p);
+    }
+
+    /**
+     * Leftmost row minima of the totally monotone layer matrix (SMAWK);
+     * writes current[row] and argmin[row]
+     */
+    private void smawk(int[] rows, int numRows, int[] cols, int numCols) {
+        if (numRows == 0) {
+            return;
+        }
+
+        // Reduce: drop columns that cannot hold a row minimum
+        int[] kept = new int[Math.min(numRows, numCols)];
+        int size = 0;
+        for (int c = 0; c < numCols; c++) {
+            int col = cols[c];
+            while (size > 0 && entry(rows[size - 1], kept[size - 1]) > entry(rows[size - 1], col)) {
+                size--;
+            }
+            if (size < numRows) {
+                kept[size++] = col;
+            }
+        }
+
+        // Odd rows recursively
+        int[] oddRows = new int[numRows / 2];
+        for (int t = 1; t < numRows; t += 2) {
+            oddRows[t / 2] = rows[t];
+        }
+        smawk(oddRows, oddRows.length, kept, size);
+
+        // Even rows between the minima of their odd neighbours
+        int c = 0;
+        for (int t = 0; t < numRows; t += 2) {
+            int row = rows[t];
+            int stop = (t + 1 < numRows) ? argmin[rows[t + 1]] : kept[size - 1];
+            int best = kept[c];
+            double bestValue = entry(row, best);
+            for (c = c + 1; c < size && kept[c] <= stop; c++) {
+                double value = entry(row, kept[c]);
+                if (value < bestValue) {
+                    best = kept[c];
+                    bestValue = value;
+                }
+            }
+            argmin[row] = best;
+            current[row] = bestValue;
+            c--;   // the next even row starts at 'stop'
+        }
+    }
+}
@@ -26,6 +26,22 @@ import java.util.*;
  * - Utility: Medium-High (slightly worse than VWC)
  * - Speed: Medium (k-means iterations)
  *
+ * Engines (see setEngine):
+ * - "weka":    Weka SimpleKMeans on a one-column Instances (original behaviour)
+ * - "optimal": KMeans1D, the exact minimum within-cluster sum of squares in
+ *              O(k c) for c distinct values (never worse than SimpleKMeans)
+ * - "lloyd":   KMeans1D's Lloyd iterations over the sorted distinct values
+ * All engines return at most k cluster IDs per feature and treat missing
+ * values as the feature mean, but they number the clusters differently:
+ * SimpleKMeans in its (randomly initialised) centroid order, the native
+ * engines in value order, which makes their output a monotone re-coding of
+ * the feature. Distance-based privacy and utility results are therefore not
+ * comparable between "weka" and the native engines. The default "weka"
+ * keeps the published parameter string ("k=..."); a native engine is added to
+ * it, so its runs stay out of the SimpleKMeans series. The optimal engine is fast on low-cardinality
+ * columns but grows with the number of distinct values (about 40 s for a
+ * column of 200k distinct values with k = 1000).
+ *
  * Comparison with VWC:
  * - VWC adapts cluster count to data distribution
  * - k-means uses fixed k for all features
@@ -37,6 +53,11 @@ import java.util.*;
 public class KMeansBaseline {
 
     private int k;  // Number of clusters
+    private String engine = ENGINE_WEKA;
+
+    public static final String ENGINE_WEKA = "weka";
+    public static final String ENGINE_OPTIMAL = "optimal";
+    public static final String ENGINE_LLOYD = "lloyd";
 
     /**
      * Constructor with default k
@@ -53,6 +74,23 @@ public class KMeansBaseline {
         this.k = k;
     }
 
+    /**
+     * Select the clustering engine ("weka", "optimal" or "lloyd")
+     */
+    public void setEngine(String engine) {
+        if (!ENGINE_WEKA.equals(engine) && !ENGINE_OPTIMAL.equals(engine) && !ENGINE_LLOYD.equals(engine)) {
+            throw new IllegalArgumentException("Unknown k-means engine: " + engine);
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * Get the clustering engine
+     */
+    public String getEngine() {
+        return engine;
+    }
+
     /**
      * Generate synthetic data using k-means clustering per feature
      *
@@ -60,7 +98,7 @@ public class KMeansBaseline {
      * @return Synthetic dataset with cluster IDs
      */
     public Instances generateSyntheticData(Instances data) throws Exception {
-        System.out.println("  k-means: Starting feature-wise clustering...");
+        System.out.println("  k-means: Starting feature-wise clustering (engine=" + engine + ")...");
 
         // Determine class index
         int classIndex = data.classIndex();
@@ -98,6 +136,13 @@ public class KMeansBaseline {
      * Apply k-means clustering to a single feature
      */
     private int[] clusterFeature(Instances data, int featureIdx) throws Exception {
+        if (!ENGINE_WEKA.equals(engine)) {
+            KMeans1D kmeans = new KMeans1D(k);
+            kmeans.setMaxIterations(100);
+            double[] column = data.attributeToDoubleArray(featureIdx);
+            return ENGINE_OPTIMAL.equals(engine) ? kmeans.clusterOptimal(column) : kmeans.clusterLloyd(column);
+        }
+
         // Create single-feature dataset
         ArrayList<Attribute> attributes = new ArrayList<>();
         attributes.add((Attribute) data.attribute(featureIdx).copy());
@@ -163,6 +208,6 @@ public class KMeansBaseline {
      * Get parameters as string
      */
     public String getParameters() {
-        return "k=" + k;
+        return ENGINE_WEKA.equals(engine) ? "k=" + k : "k=" + k + ", engine=" + engine;
     }
 }
@@ -3,6 +3,7 @@ package privacyguard;
 import weka.core.Instance;
 import weka.core.Instances;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Linkage Attack: Simulates an adversary with partial knowledge (quasi-identifiers)
@@ -12,85 +13,174 @@ import java.util.*;
  * known attributes (quasi-identifiers) and tries to uniquely identify records
  * in the synthetic dataset.
  *
+ * Matching synthetic records are looked up in a QuasiIdentifierIndex instead of
+ * scanning all synthetic records for every original record; the matches are
+ * identical. The quasi-identifier sets of the knowledge levels are nested, so
+ * all levels are evaluated in a single pass (see performAttack).
+ *
+ * Monte-Carlo mode (setMonteCarlo) repeats the attack for many random attribute
+ * orders in parallel, each giving a random quasi-identifier subset per level,
+ * and reports the mean, spread and worst case of the subsets instead of
+ * depending on the single fixed draw.
+ *
  * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
  */
 public class LinkageAttack {
 
+    private SharedOriginalData sharedOriginal;
     private Instances originalData;
     private Instances syntheticData;
     private int classIndex;
 
     // Attack parameters
-    private double[] knownAttributeRatios = {0.25, 0.5, 0.75}; // Percentage of attributes known to adversary
+    private double[] knownAttributeRatios = {0.25, 0.5, 0.75}; // Percentage of attributes known to adversary (ascending)
+
+    private int monteCarloTrials = 0;                          // 0 = fixed subsets only
+    private long monteCarloSeed = 42;
 
     // Results for each knowledge level
     private Map<Double, LinkageResult> results;
+    private Map<Double, MonteCarloResult> monteCarloResults = new LinkedHashMap<>();
 
     public LinkageAttack(Instances originalData, Instances syntheticData) {
-        this.originalData = new Instances(originalData);
+        this(new SharedOriginalData(originalData), syntheticData);
+    }
+
+    /**
+     * Constructor with an original dataset shared with other attacks (not copied)
+     */
+    public LinkageAttack(SharedOriginalData original, Instances syntheticData) {
+        this.sharedOriginal = original;
+        this.originalData = original.data();
         this.syntheticData = new Instances(syntheticData);
         this.classIndex = originalData.classIndex();
         this.results = new LinkedHashMap<>();
     }
 
     /**
-     * Performs linkage attack with varying levels of adversary knowledge
+     * Set the adversary knowledge levels (fractions of the non-class attributes),
+     * e.g. every 0.05 for a fine sweep; the highest level drives the risk score
+     */
+    public void setKnowledgeLevels(double[] ratios) {
+        if (ratios == null || ratios.length == 0) {
+            throw new IllegalArgumentException("At least one knowledge level is required");
+        }
+        double[] sorted = ratios.clone();
+        Arrays.sort(sorted);
+        for (double ratio : sorted) {
+            if (!(ratio > 0.0 && ratio <= 1.0)) {
+                throw new IllegalArgumentException("Knowledge level must be in (0, 1]: " + ratio);
+            }
+        }
+        this.knownAttributeRatios = Arrays.stream(sorted).distinct().toArray();
+    }
+
+    /**
+     * Also evaluate 'trials' random quasi-identifier subsets per knowledge level
+     * (0 = only the fixed subsets); trial t draws its attribute order with seed + t
+     */
+    public void setMonteCarlo(int trials, long seed) {
+        if (trials < 0) {
+            throw new IllegalArgumentException("Number of Monte-Carlo trials must be >= 0: " + trials);
+        }
+        this.monteCarloTrials = trials;
+        this.monteCarloSeed = seed;
+    }
+
+    /**
+     * Performs linkage attack with varying levels of adversary knowledge.
+     *
+     * The quasi-identifier sets of all levels are prefixes of one fixed shuffle
+     * of the attributes, so every level comes out of a single pass: the matches
+     * of a record at one level are filtered on the attributes the next level
+     * adds, and the equivalence classes are refined one attribute at a time.
      */
     public void performAttack() {
         System.out.println("\n=== Performing Linkage Attack ===");
         System.out.println("Testing with different adversary knowledge levels...");
 
         int numNonClassAttributes = originalData.numAttributes() - (classIndex >= 0 ? 1 : 0);
+        List<Integer> attributeOrder = shuffledAttributes();
+
+        // Quasi-identifier prefix length of every level (non-decreasing, as the levels are sorted)
+        int[] numKnown = new int[knownAttributeRatios.length];
+        int[] prefixLengths = new int[knownAttributeRatios.length];
+        for (int level = 0; level < knownAttributeRatios.length; level++) {
+            double knownRatio = knownAttributeRatios[level];
+            numKnown[level] = Math.max(1, (int) (knownRatio * numNonClassAttributes));
+            prefixLengths[level] = Math.min(numKnown[level], attributeOrder.size());
+
+            System.out.println("\nKnowledge Level: " + percent(knownRatio) + "% of attributes");
+            System.out.println("  Known attributes: " + numKnown[level] + " out of " + numNonClassAttributes);
+        }
 
-        for (double knownRatio : knownAttributeRatios) {
-            int numKnownAttributes = Math.max(1, (int) (knownRatio * numNonClassAttributes));
-
-            System.out.println("\nKnowledge Level: " + (int)(knownRatio * 100) + "% of attributes");
-            System.out.println("  Known attributes: " + numKnownAttributes + " out of " + numNonClassAttributes);
+        LinkageResult[] levelResults = performAttackAtAllLevels(attributeOrder, numKnown, prefixLengths);
+        for (int level = 0; level < knownAttributeRatios.length; level++) {
+            results.put(knownAttributeRatios[level], levelResults[level]);
+        }
 
-            LinkageResult result = performAttackWithKnowledge(numKnownAttributes);
-            results.put(knownRatio, result);
+        if (monteCarloTrials > 0) {
+            performMonteCarlo(prefixLengths);
         }
 
         System.out.println("\nLinkage attack completed.");
     }
 
     /**
-     * Perform linkage attack with specific number of known attributes
+     * Perform the linkage attack for every knowledge level in one pass
+     * over the original records
      */
-    private LinkageResult performAttackWithKnowledge(int numKnownAttributes) {
-        // Select random attributes as quasi-identifiers (known to adversary)
-        List<Integer> quasiIdentifiers = selectQuasiIdentifiers(numKnownAttributes);
-
-        int numRecords = Math.min(originalData.numInstances(), syntheticData.numInstances());
-        int uniqueMatches = 0;
-        int noMatches = 0;
-        int multipleMatches = 0;
-        int correctUniqueMatches = 0;
-
-        List<Double> linkabilityScores = new ArrayList<>();
+    private LinkageResult[] performAttackAtAllLevels(List<Integer> attributeOrder, int[] numKnown, int[] prefixLengths) {
+        int numLevels = prefixLengths.length;
+        int maxLength = prefixLengths[numLevels - 1];
+        int numSynthetic = syntheticData.numInstances();
+        List<Integer> knownAttributes = attributeOrder.subList(0, maxLength);
+        double[][] syntheticColumns = columns(syntheticData, knownAttributes);
+
+        int numRecords = Math.min(originalData.numInstances(), numSynthetic);
+        int[] uniqueMatches = new int[numLevels];
+        int[] noMatches = new int[numLevels];
+        int[] multipleMatches = new int[numLevels];
+        int[] correctUniqueMatches = new int[numLevels];
+        double[][] linkabilityScores = new double[numLevels][numRecords];
+
+        // Index the synthetic records on the smallest quasi-identifier set;
+        // larger sets only narrow its matches down
+        QuasiIdentifierIndex index = new QuasiIdentifierIndex(
+                Arrays.copyOf(syntheticColumns, prefixLengths[0]), numSynthetic);
+        double[] query = new double[maxLength];
+        int[] matches = new int[numSynthetic];
 
         // For each original record, try to link it to synthetic data using quasi-identifiers
         for (int origIdx = 0; origIdx < numRecords; origIdx++) {
             Instance originalInstance = originalData.instance(origIdx);
+            for (int q = 0; q < maxLength; q++) {
+                query[q] = originalInstance.value(knownAttributes.get(q));
+            }
 
             // Find matching synthetic records based on quasi-identifiers
-            List<Integer> matchingIndices = findMatchingSyntheticRecords(originalInstance, quasiIdentifiers);
-
-            if (matchingIndices.isEmpty()) {
-                noMatches++;
-                linkabilityScores.add(0.0); // No linkage possible
-            } else if (matchingIndices.size() == 1) {
-                uniqueMatches++;
-                // Check if it's the correct match (assuming index alignment)
-                if (matchingIndices.get(0) == origIdx) {
-                    correctUniqueMatches++;
+            int numMatches = index.findMatches(query, matches);
+            for (int level = 0; level < numLevels; level++) {
+                if (level > 0) {
+                    numMatches = retainMatches(matches, numMatches, query, syntheticColumns,
+                            prefixLengths[level - 1], prefixLengths[level]);
+                }
+
+                if (numMatches == 0) {
+                    noMatches[level]++;
+                    linkabilityScores[level][origIdx] = 0.0; // No linkage possible
+                } else if (numMatches == 1) {
+                    uniqueMatches[level]++;
+                    // Check if it's the correct match (assuming index alignment)
+                    if (matches[0] == origIdx) {
+                        correctUniqueMatches[level]++;
+                    }
+                    linkabilityScores[level][origIdx] = 1.0; // Unique linkage achieved
+                } else {
+                    multipleMatches[level]++;
+                    // Partial linkage - narrowed down to a group
+                    linkabilityScores[level][origIdx] = 1.0 / numMatches;
                 }
-                linkabilityScores.add(1.0); // Unique linkage achieved
-            } else {
-                multipleMatches++;
-                // Partial linkage - narrowed down to a group
-                linkabilityScores.add(1.0 / matchingIndices.size());
             }
 
             if ((origIdx + 1) % 1000 == 0) {
@@ -98,101 +188,282 @@ public class LinkageAttack {
             }
         }
 
+        // Calculate k-anonymity equivalent
+        GroupSizes[] groupSizes = calculateEquivalenceClassSizes(syntheticColumns, numSynthetic, prefixLengths);
+
         // Calculate statistics
-        double uniqueMatchRate = (double) uniqueMatches / numRecords;
-        double correctMatchRate = (double) correctUniqueMatches / numRecords;
-        double avgLinkability = linkabilityScores.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
+        LinkageResult[] levelResults = new LinkageResult[numLevels];
+        for (int level = 0; level < numLevels; level++) {
+            levelResults[level] = new LinkageResult(
+                    numKnown[level],
+                    attributeOrder.subList(0, prefixLengths[level]),
+                    uniqueMatches[level],
+                    multipleMatches[level],
+                    noMatches[level],
+                    correctUniqueMatches[level],
+                    (double) uniqueMatches[level] / numRecords,
+                    (double) correctUniqueMatches[level] / numRecords,
+                    Arrays.stream(linkabilityScores[level]).average().orElse(0.0),
+                    groupSizes[level]
+            );
+        }
+        return levelResults;
+    }
 
-        // Calculate k-anonymity equivalent
-        double avgGroupSize = calculateAverageEquivalenceClassSize(quasiIdentifiers);
-
-        return new LinkageResult(
-                numKnownAttributes,
-                quasiIdentifiers,
-                uniqueMatches,
-                multipleMatches,
-                noMatches,
-                correctUniqueMatches,
-                uniqueMatchRate,
-                correctMatchRate,
-                avgLinkability,
-                avgGroupSize
-        );
+    /**
+     * Keep the matches that also agree on quasi-identifiers [from, to);
+     * the survivors are compacted to the front of 'matches'
+     *
+     * @return Number of remaining matches
+     */
+    private static int retainMatches(int[] matches, int numMatches, double[] query,
+                                     double[][] syntheticColumns, int from, int to) {
+        int kept = 0;
+        for (int m = 0; m < numMatches; m++) {
+            int row = matches[m];
+            boolean match = true;
+            for (int q = from; q < to && match; q++) {
+                // Same test as the index: a missing value matches anything
+                if (Math.abs(query[q] - syntheticColumns[q][row]) > QuasiIdentifierIndex.TOLERANCE) {
+                    match = false;
+                }
+            }
+            if (match) {
+                matches[kept++] = row;
+            }
+        }
+        return kept;
     }
 
     /**
-     * Select random attributes as quasi-identifiers (excluding class attribute)
+     * All non-class attributes in a fixed random order (seed 42); the first
+     * 'count' of them are the quasi-identifiers of a level with 'count' known attributes
      */
-    private List<Integer> selectQuasiIdentifiers(int count) {
-        List<Integer> availableAttributes = new ArrayList<>();
+    private List<Integer> shuffledAttributes() {
+        List<Integer> availableAttributes = nonClassAttributes();
+
+        // Shuffle once; every knowledge level uses a prefix
+        Collections.shuffle(availableAttributes, new Random(42)); // Fixed seed for reproducibility
+
+        return availableAttributes;
+    }
 
+    private List<Integer> nonClassAttributes() {
+        List<Integer> attributes = new ArrayList<>();
         for (int i = 0; i < originalData.numAttributes(); i++) {
             if (i != classIndex) {
-                availableAttributes.add(i);
+                attributes.add(i);
             }
         }
+        return attributes;
+    }
 
-        // Shuffle and select first 'count' attributes
-        Collections.shuffle(availableAttributes, new Random(42)); // Fixed seed for reproducibility
-
-        return availableAttributes.subList(0, Math.min(count, availableAttributes.size()));
+    /**
+     * Values of the given attributes, one array per attribute
+     */
+    private static double[][] columns(Instances data, List<Integer> attributes) {
+        double[][] columns = new double[attributes.size()][data.numInstances()];
+        for (int row = 0; row < data.numInstances(); row++) {
+            Instance instance = data.instance(row);
+            for (int a = 0; a < attributes.size(); a++) {
+                columns[a][row] = instance.value(attributes.get(a));
+            }
+        }
+        return columns;
     }
 
     /**
-     * Find synthetic records that match the original record on quasi-identifiers
+     * Calculate the equivalence class sizes (k-anonymity metric) of every
+     * quasi-identifier prefix length, refining one partition of the synthetic
+     * records attribute by attribute
      */
-    private List<Integer> findMatchingSyntheticRecords(Instance originalInstance, List<Integer> quasiIdentifiers) {
-        List<Integer> matches = new ArrayList<>();
+    private static GroupSizes[] calculateEquivalenceClassSizes(double[][] columns, int numRows, int[] prefixLengths) {
+        GroupSizes[] groupSizes = new GroupSizes[prefixLengths.length];
+        EquivalenceClasses classes = new EquivalenceClasses(numRows);
+        int refined = 0;
+        for (int level = 0; level < prefixLengths.length; level++) {
+            for (; refined < prefixLengths[level]; refined++) {
+                classes.refine(columns[refined]);
+            }
+            groupSizes[level] = new GroupSizes(classes);
+        }
+        return groupSizes;
+    }
 
-        for (int synIdx = 0; synIdx < syntheticData.numInstances(); synIdx++) {
-            Instance syntheticInstance = syntheticData.instance(synIdx);
+    // ==================== MONTE-CARLO ====================
 
-            boolean allMatch = true;
-            for (int attrIdx : quasiIdentifiers) {
-                double origValue = originalInstance.value(attrIdx);
-                double synValue = syntheticInstance.value(attrIdx);
+    /**
+     * Evaluate monteCarloTrials random attribute orders on the shared
+     * AttackScheduler pool. The attributes are encoded once (QuasiIdentifierEncodings) and
+     * shared by all trials; the results are folded into running statistics in
+     * trial order, so they do not depend on the thread count.
+     */
+    private void performMonteCarlo(int[] prefixLengths) {
+        System.out.println("\nMonte-Carlo: " + monteCarloTrials + " random quasi-identifier subsets per knowledge level ("
+                + AttackScheduler.parallelism() + " threads)");
+
+        List<Integer> attributes = nonClassAttributes();
+        int numSynthetic = syntheticData.numInstances();
+        int numRecords = Math.min(originalData.numInstances(), numSynthetic);
+        QuasiIdentifierEncodings encodings = new QuasiIdentifierEncodings(
+                sharedOriginal.columns(), originalData.numInstances(),
+                columns(syntheticData, attributes), numSynthetic);
+        ThreadLocal<TrialWorkspace> workspaces = ThreadLocal.withInitial(
+                () -> new TrialWorkspace(numRecords, numSynthetic, prefixLengths.length));
+
+        MonteCarloResult[] levelResults = new MonteCarloResult[prefixLengths.length];
+        for (int level = 0; level < levelResults.length; level++) {
+            levelResults[level] = new MonteCarloResult();
+        }
 
-                // Check if values match (with small tolerance for floating point)
-                if (Math.abs(origValue - synValue) > 0.0001) {
-                    allMatch = false;
-                    break;
-                }
-            }
+        ForkJoinPool pool = AttackScheduler.pool();
+        List<Future<double[][]>> futures = new ArrayList<>();
+        List<int[]> orders = new ArrayList<>();
+        for (int trial = 0; trial < monteCarloTrials; trial++) {
+            int[] order = randomOrder(attributes.size(), new Random(monteCarloSeed + trial));
+            orders.add(order);
+            futures.add(pool.submit(() -> runTrial(encodings, order, prefixLengths, numRecords, workspaces.get())));
+        }
 
-            if (allMatch) {
-                matches.add(synIdx);
+        int reportEvery = Math.max(1, monteCarloTrials / 10);
+        for (int trial = 0; trial < monteCarloTrials; trial++) {
+            double[][] metrics = AttackScheduler.await(futures.get(trial));
+            futures.set(trial, null);
+            for (int level = 0; level < levelResults.length; level++) {
+                levelResults[level].add(metrics[level], orders.get(trial), prefixLengths[level], attributes);
+            }
+            if ((trial + 1) % reportEvery == 0) {
+                System.out.println("    Completed " + (trial + 1) + "/" + monteCarloTrials + " trials");
             }
         }
 
-        return matches;
+        for (int level = 0; level < levelResults.length; level++) {
+            monteCarloResults.put(knownAttributeRatios[level], levelResults[level]);
+        }
     }
 
     /**
-     * Calculate average equivalence class size (k-anonymity metric)
+     * One trial: the linkage attack at every level with the quasi-identifiers
+     * order[0..prefixLengths[level]) (positions in the encoded attributes).
+     *
+     * Original records with equal range codes on a level's quasi-identifiers
+     * match the same synthetic records, so the records are visited grouped by
+     * their class at every level (classes of a level refine those of the
+     * previous one) and each level's matches are computed once per class.
+     *
+     * @return {unique match rate, correct match rate, average linkability,
+     *          average equivalence class size} per level
      */
-    private double calculateAverageEquivalenceClassSize(List<Integer> quasiIdentifiers) {
-        Map<String, Integer> equivalenceClasses = new HashMap<>();
+    private static double[][] runTrial(QuasiIdentifierEncodings encodings, int[] order, int[] prefixLengths,
+                                       int numRecords, TrialWorkspace ws) {
+        int numLevels = prefixLengths.length;
+        int[] uniqueMatches = new int[numLevels];
+        int[] correctUniqueMatches = new int[numLevels];
+        double[] linkabilitySums = new double[numLevels];
+
+        // Classes of the original records at every level
+        EquivalenceClasses originalClasses = ws.originalClasses;
+        originalClasses.reset();
+        int refined = 0;
+        for (int level = 0; level < numLevels; level++) {
+            for (; refined < prefixLengths[level]; refined++) {
+                if (originalClasses.numClasses() < numRecords) {
+                    originalClasses.refine(encodings.rangeCodes(order[refined]));
+                }
+            }
+            for (int record = 0; record < numRecords; record++) {
+                ws.levelClass[level][record] = originalClasses.classOf(record);
+            }
+        }
 
-        // Group synthetic records by quasi-identifier values
-        for (int i = 0; i < syntheticData.numInstances(); i++) {
-            Instance instance = syntheticData.instance(i);
-            StringBuilder key = new StringBuilder();
+        // Order the records by (class at level 0, class at level 1, ...): stable sorts, finest level first
+        int[] records = ws.records;
+        for (int record = 0; record < numRecords; record++) {
+            records[record] = record;
+        }
+        for (int level = numLevels - 1; level >= 0; level--) {
+            ws.sortByClass(ws.levelClass[level], numRecords);
+        }
 
-            for (int attrIdx : quasiIdentifiers) {
-                key.append(instance.value(attrIdx)).append("|");
+        int[] numMatches = new int[numLevels];
+        int previous = -1;
+        for (int p = 0; p < numRecords; p++) {
+            int record = records[p];
+
+            // Recompute the matches from the first level whose class changed, filtering
+            // the previous level's matches unless a slice of the new level is smaller
+            int changed = 0;
+            if (previous >= 0) {
+                while (changed < numLevels && ws.levelClass[changed][record] == ws.levelClass[changed][previous]) {
+                    changed++;
+                }
+            }
+            for (int level = changed; level < numLevels; level++) {
+                if (level == 0 || encodings.candidateCount(order, prefixLengths[level], record) < numMatches[level - 1]) {
+                    numMatches[level] = encodings.findMatches(order, prefixLengths[level], record, ws.matches(level));
+                } else {
+                    numMatches[level] = encodings.retainMatches(order, prefixLengths[level - 1], prefixLengths[level],
+                            record, ws.matches(level - 1), numMatches[level - 1], ws.matches(level));
+                }
+            }
+            previous = record;
+
+            for (int level = 0; level < numLevels; level++) {
+                if (numMatches[level] == 1) {
+                    uniqueMatches[level]++;
+                    if (ws.matches(level)[0] == record) {
+                        correctUniqueMatches[level]++;
+                    }
+                }
+                if (numMatches[level] > 0) {
+                    linkabilitySums[level] += 1.0 / numMatches[level];
+                }
             }
+        }
 
-            String keyStr = key.toString();
-            equivalenceClasses.put(keyStr, equivalenceClasses.getOrDefault(keyStr, 0) + 1);
+        // Equivalence classes; once every class is a single record, refining changes nothing
+        double[][] metrics = new double[numLevels][];
+        EquivalenceClasses classes = ws.syntheticClasses;
+        classes.reset();
+        refined = 0;
+        for (int level = 0; level < numLevels; level++) {
+            for (; refined < prefixLengths[level]; refined++) {
+                if (classes.numClasses() < ws.numSynthetic) {
+                    classes.refine(encodings.syntheticCodes(order[refined]));
+                }
+            }
+            metrics[level] = new double[] {
+                    (double) uniqueMatches[level] / numRecords,
+                    (double) correctUniqueMatches[level] / numRecords,
+                    linkabilitySums[level] / numRecords,
+                    classes.averageSize()
+            };
         }
+        return metrics;
+    }
 
-        // Calculate average class size
-        if (equivalenceClasses.isEmpty()) {
-            return 0.0;
+    /**
+     * Random permutation of 0..size-1, drawn as Collections.shuffle draws it
+     */
+    private static int[] randomOrder(int size, Random random) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
         }
+        for (int i = size; i > 1; i--) {
+            int j = random.nextInt(i);
+            int tmp = order[i - 1];
+            order[i - 1] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
 
-        double totalSize = equivalenceClasses.values().stream().mapToInt(Integer::intValue).sum();
-        return totalSize / equivalenceClasses.size();
+    /**
+     * Risk score of one knowledge level (see calculatePrivacyRiskScore)
+     */
+    private static double riskScore(double uniqueMatchRate, double avgLinkability) {
+        return (0.7 * uniqueMatchRate) + (0.3 * avgLinkability);
     }
 
     /**
@@ -207,14 +478,8 @@ public class LinkageAttack {
         // Use the worst-case scenario (highest knowledge level)
         LinkageResult worstCase = results.get(knownAttributeRatios[knownAttributeRatios.length - 1]);
 
-        // Risk is primarily based on unique match rate
-        double uniqueMatchRisk = worstCase.uniqueMatchRate;
-
-        // Also consider average linkability
-        double linkabilityRisk = worstCase.avgLinkability;
-
-        // Weighted combination
-        return (0.7 * uniqueMatchRisk) + (0.3 * linkabilityRisk);
+        // Risk is primarily based on unique match rate, also considering average linkability
+        return riskScore(worstCase.uniqueMatchRate, worstCase.avgLinkability);
     }
 
     /**
@@ -228,10 +493,10 @@ public class LinkageAttack {
         System.out.println();
 
         for (Map.Entry<Double, LinkageResult> entry : results.entrySet()) {
-            double knowledgePercent = entry.getKey() * 100;
+            int knowledgePercent = percent(entry.getKey());
             LinkageResult result = entry.getValue();
 
-            System.out.println("--- Adversary Knowledge Level: " + (int)knowledgePercent + "% ---");
+            System.out.println("--- Adversary Knowledge Level: " + knowledgePercent + "% ---");
             System.out.println("  Known attributes (quasi-identifiers): " + result.numKnownAttributes);
             System.out.println();
 
@@ -254,9 +519,32 @@ public class LinkageAttack {
             System.out.println();
             System.out.printf("  Average linkability score:     %.4f\n", result.avgLinkability);
             System.out.printf("  Average equivalence class size: %.2f (k-anonymity metric)\n", result.avgGroupSize);
+            System.out.printf("  Equivalence classes:     %6d (min %d, median %d, 95th percentile %d)\n",
+                    result.groupSizes.numClasses,
+                    result.groupSizes.min,
+                    result.groupSizes.median,
+                    result.groupSizes.p95);
+            System.out.printf("  Singleton classes:       %6d (%.2f%% of records unique)\n",
+                    result.groupSizes.singletons,
+                    (double)result.groupSizes.singletons / Math.max(1, syntheticData.numInstances()) * 100);
             System.out.println();
         }
 
+        if (!monteCarloResults.isEmpty()) {
+            System.out.println("=== MONTE-CARLO QUASI-IDENTIFIER SUBSETS (" + monteCarloTrials + " per level) ===");
+            for (Map.Entry<Double, MonteCarloResult> entry : monteCarloResults.entrySet()) {
+                MonteCarloResult mc = entry.getValue();
+                System.out.println("--- Adversary Knowledge Level: " + percent(entry.getKey()) + "% ---");
+                printRunningStatistic("Unique match rate:", mc.uniqueMatchRate);
+                printRunningStatistic("Correct match rate:", mc.correctMatchRate);
+                printRunningStatistic("Average linkability:", mc.avgLinkability);
+                printRunningStatistic("Avg equivalence class:", mc.avgGroupSize);
+                printRunningStatistic("Risk score:", mc.riskScore);
+                System.out.printf("  Worst-case subset:       risk %.4f with %s\n", mc.worstRisk, mc.worstSubset);
+                System.out.println();
+            }
+        }
+
         System.out.println("=== OVERALL PRIVACY ASSESSMENT ===");
         double riskScore = calculatePrivacyRiskScore();
         System.out.printf("Privacy Risk Score: %.4f (0=perfect, 1=no privacy)\n", riskScore);
@@ -294,14 +582,30 @@ public class LinkageAttack {
         Map<String, Object> stats = new LinkedHashMap<>();
 
         for (Map.Entry<Double, LinkageResult> entry : results.entrySet()) {
-            double knowledgePercent = entry.getKey() * 100;
+            int knowledgePercent = percent(entry.getKey());
             LinkageResult result = entry.getValue();
-            String prefix = "Knowledge_" + (int)knowledgePercent + "%_";
+            String prefix = "Knowledge_" + knowledgePercent + "%_";
 
             stats.put(prefix + "Unique_Match_Rate", result.uniqueMatchRate);
             stats.put(prefix + "Correct_Match_Rate", result.correctMatchRate);
             stats.put(prefix + "Avg_Linkability", result.avgLinkability);
             stats.put(prefix + "Avg_Group_Size", result.avgGroupSize);
+            stats.put(prefix + "Min_Group_Size", (double) result.groupSizes.min);
+            stats.put(prefix + "Median_Group_Size", (double) result.groupSizes.median);
+            stats.put(prefix + "P95_Group_Size", (double) result.groupSizes.p95);
+            stats.put(prefix + "Singleton_Classes", (double) result.groupSizes.singletons);
+
+            MonteCarloResult mc = monteCarloResults.get(entry.getKey());
+            if (mc != null) {
+                stats.put(prefix + "MC_Mean_Unique_Match_Rate", mc.uniqueMatchRate.mean);
+                stats.put(prefix + "MC_Std_Unique_Match_Rate", mc.uniqueMatchRate.standardDeviation());
+                stats.put(prefix + "MC_Mean_Correct_Match_Rate", mc.correctMatchRate.mean);
+                stats.put(prefix + "MC_Mean_Avg_Linkability", mc.avgLinkability.mean);
+                stats.put(prefix + "MC_Mean_Avg_Group_Size", mc.avgGroupSize.mean);
+                stats.put(prefix + "MC_Mean_Risk", mc.riskScore.mean);
+                stats.put(prefix + "MC_Std_Risk", mc.riskScore.standardDeviation());
+                stats.put(prefix + "MC_Worst_Risk", mc.worstRisk);
+            }
         }
 
         stats.put("Overall_Privacy_Risk_Score", calculatePrivacyRiskScore());
@@ -309,6 +613,15 @@ public class LinkageAttack {
         return stats;
     }
 
+    private static void printRunningStatistic(String label, RunningStatistic statistic) {
+        System.out.printf("  %-24s %.4f ± %.4f (min %.4f, max %.4f)\n",
+                label, statistic.mean, statistic.standardDeviation(), statistic.min, statistic.max);
+    }
+
+    private static int percent(double ratio) {
+        return (int) Math.round(ratio * 100);
+    }
+
     /**
      * Inner class to store linkage attack results
      */
@@ -323,11 +636,12 @@ public class LinkageAttack {
         double correctMatchRate;
         double avgLinkability;
         double avgGroupSize;
+        GroupSizes groupSizes;
 
         LinkageResult(int numKnownAttributes, List<Integer> quasiIdentifiers,
                       int uniqueMatches, int multipleMatches, int noMatches,
                       int correctUniqueMatches, double uniqueMatchRate,
-                      double correctMatchRate, double avgLinkability, double avgGroupSize) {
+                      double correctMatchRate, double avgLinkability, GroupSizes groupSizes) {
             this.numKnownAttributes = numKnownAttributes;
             this.quasiIdentifiers = quasiIdentifiers;
             this.uniqueMatches = uniqueMatches;
@@ -337,7 +651,141 @@ public class LinkageAttack {
             this.uniqueMatchRate = uniqueMatchRate;
             this.correctMatchRate = correctMatchRate;
             this.avgLinkability = avgLinkability;
-            this.avgGroupSize = avgGroupSize;
+            this.avgGroupSize = groupSizes.average;
+            this.groupSizes = groupSizes;
+        }
+    }
+
+    /**
+     * Distribution of the equivalence class sizes at one knowledge level
+     */
+    private static class GroupSizes {
+        int numClasses;
+        double average;
+        int min;
+        int median;
+        int p95;
+        int singletons;
+
+        GroupSizes(EquivalenceClasses classes) {
+            int[] sizes = classes.sortedSizes();
+            this.numClasses = classes.numClasses();
+            this.average = classes.averageSize();
+            this.min = (sizes.length > 0) ? sizes[0] : 0;
+            this.median = EquivalenceClasses.percentile(sizes, 0.5);
+            this.p95 = EquivalenceClasses.percentile(sizes, 0.95);
+            this.singletons = EquivalenceClasses.singletons(sizes);
+        }
+    }
+
+    /**
+     * Per-thread buffers of Monte-Carlo trials
+     */
+    private static class TrialWorkspace {
+        final int numSynthetic;
+        final EquivalenceClasses syntheticClasses;
+        final EquivalenceClasses originalClasses;
+        final int[][] levelClass;      // [level][record]: class of the original record
+        final int[] records;           // original records in visiting order
+        final int[] sorted;
+        final int[] counts;
+        final int[][] matches;         // [level]: matches of the current class, allocated on first use
+
+        TrialWorkspace(int numRecords, int numSynthetic, int numLevels) {
+            this.numSynthetic = numSynthetic;
+            this.syntheticClasses = new EquivalenceClasses(numSynthetic);
+            this.originalClasses = new EquivalenceClasses(numRecords);
+            this.levelClass = new int[numLevels][numRecords];
+            this.records = new int[numRecords];
+            this.sorted = new int[numRecords];
+            this.counts = new int[numRecords + 1];
+            this.matches = new int[numLevels][];
+        }
+
+        /**
+         * Matches buffer of one level (room for all synthetic records)
+         */
+        int[] matches(int level) {
+            if (matches[level] == null) {
+                matches[level] = new int[numSynthetic];
+            }
+            return matches[level];
+        }
+
+        /**
+         * Stable counting sort of 'records' by class
+         */
+        void sortByClass(int[] classOf, int numRecords) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < numRecords; i++) {
+                counts[classOf[records[i]] + 1]++;
+            }
+            for (int c = 1; c <= numRecords; c++) {
+                counts[c] += counts[c - 1];
+            }
+            for (int i = 0; i < numRecords; i++) {
+                int record = records[i];
+                sorted[counts[classOf[record]]++] = record;
+            }
+            System.arraycopy(sorted, 0, records, 0, numRecords);
+        }
+    }
+
+    /**
+     * Streaming mean and variance (Welford's algorithm) with the range
+     */
+    private static class RunningStatistic {
+        long count;
+        double mean;
+        double m2;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        void add(double value) {
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        double standardDeviation() {
+            return (count > 1) ? Math.sqrt(m2 / (count - 1)) : 0.0;
+        }
+    }
+
+    /**
+     * Monte-Carlo results of one knowledge level
+     */
+    private class MonteCarloResult {
+        RunningStatistic uniqueMatchRate = new RunningStatistic();
+        RunningStatistic correctMatchRate = new RunningStatistic();
+        RunningStatistic avgLinkability = new RunningStatistic();
+        RunningStatistic avgGroupSize = new RunningStatistic();
+        RunningStatistic riskScore = new RunningStatistic();
+        double worstRisk = Double.NEGATIVE_INFINITY;
+        List<String> worstSubset = new ArrayList<>();
+
+        /**
+         * Add one trial (metrics as returned by runTrial; quasi-identifiers
+         * attributes[order[0..numKnown)])
+         */
+        void add(double[] metrics, int[] order, int numKnown, List<Integer> attributes) {
+            double risk = riskScore(metrics[0], metrics[2]);
+            uniqueMatchRate.add(metrics[0]);
+            correctMatchRate.add(metrics[1]);
+            avgLinkability.add(metrics[2]);
+            avgGroupSize.add(metrics[3]);
+            riskScore.add(risk);
+
+            if (risk > worstRisk) {
+                worstRisk = risk;
+                worstSubset = new ArrayList<>();
+                for (int i = 0; i < numKnown; i++) {
+                    worstSubset.add(originalData.attribute(attributes.get(order[i])).name());
+                }
+            }
         }
     }
 }
@@ -1,7 +1,6 @@
 package privacyguard;
 
 import weka.core.Instances;
-import weka.core.converters.ConverterUtils.DataSource;
 
 import java.io.File;
 import java.io.IOException;
@@ -67,6 +66,7 @@ public class MenuDrivenInterface {
                     runComplexityBenchmark();
                     break;
                 case 0:
+                    System.out.println("\n  Dataset cache: " + DatasetCache.statistics());
                     System.out.println("\n✓ Exiting system. Goodbye!");
                     running = false;
                     break;
@@ -110,6 +110,7 @@ public class MenuDrivenInterface {
             System.out.println("║                   Dataset Explorer                            ║");
             System.out.println("╚═══════════════════════════════════════════════════════════════╝");
             System.out.println("[1] Show Dataset Details");
+            System.out.println("[2] Show Dataset Cache Statistics");
             System.out.println("[0] Back to Main Menu");
             System.out.print("\nEnter choice: ");
             System.out.flush();
@@ -120,6 +121,9 @@ public class MenuDrivenInterface {
                 case 1:
                     showDatasetDetails();
                     break;
+                case 2:
+                    System.out.println("\n  Dataset cache: " + DatasetCache.statistics() + "\n");
+                    break;
                 case 0:
                     exploring = false;
                     System.out.println("\n← Returning to Main Menu...\n");
@@ -135,9 +139,14 @@ public class MenuDrivenInterface {
      */
     private static void showDatasetDetails() {
         // Dynamically scan for ARFF and CSV files in the directory
+        // (plus shipped .tar.xz archives that have not been extracted)
         File dir = new File(DATASET_DIR);
         File[] files = dir.listFiles((d, name) -> {
             String lower = name.toLowerCase();
+            if (TarXzArchive.isArchive(lower)) {
+                String stem = name.substring(0, name.length() - TarXzArchive.EXTENSION.length());
+                return !new File(d, stem + ".arff").exists();
+            }
             return lower.endsWith(".arff") || lower.endsWith(".csv");
         });
 
@@ -241,8 +250,7 @@ public class MenuDrivenInterface {
      * Load dataset from file (supports CSV, ARFF, etc.)
      */
     private static Instances loadDataset(String filePath) throws Exception {
-        DataSource source = new DataSource(filePath);
-        return source.getDataSet();
+        return DatasetCache.load(filePath);
     }
 
     /**
@@ -0,0 +1,535 @@
+package privacyguard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPOutputStream;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffLoader;
+import weka.core.converters.ArffSaver;
+import weka.filters.unsupervised.attribute.Normalize;
+
+/**
+ * Out-of-Core PrivacyGuard Generator
+ *
+ * Produces the same normalised PrivacyGuard synthetic ARFF as SyntheticDataGenerator,
+ * without ever holding the dataset in memory:
+ * 1. Stream the source ARFF once, spilling every column to its own temporary file
+ * 2. Per feature, external sort: sorted runs of (value, count, first row) that
+ *    are merged into the weighted distinct values of the column
+ * 3. Cluster the distinct values with VWC1D; whenever VWC needs the rows in
+ *    row order they are re-read from the spill file
+ * 4. Write the cluster ID of every row to a second spill file
+ * 5. Stream the synthetic ARFF out row by row, normalised to [0, 1] exactly as
+ *    Weka's Normalize filter does, in ArffSaver's format
+ *
+ * Peak memory is the budget (sort chunks and I/O buffers) plus the distinct
+ * values of the feature being clustered; it does not grow with n x m.
+ * Features must be numeric and free of missing values.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class OutOfCorePrivacyGuard {
+
+    private static final int MIN_BUFFER = 8 * 1024;
+    private static final int MAX_BUFFER = 1024 * 1024;
+
+    private final int maxClusterSize;
+    private final long memoryBudget;
+    private File tempDirectory = new File(System.getProperty("java.io.tmpdir"));
+    private Long randomSeed = null;
+
+    /**
+     * Constructor
+     * @param maxClusterSize Maximum cluster size (s_max)
+     * @param memoryBudgetBytes Memory for sort chunks and I/O buffers
+     */
+    public OutOfCorePrivacyGuard(int maxClusterSize, long memoryBudgetBytes) {
+        this.maxClusterSize = maxClusterSize;
+        this.memoryBudget = Math.max(1024 * 1024, memoryBudgetBytes);
+    }
+
+    /**
+     * Directory for the spill files (default: java.io.tmpdir)
+     */
+    public void setTempDirectory(String directory) {
+        this.tempDirectory = new File(directory);
+    }
+
+    /**
+     * Seed the width sampling (feature f uses seed + f)
+     */
+    public void setRandomSeed(long seed) {
+        this.randomSeed = seed;
+    }
+
+    /**
+     * Generate the normalised synthetic ARFF for an ARFF file
+     * (the last attribute is the class)
+     */
+    public GenerationResult generate(String inputFile, String outputFile) throws Exception {
+        tempDirectory.mkdirs();
+        File workDir = Files.createTempDirectory(tempDirectory.toPath(), "privacyguard-").toFile();
+
+        String sourcePath = FastArffLoader.resolveDatasetPath(inputFile);
+        TarXzArchive archive = TarXzArchive.isArchive(sourcePath) ? new TarXzArchive(sourcePath) : null;
+        try {
+            // 1. Spill the columns (streamed out of the .tar.xz when not extracted)
+            ArffLoader loader = new ArffLoader();
+            if (archive != null) {
+                loader.setSource(archive.openEntry(".arff"));
+            } else {
+                loader.setFile(new File(sourcePath));
+            }
+            Instances structure = loader.getStructure();
+            structure.setClassIndex(structure.numAttributes() - 1);
+            int numAttributes = structure.numAttributes();
+            int classIndex = structure.classIndex();
+
+            for (int a = 0; a < numAttributes; a++) {
+                if (a != classIndex && !structure.attribute(a).isNumeric()) {
+                    throw new IOException("Out-of-core mode supports numeric features only: "
+                            + structure.attribute(a).name());
+                }
+            }
+
+            int numRows = spillColumns(loader, structure, workDir);
+            System.out.println("    Spilled " + numRows + " rows x " + numAttributes + " columns to " + workDir);
+
+            // 2-4. Cluster one feature at a time
+            int[] clustersPerFeature = new int[numAttributes];
+            for (int a = 0; a < numAttributes; a++) {
+                if (a == classIndex) continue;
+                clustersPerFeature[a] = clusterColumn(workDir, a, numRows);
+            }
+
+            // 5. Stream the synthetic ARFF
+            writeSyntheticArff(structure, workDir, numRows, clustersPerFeature, new File(outputFile));
+
+            return new GenerationResult(numRows, structure.numClasses(), classIndex, clustersPerFeature);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (archive != null) {
+                archive.close();
+            }
+            deleteDirectory(workDir);
+        }
+    }
+
+    // ==================== SPILLING ====================
+
+    /**
+     * Stream the ARFF and append every value to its column file. Feature
+     * values are spilled with -0.0 turned into 0.0, so from here on every
+     * step compares values with one rule (Double.compare, as used by the
+     * sorts and Arrays.binarySearch) without splitting the two zeros.
+     * @return Number of rows
+     */
+    private int spillColumns(ArffLoader loader, Instances structure, File workDir) throws IOException {
+        int numAttributes = structure.numAttributes();
+        int classIndex = structure.classIndex();
+        int bufferSize = bufferSize(numAttributes);
+        DataOutputStream[] columns = new DataOutputStream[numAttributes];
+        try {
+            for (int a = 0; a < numAttributes; a++) {
+                columns[a] = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(columnFile(workDir, a)), bufferSize));
+            }
+
+            int numRows = 0;
+            Instance instance;
+            while ((instance = loader.getNextInstance(structure)) != null) {
+                for (int a = 0; a < numAttributes; a++) {
+                    double value = instance.value(a);
+                    columns[a].writeDouble(a == classIndex ? value : value + 0.0);
+                }
+                numRows++;
+            }
+            return numRows;
+        } finally {
+            for (DataOutputStream column : columns) {
+                if (column != null) column.close();
+            }
+        }
+    }
+
+    // ==================== CLUSTERING ====================
+
+    /**
+     * Cluster one spilled column and write the cluster ID of every row
+     * @return Number of clusters
+     */
+    private int clusterColumn(File workDir, int attributeIndex, int numRows) throws IOException {
+        File column = columnFile(workDir, attributeIndex);
+        DistinctValues distinct = externalSortDistinct(column, workDir, numRows);
+
+        int[] clusterOfValue;
+        if (distinct.size <= 2) {
+            // Constant/binary feature: first value seen is cluster 0 (as VWC1D.assignBinary)
+            clusterOfValue = new int[distinct.size];
+            if (distinct.size == 2) {
+                int first = (distinct.firstRows[0] < distinct.firstRows[1]) ? 0 : 1;
+                clusterOfValue[1 - first] = 1;
+            }
+        } else {
+            VWC1D engine = new VWC1D(maxClusterSize);
+            if (randomSeed != null) {
+                engine.setSeed(randomSeed + attributeIndex);
+            }
+            clusterOfValue = engine.clusterDistinct(distinct.values, distinct.weights, distinct.firstRows,
+                    action -> forEachValueIndex(column, distinct.values, action));
+        }
+
+        int numClusters = 0;
+        for (int id : clusterOfValue) {
+            numClusters = Math.max(numClusters, id + 1);
+        }
+
+        // Cluster ID of every row, in row order
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(clusterFile(workDir, attributeIndex)), bufferSize(2)))) {
+            final DataOutputStream ids = out;
+            forEachValueIndex(column, distinct.values, v -> {
+                try {
+                    ids.writeInt(clusterOfValue[v]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        column.delete();
+        return numClusters;
+    }
+
+    /**
+     * Read a column file in row order and report the index of each value
+     * among the sorted distinct values
+     */
+    private void forEachValueIndex(File column, double[] sortedValues, java.util.function.IntConsumer action) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(column), bufferSize(2)))) {
+            long rows = column.length() / Double.BYTES;
+            for (long i = 0; i < rows; i++) {
+                action.accept(Arrays.binarySearch(sortedValues, in.readDouble()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Weighted distinct values of a column, sorted ascending
+     */
+    private static class DistinctValues {
+        int size;
+        double[] values = new double[1024];
+        int[] weights = new int[1024];
+        long[] firstRows = new long[1024];
+
+        void add(double value, int weight, long firstRow) {
+            if (size > 0 && Double.compare(values[size - 1], value) == 0) {
+                weights[size - 1] += weight;
+                firstRows[size - 1] = Math.min(firstRows[size - 1], firstRow);
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+                firstRows = Arrays.copyOf(firstRows, size * 2);
+            }
+            values[size] = value;
+            weights[size] = weight;
+            firstRows[size] = firstRow;
+            size++;
+        }
+
+        void trim() {
+            values = Arrays.copyOf(values, size);
+            weights = Arrays.copyOf(weights, size);
+            firstRows = Arrays.copyOf(firstRows, size);
+        }
+    }
+
+    /**
+     * External sort of a column into weighted distinct values: chunks that fit
+     * the budget are sorted and aggregated into runs, then all runs are merged
+     */
+    private DistinctValues externalSortDistinct(File column, File workDir, int numRows) throws IOException {
+        // Chunk arrays: values in row order + sorted copy (8 + 8 bytes per row), distinct
+        // value counts (4) and first rows (8, at most one distinct value per row)
+        int chunkRows = (int) Math.max(1024, Math.min(numRows, memoryBudget / 2 / 28));
+        List<File> runs = new ArrayList<>();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(column), bufferSize(2)))) {
+            double[] chunk = new double[chunkRows];
+            double[] sorted = new double[chunkRows];
+            int[] counts = new int[chunkRows];
+            long[] firstRows = new long[chunkRows];
+            for (long base = 0; base < numRows; base += chunkRows) {
+                int rows = (int) Math.min(chunkRows, numRows - base);
+                for (int i = 0; i < rows; i++) {
+                    chunk[i] = in.readDouble();
+                    if (Double.isNaN(chunk[i])) {
+                        throw new IOException("Out-of-core mode does not support missing values");
+                    }
+                }
+                runs.add(writeRun(chunk, sorted, counts, firstRows, rows, base, workDir, runs.size()));
+            }
+        }
+
+        DistinctValues distinct = mergeRuns(runs);
+        for (File run : runs) {
+            run.delete();
+        }
+        distinct.trim();
+        return distinct;
+    }
+
+    /**
+     * Sort one chunk and write it as a run of (value, count, first row); the
+     * sorted, counts and firstRows arrays are scratch space of chunk's size
+     */
+    private File writeRun(double[] chunk, double[] sorted, int[] counts, long[] firstRows, int rows, long base,
+                          File workDir, int runIndex) throws IOException {
+        System.arraycopy(chunk, 0, sorted, 0, rows);
+        Arrays.sort(sorted, 0, rows);
+
+        // Distinct values of the chunk with their counts
+        int distinct = 0;
+        Arrays.fill(counts, 0, rows, 0);
+        for (int i = 0; i < rows; i++) {
+            if (distinct == 0 || Double.compare(sorted[i], sorted[distinct - 1]) != 0) {
+                sorted[distinct++] = sorted[i];
+            }
+            counts[distinct - 1]++;
+        }
+
+        // First row of every distinct value (scan in row order)
+        Arrays.fill(firstRows, 0, distinct, -1);
+        for (int i = 0; i < rows; i++) {
+            int v = Arrays.binarySearch(sorted, 0, distinct, chunk[i]);
+            if (firstRows[v] < 0) {
+                firstRows[v] = base + i;
+            }
+        }
+
+        File run = new File(workDir, "run_" + runIndex + ".bin");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run), bufferSize(2)))) {
+            for (int v = 0; v < distinct; v++) {
+                out.writeDouble(sorted[v]);
+                out.writeInt(counts[v]);
+                out.writeLong(firstRows[v]);
+            }
+        }
+        return run;
+    }
+
+    /**
+     * k-way merge of sorted runs, combining equal values
+     */
+    private DistinctValues mergeRuns(List<File> runs) throws IOException {
+        DistinctValues distinct = new DistinctValues();
+        int runBuffer = bufferSize(runs.size());
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> Double.compare(a.value, b.value));
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run, runBuffer);
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                distinct.add(reader.value, reader.count, reader.firstRow);
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Sequential reader over one run file
+     */
+    private static class RunReader {
+        private final DataInputStream in;
+        double value;
+        int count;
+        long firstRow;
+
+        RunReader(File run, int bufferSize) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), bufferSize));
+        }
+
+        boolean next() throws IOException {
+            try {
+                value = in.readDouble();
+            } catch (EOFException e) {
+                return false;
+            }
+            count = in.readInt();
+            firstRow = in.readLong();
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // ==================== OUTPUT ====================
+
+    /**
+     * Write the normalised synthetic dataset, reading all cluster-ID files
+     * and the class column in parallel streams
+     */
+    private void writeSyntheticArff(Instances structure, File workDir, int numRows,
+                                    int[] clustersPerFeature, File outputFile) throws Exception {
+        int numAttributes = structure.numAttributes();
+        int classIndex = structure.classIndex();
+
+        // Same header as Filter.useFilter(data, new Normalize()) followed by ArffSaver
+        Normalize normalize = new Normalize();
+        normalize.setInputFormat(structure);
+        Instances header = normalize.getOutputFormat();
+        int maxDecimalPlaces = new ArffSaver().getMaxDecimalPlaces();
+
+        if (outputFile.getParentFile() != null) {
+            outputFile.getParentFile().mkdirs();
+        }
+
+        int bufferSize = bufferSize(numAttributes + 1);
+        DataInputStream[] inputs = new DataInputStream[numAttributes];
+        OutputStream out = new FileOutputStream(outputFile);
+        if (outputFile.getName().toLowerCase().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, MAX_BUFFER);
+        }
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), MAX_BUFFER))) {
+            for (int a = 0; a < numAttributes; a++) {
+                File file = (a == classIndex) ? columnFile(workDir, a) : clusterFile(workDir, a);
+                inputs[a] = new DataInputStream(new BufferedInputStream(new FileInputStream(file), bufferSize));
+            }
+
+            writer.print(new Instances(header, 0).toString());
+
+            double[] values = new double[numAttributes];
+            for (int i = 0; i < numRows; i++) {
+                for (int a = 0; a < numAttributes; a++) {
+                    if (a == classIndex) {
+                        values[a] = inputs[a].readDouble();
+                    } else {
+                        // Normalize: (x - min) / (max - min) with IDs 0..k-1, 0 for a single cluster
+                        int id = inputs[a].readInt();
+                        int maxId = clustersPerFeature[a] - 1;
+                        values[a] = (maxId == 0) ? 0 : (double) id / maxId;
+                    }
+                }
+                Instance row = new DenseInstance(1.0, values);
+                row.setDataset(header);
+                writer.println(row.toStringMaxDecimalDigits(maxDecimalPlaces));
+            }
+        } finally {
+            for (DataInputStream input : inputs) {
+                if (input != null) input.close();
+            }
+        }
+    }
+
+    // ==================== HELPERS ====================
+
+    /**
+     * I/O buffer per stream when 'streams' files are open at once
+     */
+    private int bufferSize(int streams) {
+        long perStream = memoryBudget / 4 / Math.max(1, streams);
+        return (int) Math.max(MIN_BUFFER, Math.min(MAX_BUFFER, perStream));
+    }
+
+    private static File columnFile(File workDir, int attributeIndex) {
+        return new File(workDir, "column_" + attributeIndex + ".bin");
+    }
+
+    private static File clusterFile(File workDir, int attributeIndex) {
+        return new File(workDir, "clusters_" + attributeIndex + ".bin");
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Summary of an out-of-core run
+     */
+    public static class GenerationResult {
+        public final int numInstances;
+        public final int numClasses;
+        public final int numFeatures;
+        public final int[] clustersPerFeature;   // by attribute index (0 for the class)
+        private final int classIndex;
+
+        GenerationResult(int numInstances, int numClasses, int classIndex, int[] clustersPerFeature) {
+            this.numInstances = numInstances;
+            this.numClasses = numClasses;
+            this.numFeatures = clustersPerFeature.length - 1;
+            this.classIndex = classIndex;
+            this.clustersPerFeature = clustersPerFeature;
+        }
+
+        /**
+         * Cluster statistics in the format of SyntheticDataGenerator.calculateClusterInfo()
+         */
+        public String clusterInfo() {
+            int total = 0;
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for (int a = 0; a < clustersPerFeature.length; a++) {
+                if (a == classIndex) continue;
+                total += clustersPerFeature[a];
+                min = Math.min(min, clustersPerFeature[a]);
+                max = Math.max(max, clustersPerFeature[a]);
+            }
+            return String.format("Total Clusters: %d, Avg per Feature: %.2f, Min: %d, Max: %d",
+                    total, (double) total / numFeatures, min, max);
+        }
+    }
+}
@@ -2,7 +2,6 @@ package privacyguard;
 
 import weka.core.Instances;
 import weka.core.EuclideanDistance;
-import weka.core.converters.ConverterUtils.DataSource;
 
 import java.io.*;
 import java.util.*;
@@ -15,6 +14,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Evaluates privacy guarantees of synthetic data by running:
  * 1. Re-identification attacks
  * 2. Linkage attacks
+ * 3. Distance to closest record (DCR / NNDR)
  *
  * Integrated with the menu system for easy access.
  *
@@ -25,6 +25,10 @@ public class PrivacyAttackEvaluator {
     private static final String ORIGINAL_DIR = "datasets/Original/";
     private static final String SYNTHETIC_DIR = "output/1_synthetic_data/";
     private static final String OUTPUT_DIR = "output/5_privacy_attacks/";
+    private static final String RESULT_CACHE_DIR = OUTPUT_DIR + "cache/";
+
+    // Original dataset of the latest evaluation (reused while its file is unchanged)
+    private static OriginalDataset lastOriginal;
 
     private static final String[][] DATASETS = {
         {"Bot-IoT", "bot_loT"},
@@ -56,12 +60,12 @@ public class PrivacyAttackEvaluator {
             System.out.println("  • Linkage Attack (partial knowledge simulation)");
             System.out.println();
             System.out.println("[1] Evaluate Specific Dataset & Method");
-            System.out.println("[2] Evaluate All Methods for Specific Dataset (PARALLEL - uses 5 cores)");
+            System.out.println("[2] Evaluate All Methods for Specific Dataset (PARALLEL)");
             System.out.println("[3] Evaluate All Datasets & All Methods");
             System.out.println("[0] Back to Main Menu");
             System.out.println();
-            System.out.println("Note: Option [2] runs methods in parallel using 5 cores.");
-            System.out.println("      You can run 4 instances with different datasets to use all 20 cores.");
+            System.out.println("Note: Option [2] runs methods in parallel on one shared pool");
+            System.out.println("      (attack.threads, attack.memoryMB in config.properties).");
             System.out.print("\nEnter choice: ");
 
             int choice = getIntInput(scanner);
@@ -135,7 +139,8 @@ public class PrivacyAttackEvaluator {
 
     /**
      * Evaluate all methods for a specific dataset
-     * OPTIMIZED: Builds BallTree once and shares it across all methods to save memory and time
+     * OPTIMIZED: Loads the original dataset once and shares it (with its matrix and
+     * indexes) read-only across all methods to save memory and time
      */
     private static void evaluateAllMethodsForDataset(Scanner scanner) throws Exception {
         // Select dataset
@@ -157,25 +162,49 @@ public class PrivacyAttackEvaluator {
         String datasetPrefix = DATASETS[datasetChoice][1];
 
         System.out.println("\n⚠ Evaluating all methods for " + datasetName + " in PARALLEL...\n");
-        System.out.println("Using " + METHODS.length + " cores (one per method)\n");
 
-        // Create thread pool with one thread per method
-        ExecutorService executor = Executors.newFixedThreadPool(METHODS.length);
+        OriginalDataset original = openOriginalData(datasetPrefix);
+        if (original == null) {
+            return;
+        }
+
         List<Future<?>> futures = new ArrayList<>();
         AtomicInteger completedCount = new AtomicInteger(0);
+        long estimatedBytes = -1;
 
         // Submit each method evaluation as a separate task
         for (String methodName : METHODS) {
             final String method = methodName;
-            Future<?> future = executor.submit(() -> {
+
+            // Cached results only rewrite their CSV; no need to schedule them
+            if (hasCachedResult(datasetPrefix, method, original)) {
+                evaluateDatasetMethod(datasetName, datasetPrefix, method, original);
+                int completed = completedCount.incrementAndGet();
+                System.out.println("\n[" + completed + "/" + METHODS.length + "] ✓ Completed: " + method + " (cached)\n");
+                continue;
+            }
+
+            // Methods share the attack scheduler's pool; each is admitted once its
+            // estimated footprint (synthetic data assumed as large as the original)
+            // fits under the memory budget
+            if (estimatedBytes < 0) {
+                SharedOriginalData data = original.data();
+                estimatedBytes = AttackScheduler.estimateBytes(data.numInstances(),
+                        data.numInstances(), data.features().length, indexBytes(data));
+                System.out.println("Attack scheduler: " + AttackScheduler.statistics());
+                System.out.printf("Estimated memory per method: %.1f MB%n%n", estimatedBytes / (1024.0 * 1024.0));
+            }
+
+            Future<?> future = AttackScheduler.submit(estimatedBytes, () -> {
                 try {
-                    evaluateDatasetMethod(datasetName, datasetPrefix, method);
+                    evaluateDatasetMethod(datasetName, datasetPrefix, method, original);
                     int completed = completedCount.incrementAndGet();
                     System.out.println("\n[" + completed + "/" + METHODS.length + "] ✓ Completed: " + method + "\n");
                 } catch (Exception e) {
                     System.err.println("\n✗ Error evaluating " + method + ": " + e.getMessage());
                     e.printStackTrace();
                 }
+                return null;
             });
             futures.add(future);
         }
@@ -190,16 +219,6 @@ public class PrivacyAttackEvaluator {
             }
         }
 
-        // Shutdown executor
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
-        }
-
         System.out.println("\n✓ All " + METHODS.length + " methods evaluated for " + datasetName + "!\n");
     }
 
@@ -213,8 +232,12 @@ public class PrivacyAttackEvaluator {
             String datasetName = dataset[0];
             String datasetPrefix = dataset[1];
 
+            OriginalDataset original = openOriginalData(datasetPrefix);
+            if (original == null) {
+                continue;
+            }
             for (String methodName : METHODS) {
-                evaluateDatasetMethod(datasetName, datasetPrefix, methodName);
+                evaluateDatasetMethod(datasetName, datasetPrefix, methodName, original);
                 System.out.println();
             }
         }
@@ -229,6 +252,68 @@ public class PrivacyAttackEvaluator {
      * @param methodName Name of synthetic data generation method
      */
     public static void evaluateDatasetMethod(String datasetName, String datasetPrefix, String methodName) throws Exception {
+        OriginalDataset original = openOriginalData(datasetPrefix);
+        if (original != null) {
+            evaluateDatasetMethod(datasetName, datasetPrefix, methodName, original);
+        }
+    }
+
+    /**
+     * Open an original dataset, to be shared by all method evaluations. The
+     * file is not loaded here, only when an attack has to run. While the file
+     * is unchanged, the dataset of the previous evaluation is reused with the
+     * matrix and indexes already built. With the result cache on, the file is
+     * hashed (the digest is part of the cache key) and compared by content;
+     * otherwise it is compared by size and modification time.
+     * @param datasetPrefix File prefix of dataset
+     * @return The original dataset, or null when the file does not exist
+     */
+    private static synchronized OriginalDataset openOriginalData(String datasetPrefix) throws Exception {
+        String originalFile = ORIGINAL_DIR + datasetPrefix + ".arff";
+        if (!FastArffLoader.datasetExists(originalFile)) {
+            System.out.println("✗ Original dataset not found: " + originalFile);
+            return null;
+        }
+
+        String digest = resultCacheEnabled() ? AttackResultCache.digest(originalFile) : null;
+        File source = new File(FastArffLoader.resolveDatasetPath(originalFile));
+        String version = (digest != null) ? digest : source.length() + "@" + source.lastModified();
+        if (lastOriginal == null || !lastOriginal.file.equals(originalFile) || !lastOriginal.version.equals(version)) {
+            lastOriginal = new OriginalDataset(originalFile, digest, version);
+        }
+        return lastOriginal;
+    }
+
+    /**
+     * Result cache key of a dataset and method combination, or null when the
+     * cache is disabled (attack.cache) or the synthetic file does not exist
+     */
+    private static String resultCacheKey(String datasetPrefix, String methodName, OriginalDataset original) throws Exception {
+        String syntheticFile = SYNTHETIC_DIR + methodName + "/" + datasetPrefix + "_synthetic.arff";
+        if (!resultCacheEnabled() || !FastArffLoader.datasetExists(syntheticFile)) {
+            return null;
+        }
+        return AttackResultCache.key(original.digest, AttackResultCache.digest(syntheticFile));
+    }
+
+    private static boolean resultCacheEnabled() {
+        return Boolean.parseBoolean(ConfigLoader.getProperty("attack.cache", "true"));
+    }
+
+    private static boolean hasCachedResult(String datasetPrefix, String methodName, OriginalDataset original) throws Exception {
+        String key = resultCacheKey(datasetPrefix, methodName, original);
+        return key != null && AttackResultCache.cacheFile(RESULT_CACHE_DIR, key).isFile();
+    }
+
+    /**
+     * Evaluate a dataset and method combination against an already loaded original dataset
+     * @param datasetName Display name of dataset
+     * @param datasetPrefix File prefix of dataset
+     * @param methodName Name of synthetic data generation method
+     * @param original Original dataset, shared read-only with other evaluations
+     */
+    private static void evaluateDatasetMethod(String datasetName, String datasetPrefix, String methodName,
+                                              OriginalDataset original) throws Exception {
         System.out.println("\n╔═══════════════════════════════════════════════════════════════╗");
         System.out.println("║  Privacy Attack Evaluation                                   ║");
         System.out.println("╚═══════════════════════════════════════════════════════════════╝");
@@ -237,27 +322,35 @@ public class PrivacyAttackEvaluator {
         System.out.println();
 
         // File paths
-        String originalFile = ORIGINAL_DIR + datasetPrefix + ".arff";
         String syntheticFile = SYNTHETIC_DIR + methodName + "/" + datasetPrefix + "_synthetic.arff";
 
-        // Check if files exist
-        if (!new File(originalFile).exists()) {
-            System.out.println("✗ Original dataset not found: " + originalFile);
+        // Check if the synthetic file exists
+        if (!FastArffLoader.datasetExists(syntheticFile)) {
+            System.out.println("✗ Synthetic dataset not found: " + syntheticFile);
+            System.out.println("  Please generate synthetic data first (Option [2] in main menu)");
             return;
         }
 
-        if (!new File(syntheticFile).exists()) {
-            System.out.println("✗ Synthetic dataset not found: " + syntheticFile);
-            System.out.println("  Please generate synthetic data first (Option [2] in main menu)");
+        // Unchanged inputs and parameters: reproduce the results from the cache
+        String cacheKey = resultCacheKey(datasetPrefix, methodName, original);
+        AttackResultCache.Result cached = (cacheKey != null) ? AttackResultCache.load(RESULT_CACHE_DIR, cacheKey) : null;
+        if (cached != null) {
+            System.out.println("✓ Inputs and attack parameters unchanged, using cached results ("
+                    + cacheKey.substring(0, 12) + ")");
+            System.out.printf("  Re-identification risk: %.4f%n", cached.reIdRisk);
+            System.out.printf("  Linkage risk:           %.4f%n", cached.linkageRisk);
+            System.out.printf("  Overall privacy risk:   %.4f%n", cached.combinedRisk());
+            saveResults(datasetName, datasetPrefix, methodName, cached);
+            System.out.println("✓ Privacy evaluation completed!");
             return;
         }
 
-        // Load datasets
-        System.out.println("Loading datasets...");
-        Instances originalData = loadDataset(originalFile);
+        // Load the synthetic dataset (the original one is shared)
+        SharedOriginalData sharedOriginal = original.data();
+        System.out.println("Loading synthetic dataset...");
+        Instances originalData = sharedOriginal.data();
         Instances syntheticData = loadDataset(syntheticFile);
 
-        originalData.setClassIndex(originalData.numAttributes() - 1);
         syntheticData.setClassIndex(syntheticData.numAttributes() - 1);
 
         System.out.println("  Original:  " + originalData.numInstances() + " instances, " +
@@ -278,7 +371,13 @@ public class PrivacyAttackEvaluator {
         System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
 
         // Create re-identification attack (uses parallel processing, no BallTree needed)
-        ReIdentificationAttack reIdAttack = new ReIdentificationAttack(originalData, syntheticData);
+        ReIdentificationAttack reIdAttack = new ReIdentificationAttack(sharedOriginal, syntheticData, 0);
+        reIdAttack.setSearchMode(ConfigLoader.getProperty("attack.reid.search", ReIdentificationAttack.SEARCH_BRUTE_FORCE));
+        reIdAttack.setMaxRank(ConfigLoader.getIntProperty("attack.reid.maxRank", 0));
+        reIdAttack.setDeduplicate(Boolean.parseBoolean(ConfigLoader.getProperty("attack.reid.dedup", "true")));
+        reIdAttack.setSampling(ConfigLoader.getDoubleProperty("attack.reid.sampleWidth", 0.0),
+                ConfigLoader.getDoubleProperty("attack.reid.sampleConfidence", 0.95),
+                ConfigLoader.getIntProperty("evaluation.random_seed", 180));
         reIdAttack.performAttack();
         reIdAttack.printReport();
 
@@ -287,21 +386,78 @@ public class PrivacyAttackEvaluator {
         System.out.println("  2. Linkage Attack");
         System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
 
-        LinkageAttack linkageAttack = new LinkageAttack(originalData, syntheticData);
+        LinkageAttack linkageAttack = new LinkageAttack(sharedOriginal, syntheticData);
+        linkageAttack.setKnowledgeLevels(parseLevels(ConfigLoader.getProperty("attack.linkage.levels", "0.25,0.5,0.75")));
+        linkageAttack.setMonteCarlo(ConfigLoader.getIntProperty("attack.linkage.trials", 0),
+                ConfigLoader.getIntProperty("evaluation.random_seed", 180));
         linkageAttack.performAttack();
         linkageAttack.printReport();
 
-        // === 3. SAVE RESULTS ===
-        saveResults(datasetName, datasetPrefix, methodName, reIdAttack, linkageAttack);
+        // === 3. DISTANCE TO CLOSEST RECORD ===
+        DistanceToClosestRecordAttack dcrAttack = null;
+        if (Boolean.parseBoolean(ConfigLoader.getProperty("attack.dcr.enabled", "false"))) {
+            System.out.println("\n━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+            System.out.println("  3. Distance to Closest Record");
+            System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+
+            dcrAttack = new DistanceToClosestRecordAttack(sharedOriginal, syntheticData);
+            dcrAttack.setSearchMode(ConfigLoader.getProperty("attack.dcr.search", DistanceToClosestRecordAttack.SEARCH_APPROXIMATE));
+            dcrAttack.setIndex(ConfigLoader.getIntProperty("attack.dcr.trees", 8),
+                    ConfigLoader.getIntProperty("attack.dcr.leafSize", 64),
+                    ConfigLoader.getIntProperty("attack.dcr.candidates", 512),
+                    ConfigLoader.getIntProperty("evaluation.random_seed", 180));
+            dcrAttack.setRecallSample(ConfigLoader.getIntProperty("attack.dcr.recallSample", 1000));
+            dcrAttack.performAttack();
+            dcrAttack.printReport();
+        }
+
+        // === 4. SAVE RESULTS ===
+        AttackResultCache.Result result = collectResults(reIdAttack, linkageAttack, dcrAttack);
+        saveResults(datasetName, datasetPrefix, methodName, result);
+        if (cacheKey != null) {
+            try {
+                AttackResultCache.store(RESULT_CACHE_DIR, cacheKey, result);
+            } catch (IOException e) {
+                System.out.println("  (could not write result cache: " + e.getMessage() + ")");
+            }
+        }
 
         System.out.println("✓ Privacy evaluation completed!");
     }
 
+    /**
+     * Collect what the results file is written from (and what is cached)
+     */
+    private static AttackResultCache.Result collectResults(ReIdentificationAttack reIdAttack, LinkageAttack linkageAttack,
+                                                           DistanceToClosestRecordAttack dcrAttack) {
+        LinkedHashMap<String, Double> reIdStats = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : reIdAttack.getDetailedStatistics().entrySet()) {
+            if (entry.getValue() instanceof Double) {
+                reIdStats.put(entry.getKey(), (Double) entry.getValue());
+            }
+        }
+        LinkedHashMap<String, Double> linkageStats = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : linkageAttack.getDetailedStatistics().entrySet()) {
+            linkageStats.put(entry.getKey(), ((Number) entry.getValue()).doubleValue());
+        }
+        LinkedHashMap<String, Double> dcrStats = new LinkedHashMap<>();
+        if (dcrAttack != null) {
+            for (Map.Entry<String, Object> entry : dcrAttack.getDetailedStatistics().entrySet()) {
+                dcrStats.put(entry.getKey(), (Double) entry.getValue());
+            }
+        }
+
+        // PRS_ReID = 0.7 * ReID@1 + 0.3 * ReID@5
+        double reIdRisk = 0.7 * reIdAttack.getReIDAt1() + 0.3 * reIdAttack.getReIDAt5();
+        double linkageRisk = linkageAttack.calculatePrivacyRiskScore();
+        return new AttackResultCache.Result(reIdAttack.getRanks(), reIdStats, linkageStats, dcrStats, reIdRisk, linkageRisk);
+    }
+
     /**
      * Save privacy attack results to files
      */
     private static void saveResults(String datasetName, String datasetPrefix, String methodName,
-                                    ReIdentificationAttack reIdAttack, LinkageAttack linkageAttack) throws Exception {
+                                    AttackResultCache.Result result) throws Exception {
         // Create output directory
         new File(OUTPUT_DIR).mkdirs();
 
@@ -312,33 +468,27 @@ public class PrivacyAttackEvaluator {
         csvWriter.println("Dataset,Method,Attack_Type,Metric,Value");
 
         // Re-identification results
-        Map<String, Object> reIdStats = reIdAttack.getDetailedStatistics();
-        for (Map.Entry<String, Object> entry : reIdStats.entrySet()) {
-            if (entry.getValue() instanceof Double) {
-                csvWriter.printf("%s,%s,Re-identification,%s,%.6f\n",
-                        datasetName, methodName, entry.getKey().replace(",", ";"), entry.getValue());
-            }
+        for (Map.Entry<String, Double> entry : result.reIdStatistics.entrySet()) {
+            csvWriter.printf("%s,%s,Re-identification,%s,%.6f\n",
+                    datasetName, methodName, entry.getKey().replace(",", ";"), entry.getValue());
         }
 
         // Linkage results
-        Map<String, Object> linkageStats = linkageAttack.getDetailedStatistics();
-        for (Map.Entry<String, Object> entry : linkageStats.entrySet()) {
+        for (Map.Entry<String, Double> entry : result.linkageStatistics.entrySet()) {
             csvWriter.printf("%s,%s,Linkage,%s,%.6f\n",
                     datasetName, methodName, entry.getKey().replace(",", ";"), entry.getValue());
         }
 
-        // Combined risk scores
-        // PRS_ReID = 0.7 * ReID@1 + 0.3 * ReID@5
-        double reIdAt1 = reIdAttack.getReIDAt1();
-        double reIdAt5 = reIdAttack.getReIDAt5();
-        double reIdRisk = 0.7 * reIdAt1 + 0.3 * reIdAt5;
-
-        double linkageRisk = linkageAttack.calculatePrivacyRiskScore();
-        double combinedRisk = (reIdRisk + linkageRisk) / 2.0;
+        // Distance to closest record results
+        for (Map.Entry<String, Double> entry : result.dcrStatistics.entrySet()) {
+            csvWriter.printf("%s,%s,DCR,%s,%.6f\n",
+                    datasetName, methodName, entry.getKey().replace(",", ";"), entry.getValue());
+        }
 
-        csvWriter.printf("%s,%s,Combined,Re-identification_Risk,%.6f\n", datasetName, methodName, reIdRisk);
-        csvWriter.printf("%s,%s,Combined,Linkage_Risk,%.6f\n", datasetName, methodName, linkageRisk);
-        csvWriter.printf("%s,%s,Combined,Overall_Privacy_Risk,%.6f\n", datasetName, methodName, combinedRisk);
+        // Combined risk scores
+        csvWriter.printf("%s,%s,Combined,Re-identification_Risk,%.6f\n", datasetName, methodName, result.reIdRisk);
+        csvWriter.printf("%s,%s,Combined,Linkage_Risk,%.6f\n", datasetName, methodName, result.linkageRisk);
+        csvWriter.printf("%s,%s,Combined,Overall_Privacy_Risk,%.6f\n", datasetName, methodName, result.combinedRisk());
 
         csvWriter.close();
 
@@ -349,8 +499,40 @@ public class PrivacyAttackEvaluator {
      * Load dataset from file
      */
     private static Instances loadDataset(String filePath) throws Exception {
-        DataSource source = new DataSource(filePath);
-        return source.getDataSet();
+        return DatasetCache.load(filePath);
+    }
+
+    /**
+     * Heap use of the original-side indexes the configured attacks build
+     */
+    private static long indexBytes(SharedOriginalData data) {
+        long n = data.numInstances();
+        long d = data.features().length;
+        long bytes = DistanceKernel.Reference.estimateBytes(n, d);
+        if (ReIdentificationAttack.SEARCH_KD_TREE.equals(ConfigLoader.getProperty("attack.reid.search",
+                ReIdentificationAttack.SEARCH_BRUTE_FORCE))) {
+            bytes += KDTreeIndex.estimateBytes(n, d);
+        }
+        if (Boolean.parseBoolean(ConfigLoader.getProperty("attack.dcr.enabled", "false"))
+                && DistanceToClosestRecordAttack.SEARCH_APPROXIMATE.equals(ConfigLoader.getProperty("attack.dcr.search",
+                        DistanceToClosestRecordAttack.SEARCH_APPROXIMATE))) {
+            bytes += RandomProjectionForest.estimateBytes(n, d, ConfigLoader.getIntProperty("attack.dcr.trees", 8),
+                    ConfigLoader.getIntProperty("attack.dcr.leafSize", 64), data.hasMissingValues(),
+                    AttackScheduler.parallelism());
+        }
+        return bytes;
+    }
+
+    /**
+     * Parse a comma-separated list of knowledge levels (e.g. "0.25,0.5,0.75")
+     */
+    private static double[] parseLevels(String levels) {
+        String[] parts = levels.split(",");
+        double[] ratios = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ratios[i] = Double.parseDouble(parts[i].trim());
+        }
+        return ratios;
     }
 
     /**
@@ -380,4 +562,31 @@ public class PrivacyAttackEvaluator {
         scanner.close();
         System.out.println("\nGoodbye!");
     }
+
+    /**
+     * Original dataset of an evaluation, identified by its file version and
+     * loaded (and pre-processed) on first use
+     */
+    private static class OriginalDataset {
+        final String file;
+        final String digest;      // content digest (null when the result cache is off)
+        final String version;     // digest, or size@modified without the cache
+        private SharedOriginalData data;
+
+        OriginalDataset(String file, String digest, String version) {
+            this.file = file;
+            this.digest = digest;
+            this.version = version;
+        }
+
+        synchronized SharedOriginalData data() throws Exception {
+            if (data == null) {
+                System.out.println("Loading original dataset...");
+                Instances originalData = loadDataset(file);
+                originalData.setClassIndex(originalData.numAttributes() - 1);
+                data = new SharedOriginalData(originalData);
+            }
+            return data;
+        }
+    }
 }
@@ -1,13 +1,14 @@
 package privacyguard;
 
-import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
 import weka.core.EuclideanDistance;
 import weka.core.Instances;
-import weka.core.converters.ConverterUtils.DataSource;
-import weka.core.converters.ArffSaver;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Normalize;
 import wekaknnvwc.ProfTools;
@@ -18,6 +19,18 @@ import wekaknnvwc.VWC;
  *
  * Uses Variable-Width Clustering (VWC) to generate privacy-preserving synthetic data.
  * Each feature is clustered independently, and original values are replaced with cluster IDs.
+ * Because features are independent, they can optionally be clustered in parallel
+ * (see setNumThreads); each parallel run uses its own VWCContext.
+ *
+ * Two clustering engines are available (see setEngine):
+ * - "weka":   wekaknnvwc.VWC on a one-column Instances (original behaviour)
+ * - "native": VWC1D on the primitive column, same algorithm in O(n log n);
+ *             features with missing values still go through wekaknnvwc.VWC
+ *
+ * With either engine, constant and binary features are mapped directly to
+ * cluster IDs 0/1 (what VWC returns for them), and features with at most
+ * lowCardinalityThreshold distinct values are clustered natively on their
+ * weighted distinct values instead of row by row.
  *
  * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
  */
@@ -25,6 +38,13 @@ public class PrivacyGuardGenerator {
 
     private int maxClusterSize;
     private double betaPercentage;
+    private int numThreads = 1;       // 1 = sequential (original behaviour)
+    private String engine = ENGINE_WEKA;
+    private Long randomSeed = null;   // Native engine only; null = unseeded like VWC
+    private int lowCardinalityThreshold = 16;
+
+    public static final String ENGINE_WEKA = "weka";
+    public static final String ENGINE_NATIVE = "native";
 
     /**
      * Constructor with default parameters
@@ -42,6 +62,54 @@ public class PrivacyGuardGenerator {
         this.betaPercentage = betaPercentage;
     }
 
+    /**
+     * Set the number of worker threads used to cluster features in parallel.
+     * 1 keeps the original sequential path; 0 uses all available cores.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = (numThreads <= 0) ? Runtime.getRuntime().availableProcessors() : numThreads;
+    }
+
+    /**
+     * Get the number of worker threads used for feature clustering
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Select the clustering engine ("weka" or "native")
+     */
+    public void setEngine(String engine) {
+        if (!ENGINE_WEKA.equals(engine) && !ENGINE_NATIVE.equals(engine)) {
+            throw new IllegalArgumentException("Unknown clustering engine: " + engine);
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * Get the clustering engine
+     */
+    public String getEngine() {
+        return engine;
+    }
+
+    /**
+     * Seed the width sampling of the native engine (feature f uses seed + f),
+     * making its output reproducible regardless of the number of threads
+     */
+    public void setRandomSeed(long seed) {
+        this.randomSeed = seed;
+    }
+
+    /**
+     * Set the number of distinct values up to which a feature is clustered
+     * natively even with the "weka" engine (0 disables this fast path)
+     */
+    public void setLowCardinalityThreshold(int lowCardinalityThreshold) {
+        this.lowCardinalityThreshold = Math.max(0, lowCardinalityThreshold);
+    }
+
     /**
      * Generate synthetic data using PrivacyGuard (VWC)
      *
@@ -62,59 +130,238 @@ public class PrivacyGuardGenerator {
             originalDataWithClass = new Instances(syntheticData);
         }
 
-        // Iterate over each attribute to perform clustering
-        for (int featureIndex = 0; featureIndex < syntheticData.numAttributes(); featureIndex++) {
-            // Skip the class attribute if it exists
-            if (featureIndex == classIndex) continue;
+        // Cluster every feature (except the class)
+        List<Integer> featureIndices = getFeatureIndices(syntheticData);
+        FeatureClusters[] clustersPerFeature = clusterFeatures(syntheticData, featureIndices);
 
-            // Create a new dataset structure with only the selected feature
-            ArrayList<Attribute> attributes = new ArrayList<>();
-            attributes.add((Attribute) syntheticData.attribute(featureIndex).copy());
-
-            // Create a new Instances object with only the selected feature
-            Instances singleFeatureData = new Instances("SingleFeatureData", attributes, syntheticData.numInstances());
-            singleFeatureData.setClassIndex(-1);
+        // Replace original values with cluster IDs (in feature order, on this thread only)
+        for (int f = 0; f < featureIndices.size(); f++) {
+            int featureIndex = featureIndices.get(f);
+            int[] clusterAssignments = clustersPerFeature[f].assignments;
+            for (int i = 0; i < syntheticData.numInstances(); i++) {
+                syntheticData.instance(i).setValue(featureIndex, clusterAssignments[i]);
+            }
+        }
 
-            // Populate with values from the selected feature
+        // Reattach the original class attribute if it exists
+        if (hasClassAttribute && originalDataWithClass != null) {
             for (int i = 0; i < syntheticData.numInstances(); i++) {
-                double[] values = new double[1];
-                values[0] = syntheticData.instance(i).value(featureIndex);
-                singleFeatureData.add(new DenseInstance(1.0, values));
+                syntheticData.instance(i).setClassValue(originalDataWithClass.instance(i).classValue());
             }
+        }
+
+        return syntheticData;
+    }
+
+    /**
+     * Fit a PrivacyGuard model: cluster every feature exactly as
+     * generateSyntheticData does, but keep the cluster centroids (and the
+     * normalisation range) instead of the assignments. The model can then
+     * assign new records without re-clustering.
+     *
+     * @param data Training dataset
+     * @return Model holding the clusters of every feature
+     */
+    public PrivacyGuardModel fit(Instances data) throws Exception {
+        List<Integer> featureIndices = getFeatureIndices(data);
+        FeatureClusters[] clustersPerFeature = clusterFeatures(data, featureIndices);
+
+        PrivacyGuardModel model = new PrivacyGuardModel(data.numAttributes(), data.classIndex());
+        for (int f = 0; f < featureIndices.size(); f++) {
+            int featureIndex = featureIndices.get(f);
+            model.setFeature(featureIndex, data.attribute(featureIndex).name(),
+                    data.attributeToDoubleArray(featureIndex), clustersPerFeature[f].centroids);
+        }
+        return model;
+    }
+
+    /**
+     * Indices of the attributes to cluster (every attribute except the class)
+     */
+    private static List<Integer> getFeatureIndices(Instances data) {
+        List<Integer> featureIndices = new ArrayList<>();
+        for (int featureIndex = 0; featureIndex < data.numAttributes(); featureIndex++) {
+            if (featureIndex != data.classIndex()) {
+                featureIndices.add(featureIndex);
+            }
+        }
+        return featureIndices;
+    }
+
+    /**
+     * Cluster the given features, sequentially or fanned out over the worker pool
+     */
+    private FeatureClusters[] clusterFeatures(Instances data, List<Integer> featureIndices) throws Exception {
+        return (numThreads > 1 && featureIndices.size() > 1)
+                ? clusterFeaturesInParallel(data, featureIndices)
+                : clusterFeaturesSequentially(data, featureIndices);
+    }
+
+    /**
+     * Cluster features one after another on the calling thread
+     */
+    private FeatureClusters[] clusterFeaturesSequentially(Instances data, List<Integer> featureIndices) throws Exception {
+        FeatureClusters[] clustersPerFeature = new FeatureClusters[featureIndices.size()];
+
+        for (int f = 0; f < featureIndices.size(); f++) {
+            clustersPerFeature[f] = clusterFeature(data, featureIndices.get(f), false);
+        }
 
-            // Instantiate VWC with the single-feature dataset
-            VWC myV = new VWC(singleFeatureData);
-            myV.setDistanceFunction(new EuclideanDistance(singleFeatureData));
+        return clustersPerFeature;
+    }
+
+    /**
+     * Cluster features concurrently on a fork-join pool of numThreads workers.
+     * Each wekaknnvwc.VWC run borrows its own VWCContext, so concurrent runs never share
+     * the static state inside wekaknnvwc. Results are indexed by feature, so the
+     * output is identical to the sequential path.
+     */
+    private FeatureClusters[] clusterFeaturesInParallel(Instances data, List<Integer> featureIndices) throws Exception {
+        FeatureClusters[] clustersPerFeature = new FeatureClusters[featureIndices.size()];
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
 
-            // Calculate beta instances
-            int betaInstances;
-            if (maxClusterSize == 5) {
-                betaInstances = 4; // Special case
-            } else {
-                betaInstances = Math.max(1, (int)(betaPercentage / 100.0 * singleFeatureData.numInstances()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int f = 0; f < featureIndices.size(); f++) {
+                final int slot = f;
+                final int featureIndex = featureIndices.get(f);
+                futures.add(pool.submit(() -> {
+                    clustersPerFeature[slot] = clusterFeature(data, featureIndex, true);
+                    return null;
+                }));
             }
 
-            myV.setBeta(betaInstances);
-            myV.setMaxClusterSize(maxClusterSize);
+            // Wait for all features; rethrow the first failure as-is
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
 
-            // Perform the clustering
-            myV.buildClusterer(singleFeatureData);
+        return clustersPerFeature;
+    }
 
-            // Replace original values with cluster IDs
-            int[] clusterAssignments = myV.getAssignments();
-            for (int i = 0; i < syntheticData.numInstances(); i++) {
-                syntheticData.instance(i).setValue(featureIndex, clusterAssignments[i]);
+    /**
+     * Cluster a single feature with the selected engine
+     *
+     * @param isolated true when called from a worker thread: wekaknnvwc.VWC then
+     *                 runs inside a pooled VWCContext instead of the shared classes
+     */
+    private FeatureClusters clusterFeature(Instances data, int featureIndex, boolean isolated) throws Exception {
+        double[] column = data.attributeToDoubleArray(featureIndex);
+        if (!containsMissing(column)) {
+            // Cardinality fast paths: no clustering needed for constant/binary
+            // features, and few distinct values are clustered as weighted values
+            int distinct = VWC1D.countDistinct(column, Math.max(2, lowCardinalityThreshold));
+            if (distinct <= 2) {
+                return new FeatureClusters(VWC1D.assignBinary(column), VWC1D.binaryCentroids(column));
+            }
+            if (ENGINE_NATIVE.equals(engine) || distinct <= lowCardinalityThreshold) {
+                VWC1D nativeVWC = new VWC1D(maxClusterSize);
+                if (randomSeed != null) {
+                    nativeVWC.setSeed(randomSeed + featureIndex);
+                }
+                int[] assignments = nativeVWC.cluster(column);
+                return new FeatureClusters(assignments, nativeVWC.getCentroids());
             }
         }
 
-        // Reattach the original class attribute if it exists
-        if (hasClassAttribute && originalDataWithClass != null) {
-            for (int i = 0; i < syntheticData.numInstances(); i++) {
-                syntheticData.instance(i).setClassValue(originalDataWithClass.instance(i).classValue());
+        Instances singleFeatureData = createSingleFeatureDataset(data, featureIndex);
+        int beta = calculateBetaInstances(singleFeatureData.numInstances());
+
+        if (isolated) {
+            VWCContext context = VWCContext.acquire();
+            try {
+                return context.cluster(singleFeatureData, beta, maxClusterSize);
+            } finally {
+                VWCContext.release(context);
             }
         }
 
-        return syntheticData;
+        // Instantiate VWC with the single-feature dataset
+        VWC myV = new VWC(singleFeatureData);
+        myV.setDistanceFunction(new EuclideanDistance(singleFeatureData));
+        myV.setBeta(beta);
+        myV.setMaxClusterSize(maxClusterSize);
+
+        // Perform the clustering
+        myV.buildClusterer(singleFeatureData);
+        return new FeatureClusters(myV.getAssignments(), centroidValues(myV.getClusterCentroids()));
+    }
+
+    /**
+     * Centroid values of a one-column VWC centroid dataset, indexed by cluster ID
+     */
+    static double[] centroidValues(Instances clusterCentroids) {
+        double[] centroids = new double[clusterCentroids.numInstances()];
+        for (int id = 0; id < centroids.length; id++) {
+            centroids[id] = clusterCentroids.instance(id).value(0);
+        }
+        return centroids;
+    }
+
+    private static boolean containsMissing(double[] column) {
+        for (double value : column) {
+            if (Double.isNaN(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create a one-column dataset holding the values of the selected feature
+     */
+    private static Instances createSingleFeatureDataset(Instances data, int featureIndex) {
+        // Create a new dataset structure with only the selected feature
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add((Attribute) data.attribute(featureIndex).copy());
+
+        // Create a new Instances object with only the selected feature
+        Instances singleFeatureData = new Instances("SingleFeatureData", attributes, data.numInstances());
+        singleFeatureData.setClassIndex(-1);
+
+        // Populate with values from the selected feature
+        for (int i = 0; i < data.numInstances(); i++) {
+            double[] values = new double[1];
+            values[0] = data.instance(i).value(featureIndex);
+            singleFeatureData.add(new DenseInstance(1.0, values));
+        }
+
+        return singleFeatureData;
+    }
+
+    /**
+     * Calculate beta instances for a feature with the given number of values
+     */
+    private int calculateBetaInstances(int numInstances) {
+        if (maxClusterSize == 5) {
+            return 4; // Special case
+        }
+        return Math.max(1, (int)(betaPercentage / 100.0 * numInstances));
+    }
+
+    /**
+     * Result of clustering one feature: cluster ID per instance and the
+     * centroid value of every cluster ID
+     */
+    static class FeatureClusters {
+        final int[] assignments;
+        final double[] centroids;
+
+        FeatureClusters(int[] assignments, double[] centroids) {
+            this.assignments = assignments;
+            this.centroids = centroids;
+        }
     }
 
     /**
@@ -130,17 +377,13 @@ public class PrivacyGuardGenerator {
      * Load dataset from file (auto-detects format)
      */
     public static Instances loadDataset(String filePath) throws Exception {
-        DataSource source = new DataSource(filePath);
-        return source.getDataSet();
+        return FastArffLoader.loadDataset(filePath);
     }
 
     /**
      * Save dataset to ARFF file
      */
     public static void saveDataset(Instances data, String filePath) throws Exception {
-        ArffSaver saver = new ArffSaver();
-        saver.setInstances(data);
-        saver.setFile(new File(filePath));
-        saver.writeBatch();
+        FastArffWriter.write(data, filePath);
     }
 }
@@ -0,0 +1,365 @@
+package privacyguard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import weka.core.Instances;
+
+/**
+ * PrivacyGuard Model (fit/transform)
+ *
+ * Produced by PrivacyGuardGenerator.fit(). For every clustered feature it keeps
+ * the VWC cluster centroids and the normalisation range of the training data.
+ * VWC ends by assigning each value to its nearest centroid, so the cluster
+ * boundaries lie halfway between consecutive centroids, and a new value is
+ * assigned by a binary search over the sorted centroids. Assignment works on
+ * primitive arrays only; transform() runs it in parallel over row batches.
+ *
+ * Model file format (big-endian, version 1):
+ *   int magic "PGMD", int version, int numAttributes, int classIndex, int numFeatures
+ *   per feature: int attributeIndex, UTF name, double rangeMin, double rangeWidth,
+ *                int numClusters, double[numClusters] centroids (by cluster ID)
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class PrivacyGuardModel {
+
+    private static final int MAGIC = 0x50474D44;   // "PGMD"
+    private static final int VERSION = 1;
+    private static final int BATCH_SIZE = 1 << 16; // rows per transform task
+
+    private final int numAttributes;
+    private final int classIndex;
+    private final FeatureModel[] features;         // by attribute index; null = not clustered
+
+    /**
+     * Create an empty model for datasets with the given layout
+     */
+    PrivacyGuardModel(int numAttributes, int classIndex) {
+        this.numAttributes = numAttributes;
+        this.classIndex = classIndex;
+        this.features = new FeatureModel[numAttributes];
+    }
+
+    /**
+     * Add the clusters of one feature
+     *
+     * @param trainingValues Feature values the clusters were fitted on (gives the normalisation range)
+     * @param centroids Centroid value of every cluster ID
+     */
+    void setFeature(int attributeIndex, String name, double[] trainingValues, double[] centroids) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double v : trainingValues) {
+            if (Double.isNaN(v)) continue;
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+        if (min > max) {
+            min = 0;
+            max = 0;
+        }
+        features[attributeIndex] = new FeatureModel(name, min, max - min, centroids);
+    }
+
+    public int numAttributes() {
+        return numAttributes;
+    }
+
+    public int classIndex() {
+        return classIndex;
+    }
+
+    /**
+     * Whether the attribute is clustered by this model
+     */
+    public boolean hasFeature(int attributeIndex) {
+        return features[attributeIndex] != null;
+    }
+
+    /**
+     * Number of clusters of a feature
+     */
+    public int numberOfClusters(int attributeIndex) {
+        return feature(attributeIndex).centroids.length;
+    }
+
+    /**
+     * Cluster ID of a single value (must not be missing), or -1 when the
+     * feature has no clusters (it had no values when the model was fitted)
+     */
+    public int assign(int attributeIndex, double value) {
+        return feature(attributeIndex).assign(value);
+    }
+
+    // ==================== TRANSFORM ====================
+
+    /**
+     * Replace the values of every clustered feature by cluster IDs, in place.
+     * Missing values stay missing; columns of other attributes are left untouched.
+     *
+     * @param columns One array per attribute (columns[attributeIndex][row]); may hold nulls
+     * @param numThreads Worker threads (1 = calling thread only, 0 = all cores)
+     */
+    public void transformColumns(double[][] columns, int numThreads) throws Exception {
+        if (columns.length != numAttributes) {
+            throw new IllegalArgumentException("Expected " + numAttributes + " columns, got " + columns.length);
+        }
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        if (numThreads == 1) {
+            for (int a = 0; a < numAttributes; a++) {
+                if (features[a] != null && columns[a] != null) {
+                    features[a].assignRange(columns[a], 0, columns[a].length);
+                }
+            }
+            return;
+        }
+
+        // One task per (feature, batch of rows)
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int a = 0; a < numAttributes; a++) {
+                if (features[a] == null || columns[a] == null) continue;
+                final FeatureModel feature = features[a];
+                final double[] column = columns[a];
+                for (int start = 0; start < column.length; start += BATCH_SIZE) {
+                    final int from = start;
+                    final int to = Math.min(column.length, start + BATCH_SIZE);
+                    futures.add(pool.submit(() -> feature.assignRange(column, from, to)));
+                }
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Transform a dataset with the same attribute layout as the training data.
+     * Returns a copy in which every clustered feature holds cluster IDs, as
+     * generateSyntheticData() would produce; the class attribute is kept.
+     */
+    public Instances transform(Instances data, int numThreads) throws Exception {
+        if (data.numAttributes() != numAttributes) {
+            throw new IllegalArgumentException("Dataset has " + data.numAttributes()
+                    + " attributes, model expects " + numAttributes);
+        }
+
+        double[][] columns = new double[numAttributes][];
+        for (int a = 0; a < numAttributes; a++) {
+            if (features[a] != null) {
+                columns[a] = data.attributeToDoubleArray(a);
+            }
+        }
+
+        transformColumns(columns, numThreads);
+
+        Instances transformed = new Instances(data);
+        for (int a = 0; a < numAttributes; a++) {
+            if (columns[a] == null) continue;
+            double[] column = columns[a];
+            for (int i = 0; i < transformed.numInstances(); i++) {
+                transformed.instance(i).setValue(a, column[i]);
+            }
+        }
+        return transformed;
+    }
+
+    // ==================== PERSISTENCE ====================
+
+    /**
+     * Save the model as a versioned binary file
+     */
+    public void save(String filePath) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filePath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numAttributes);
+            out.writeInt(classIndex);
+
+            int numFeatures = 0;
+            for (FeatureModel feature : features) {
+                if (feature != null) numFeatures++;
+            }
+            out.writeInt(numFeatures);
+
+            for (int a = 0; a < numAttributes; a++) {
+                FeatureModel feature = features[a];
+                if (feature == null) continue;
+                out.writeInt(a);
+                out.writeUTF(feature.name);
+                out.writeDouble(feature.rangeMin);
+                out.writeDouble(feature.rangeWidth);
+                out.writeInt(feature.centroids.length);
+                for (double centroid : feature.centroids) {
+                    out.writeDouble(centroid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load a model saved with save()
+     */
+    public static PrivacyGuardModel load(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a PrivacyGuard model: " + filePath);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported PrivacyGuard model version " + version + ": " + filePath);
+            }
+
+            PrivacyGuardModel model = new PrivacyGuardModel(in.readInt(), in.readInt());
+            int numFeatures = in.readInt();
+            for (int f = 0; f < numFeatures; f++) {
+                int attributeIndex = in.readInt();
+                String name = in.readUTF();
+                double rangeMin = in.readDouble();
+                double rangeWidth = in.readDouble();
+                double[] centroids = new double[in.readInt()];
+                for (int id = 0; id < centroids.length; id++) {
+                    centroids[id] = in.readDouble();
+                }
+                model.features[attributeIndex] = new FeatureModel(name, rangeMin, rangeWidth, centroids);
+            }
+            return model;
+        }
+    }
+
+    private FeatureModel feature(int attributeIndex) {
+        FeatureModel feature = features[attributeIndex];
+        if (feature == null) {
+            throw new IllegalArgumentException("Attribute " + attributeIndex + " is not clustered by this model");
+        }
+        return feature;
+    }
+
+    /**
+     * Clusters of one feature, with the centroids sorted for binary search
+     */
+    private static final class FeatureModel {
+        final String name;
+        final double rangeMin;
+        final double rangeWidth;
+        final double[] centroids;      // by cluster ID, original units
+        final double[] sortedNorm;     // normalised centroids, ascending
+        final int[] sortedIds;         // cluster ID of each sorted centroid
+
+        FeatureModel(String name, double rangeMin, double rangeWidth, double[] centroids) {
+            this.name = name;
+            this.rangeMin = rangeMin;
+            this.rangeWidth = rangeWidth;
+            this.centroids = centroids;
+
+            double[] norm = new double[centroids.length];
+            for (int id = 0; id < centroids.length; id++) {
+                norm[id] = normalise(centroids[id]);
+            }
+            // Sort the IDs by centroid; the sort is stable, so equal centroids keep ID order
+            Integer[] order = new Integer[centroids.length];
+            for (int id = 0; id < centroids.length; id++) {
+                order[id] = id;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(norm[a], norm[b]));
+            this.sortedNorm = new double[centroids.length];
+            this.sortedIds = new int[centroids.length];
+            for (int pos = 0; pos < order.length; pos++) {
+                sortedIds[pos] = order[pos];
+                sortedNorm[pos] = norm[order[pos]];
+            }
+        }
+
+        /**
+         * Nearest centroid in normalised units, ties to the lower centroid
+         * (the same rule as VWC1D) and among equal centroids to the lowest ID.
+         * Returns -1 when there are no centroids.
+         */
+        int assign(double value) {
+            if (sortedNorm.length == 0) {
+                return -1;
+            }
+            double x = normalise(value);
+            int pos = Arrays.binarySearch(sortedNorm, x);
+            if (pos >= 0) {
+                return firstIdAt(pos);
+            }
+            int upper = -pos - 1;
+            if (upper == 0) {
+                return sortedIds[0];
+            }
+            if (upper == sortedNorm.length) {
+                return firstIdAt(upper - 1);
+            }
+            double dLeft = distance(sortedNorm[upper - 1], x);
+            double dRight = distance(sortedNorm[upper], x);
+            return (dRight < dLeft) ? sortedIds[upper] : firstIdAt(upper - 1);
+        }
+
+        /**
+         * Lowest cluster ID among the centroids equal to the one at the sorted position
+         */
+        private int firstIdAt(int pos) {
+            while (pos > 0 && sortedNorm[pos - 1] == sortedNorm[pos]) {
+                pos--;
+            }
+            return sortedIds[pos];
+        }
+
+        /**
+         * Replace column[from..to) by cluster IDs (missing values are kept;
+         * without centroids every value becomes missing)
+         */
+        void assignRange(double[] column, int from, int to) {
+            if (sortedNorm.length == 0) {
+                Arrays.fill(column, from, to, Double.NaN);
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                if (!Double.isNaN(column[i])) {
+                    column[i] = assign(column[i]);
+                }
+            }
+        }
+
+        private double normalise(double value) {
+            if (rangeWidth == 0) {
+                return 0;
+            }
+            return (value - rangeMin) / rangeWidth;
+        }
+
+        private static double distance(double a, double b) {
+            double diff = a - b;
+            return Math.sqrt(diff * diff);
+        }
+    }
+}
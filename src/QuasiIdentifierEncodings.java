@@ -0,0 +1,301 @@
+package privacyguard;
+
+import java.util.Arrays;
+
+/**
+ * Integer Encodings of Candidate Quasi-Identifiers for Repeated Linkage Trials
+ *
+ * Encodes every attribute once so that any subset of attributes can be used
+ * as the quasi-identifiers of a linkage trial without touching the raw values
+ * again:
+ *   - every synthetic value gets the code of its rank among the distinct
+ *     values of the attribute (-1 = missing)
+ *   - every original value gets the range of codes [low, high) whose values
+ *     match it within the tolerance of LinkageAttack (all codes when missing)
+ * The values matching a record within the tolerance are contiguous in sorted
+ * order, so the tolerance test |q - s| <= 0.0001 becomes two integer
+ * comparisons, and the synthetic records matching one attribute are a slice
+ * of the records ordered by code.
+ *
+ * A trial enumerates the records in the slice of its most selective
+ * attribute and checks the other attributes with the codes; the matches are
+ * identical to comparing the raw values (a missing value matches anything).
+ * Equal codes mean identical value bits, so the synthetic codes also define
+ * the equivalence classes (see EquivalenceClasses.refine(int[])); likewise,
+ * original records with equal range codes match the same synthetic records.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class QuasiIdentifierEncodings {
+
+    private final int numAttributes;
+    private final int numOriginal;
+    private final int numSynthetic;
+
+    private final int[][] syntheticCodes;   // [a][row], -1 = missing
+    private final int[][] rowsByCode;       // [a]: synthetic rows with a value, by increasing code
+    private final int[][] codeStart;        // [a][code]: first position in rowsByCode (numCodes + 1 entries)
+    private final int[][] missingRows;      // [a]: synthetic rows with a missing value
+    private final int[][] low;              // [a][record]: first matching code
+    private final int[][] high;             // [a][record]: last matching code + 1
+    private final int[][] rangeCodes;       // [a][record]: code of the range [low, high)
+
+    /**
+     * @param originalColumns Original values of every attribute (originalColumns[a][record])
+     * @param numOriginal Number of original records
+     * @param syntheticColumns Synthetic values of the same attributes
+     * @param numSynthetic Number of synthetic records
+     */
+    public QuasiIdentifierEncodings(double[][] originalColumns, int numOriginal,
+                                    double[][] syntheticColumns, int numSynthetic) {
+        this.numAttributes = syntheticColumns.length;
+        this.numOriginal = numOriginal;
+        this.numSynthetic = numSynthetic;
+        this.syntheticCodes = new int[numAttributes][];
+        this.rowsByCode = new int[numAttributes][];
+        this.codeStart = new int[numAttributes][];
+        this.missingRows = new int[numAttributes][];
+        this.low = new int[numAttributes][];
+        this.high = new int[numAttributes][];
+        this.rangeCodes = new int[numAttributes][];
+
+        for (int a = 0; a < numAttributes; a++) {
+            encode(a, originalColumns[a], syntheticColumns[a]);
+        }
+    }
+
+    public int numAttributes() {
+        return numAttributes;
+    }
+
+    /**
+     * Codes of the synthetic values of one attribute (-1 = missing)
+     */
+    public int[] syntheticCodes(int attribute) {
+        return syntheticCodes[attribute];
+    }
+
+    /**
+     * Codes of the matching ranges of the original values of one attribute
+     * (original records with equal codes match the same synthetic records)
+     */
+    public int[] rangeCodes(int attribute) {
+        return rangeCodes[attribute];
+    }
+
+    /**
+     * Find the synthetic records matching an original record on the
+     * attributes[0..count)
+     *
+     * @param matchOut Receives the matching rows (room for all synthetic records)
+     * @return Number of matching synthetic records
+     */
+    public int findMatches(int[] attributes, int count, int record, int[] matchOut) {
+        if (count == 0) {
+            for (int row = 0; row < numSynthetic; row++) {
+                matchOut[row] = row;
+            }
+            return numSynthetic;
+        }
+
+        // Enumerate the smallest candidate slice
+        int best = attributes[0];
+        for (int i = 1; i < count; i++) {
+            if (candidates(attributes[i], record) < candidates(best, record)) {
+                best = attributes[i];
+            }
+        }
+
+        int numMatches = 0;
+        int[] rows = rowsByCode[best];
+        int end = codeStart[best][high[best][record]];
+        for (int p = codeStart[best][low[best][record]]; p < end; p++) {
+            int row = rows[p];
+            if (matchesOthers(attributes, count, best, record, row)) {
+                matchOut[numMatches++] = row;
+            }
+        }
+        for (int row : missingRows[best]) {
+            if (matchesOthers(attributes, count, best, record, row)) {
+                matchOut[numMatches++] = row;
+            }
+        }
+        return numMatches;
+    }
+
+    /**
+     * Number of candidates findMatches would check (the size of the smallest
+     * slice among attributes[0..count))
+     */
+    public int candidateCount(int[] attributes, int count, int record) {
+        int smallest = numSynthetic;
+        for (int i = 0; i < count; i++) {
+            smallest = Math.min(smallest, candidates(attributes[i], record));
+        }
+        return smallest;
+    }
+
+    /**
+     * Copy the matches that also agree on attributes[from..to) from 'matches'
+     * to 'retainedOut' (which may be the same array)
+     *
+     * @return Number of remaining matches
+     */
+    public int retainMatches(int[] attributes, int from, int to, int record,
+                             int[] matches, int numMatches, int[] retainedOut) {
+        int kept = 0;
+        for (int m = 0; m < numMatches; m++) {
+            int row = matches[m];
+            boolean match = true;
+            for (int i = from; i < to && match; i++) {
+                match = matches(attributes[i], record, row);
+            }
+            if (match) {
+                retainedOut[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    // ==================== HELPERS ====================
+
+    private boolean matches(int attribute, int record, int row) {
+        int code = syntheticCodes[attribute][row];
+        return code < 0 || (code >= low[attribute][record] && code < high[attribute][record]);
+    }
+
+    private boolean matchesOthers(int[] attributes, int count, int skip, int record, int row) {
+        for (int i = 0; i < count; i++) {
+            int attribute = attributes[i];
+            if (attribute != skip && !matches(attribute, record, row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int candidates(int attribute, int record) {
+        return codeStart[attribute][high[attribute][record]] - codeStart[attribute][low[attribute][record]]
+                + missingRows[attribute].length;
+    }
+
+    private void encode(int a, double[] original, double[] synthetic) {
+        // Distinct synthetic values (by bits), in Arrays.sort order
+        double[] distinct = new double[numSynthetic];
+        int numPresent = 0;
+        for (int row = 0; row < numSynthetic; row++) {
+            if (!Double.isNaN(synthetic[row])) {
+                distinct[numPresent++] = synthetic[row];
+            }
+        }
+        Arrays.sort(distinct, 0, numPresent);
+        int numCodes = 0;
+        for (int i = 0; i < numPresent; i++) {
+            if (numCodes == 0 || Double.doubleToLongBits(distinct[i]) != Double.doubleToLongBits(distinct[numCodes - 1])) {
+                distinct[numCodes++] = distinct[i];
+            }
+        }
+
+        // Synthetic codes and rows grouped by code (CSR)
+        int[] codes = new int[numSynthetic];
+        int[] start = new int[numCodes + 1];
+        int numMissing = numSynthetic - numPresent;
+        for (int row = 0; row < numSynthetic; row++) {
+            double value = synthetic[row];
+            codes[row] = Double.isNaN(value) ? -1 : Arrays.binarySearch(distinct, 0, numCodes, value);
+            if (codes[row] >= 0) start[codes[row] + 1]++;
+        }
+        for (int c = 0; c < numCodes; c++) {
+            start[c + 1] += start[c];
+        }
+        int[] rows = new int[numPresent];
+        int[] filled = new int[numCodes];
+        int[] missing = new int[numMissing];
+        int m = 0;
+        for (int row = 0; row < numSynthetic; row++) {
+            int code = codes[row];
+            if (code >= 0) {
+                rows[start[code] + filled[code]++] = row;
+            } else {
+                missing[m++] = row;
+            }
+        }
+
+        // Matching code range of every original value
+        int[] lo = new int[numOriginal];
+        int[] hi = new int[numOriginal];
+        for (int record = 0; record < numOriginal; record++) {
+            double q = original[record];
+            if (Double.isNaN(q)) {
+                lo[record] = 0;
+                hi[record] = numCodes;
+            } else {
+                lo[record] = firstNotBelow(distinct, numCodes, q);
+                hi[record] = Math.max(lo[record], firstAbove(distinct, numCodes, q));
+            }
+        }
+
+        // Range codes: dense ranks of the (low, high) pairs
+        long[] ranges = new long[numOriginal];
+        for (int record = 0; record < numOriginal; record++) {
+            ranges[record] = (long) lo[record] * (numCodes + 1) + hi[record];
+        }
+        long[] distinctRanges = ranges.clone();
+        Arrays.sort(distinctRanges);
+        int numRanges = 0;
+        for (int i = 0; i < numOriginal; i++) {
+            if (numRanges == 0 || distinctRanges[i] != distinctRanges[numRanges - 1]) {
+                distinctRanges[numRanges++] = distinctRanges[i];
+            }
+        }
+        int[] range = new int[numOriginal];
+        for (int record = 0; record < numOriginal; record++) {
+            range[record] = Arrays.binarySearch(distinctRanges, 0, numRanges, ranges[record]);
+        }
+
+        syntheticCodes[a] = codes;
+        rangeCodes[a] = range;
+        rowsByCode[a] = rows;
+        codeStart[a] = start;
+        missingRows[a] = missing;
+        low[a] = lo;
+        high[a] = hi;
+    }
+
+    /**
+     * First index whose value is not too far below q (the tolerance test of
+     * LinkageAttack fails on a prefix of the smaller values)
+     */
+    private static int firstNotBelow(double[] values, int size, double q) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double v = values[mid];
+            if (v < q && Math.abs(q - v) > QuasiIdentifierIndex.TOLERANCE) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * First index whose value is too far above q
+     */
+    private static int firstAbove(double[] values, int size, double q) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double v = values[mid];
+            if (v > q && Math.abs(q - v) > QuasiIdentifierIndex.TOLERANCE) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+}
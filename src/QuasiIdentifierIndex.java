@@ -0,0 +1,256 @@
+package privacyguard;
+
+import java.util.Arrays;
+
+/**
+ * Hash Index of Synthetic Records on Quasi-Identifiers
+ *
+ * Finds the synthetic records that match a record on every quasi-identifier
+ * within LinkageAttack's tolerance (|a - b| <= 0.0001), without scanning all
+ * synthetic records.
+ *
+ * Up to two quasi-identifiers (the most selective ones, judged on a sample) are
+ * quantised into buckets twice as wide as the tolerance, so two matching values
+ * always fall into the same or neighbouring buckets. Synthetic records are
+ * grouped by their bucket pair in an open-addressing table with primitive keys;
+ * a query probes the 3 x 3 neighbouring bucket pairs and checks every candidate
+ * with the exact tolerance test on all quasi-identifiers, so the matches are
+ * identical to a linear scan.
+ *
+ * Values that cannot be bucketed safely (missing values, which match anything,
+ * and magnitudes where the quotient loses precision) are handled exactly: such
+ * synthetic records are checked for every query, and such queries fall back to
+ * a linear scan.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class QuasiIdentifierIndex {
+
+    public static final double TOLERANCE = 0.0001;
+
+    private static final double BUCKET_WIDTH = 2 * TOLERANCE;
+    private static final double MAX_BUCKETED_MAGNITUDE = 1e11;   // quotient error stays far below 1
+    private static final int MAX_INDEXED = 2;
+    private static final int SELECTIVITY_SAMPLE = 4096;
+
+    private final double[][] columns;     // synthetic values per quasi-identifier
+    private final int numRows;
+    private final int[] indexed;          // positions (in columns) of the bucketed quasi-identifiers
+
+    // Open-addressing table: bucket pair -> group
+    private final int mask;
+    private final long[] slotFirst;
+    private final long[] slotSecond;
+    private final int[] slotGroup;        // -1 = empty
+
+    // Group members, CSR layout, in increasing row order
+    private final int[] groupStart;
+    private final int[] members;
+
+    // Synthetic rows that are checked for every query
+    private final int[] alwaysCheck;
+
+    /**
+     * @param columns Synthetic values of each quasi-identifier (columns[q][row])
+     * @param numRows Number of synthetic records
+     */
+    public QuasiIdentifierIndex(double[][] columns, int numRows) {
+        this.columns = columns;
+        this.numRows = numRows;
+        this.indexed = selectIndexedColumns();
+
+        // Bucket every row; rows with an unbucketable indexed value are always checked
+        long[] first = new long[numRows];
+        long[] second = new long[numRows];
+        boolean[] bucketed = new boolean[numRows];
+        int numAlwaysCheck = 0;
+        for (int row = 0; row < numRows; row++) {
+            bucketed[row] = bucketRow(row, first, second);
+            if (!bucketed[row]) numAlwaysCheck++;
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(2, numRows) * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.slotFirst = new long[capacity];
+        this.slotSecond = new long[capacity];
+        this.slotGroup = new int[capacity];
+        Arrays.fill(slotGroup, -1);
+
+        int[] groupOf = new int[numRows];
+        int numGroups = 0;
+        for (int row = 0; row < numRows; row++) {
+            if (!bucketed[row]) continue;
+            int slot = findSlot(first[row], second[row]);
+            if (slotGroup[slot] < 0) {
+                slotFirst[slot] = first[row];
+                slotSecond[slot] = second[row];
+                slotGroup[slot] = numGroups++;
+            }
+            groupOf[row] = slotGroup[slot];
+        }
+
+        this.groupStart = new int[numGroups + 1];
+        for (int row = 0; row < numRows; row++) {
+            if (bucketed[row]) groupStart[groupOf[row] + 1]++;
+        }
+        for (int g = 0; g < numGroups; g++) {
+            groupStart[g + 1] += groupStart[g];
+        }
+        this.members = new int[numRows - numAlwaysCheck];
+        int[] filled = new int[numGroups];
+        this.alwaysCheck = new int[numAlwaysCheck];
+        int always = 0;
+        for (int row = 0; row < numRows; row++) {
+            if (bucketed[row]) {
+                int g = groupOf[row];
+                members[groupStart[g] + filled[g]++] = row;
+            } else {
+                alwaysCheck[always++] = row;
+            }
+        }
+    }
+
+    /**
+     * Find the synthetic records matching 'query' on every quasi-identifier
+     *
+     * @param query Value of each quasi-identifier (same order as the columns; extra
+     *              trailing values are ignored)
+     * @param matchOut Receives the matching rows (room for all synthetic records)
+     * @return Number of matching synthetic records
+     */
+    public int findMatches(double[] query, int[] matchOut) {
+        int count = 0;
+
+        boolean bucketable = indexed.length > 0;
+        long first = 0;
+        long second = 0;
+        for (int i = 0; i < indexed.length && bucketable; i++) {
+            double value = query[indexed[i]];
+            bucketable = isBucketable(value);
+            if (bucketable && i == 0) first = bucket(value);
+            if (bucketable && i == 1) second = bucket(value);
+        }
+
+        if (!bucketable) {
+            for (int row = 0; row < numRows; row++) {
+                if (matches(query, row)) {
+                    matchOut[count++] = row;
+                }
+            }
+            return count;
+        }
+
+        int firstRange = 1;
+        int secondRange = (indexed.length > 1) ? 1 : 0;
+        for (int d1 = -firstRange; d1 <= firstRange; d1++) {
+            for (int d2 = -secondRange; d2 <= secondRange; d2++) {
+                int slot = findSlot(first + d1, second + d2);
+                int group = slotGroup[slot];
+                if (group < 0) continue;
+                for (int p = groupStart[group]; p < groupStart[group + 1]; p++) {
+                    int row = members[p];
+                    if (matches(query, row)) {
+                        matchOut[count++] = row;
+                    }
+                }
+            }
+        }
+        for (int row : alwaysCheck) {
+            if (matches(query, row)) {
+                matchOut[count++] = row;
+            }
+        }
+        return count;
+    }
+
+    // ==================== HELPERS ====================
+
+    /**
+     * The tolerance test of LinkageAttack (a missing value matches anything)
+     */
+    private boolean matches(double[] query, int row) {
+        for (int q = 0; q < columns.length; q++) {
+            if (Math.abs(query[q] - columns[q][row]) > TOLERANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean bucketRow(int row, long[] first, long[] second) {
+        for (int i = 0; i < indexed.length; i++) {
+            double value = columns[indexed[i]][row];
+            if (!isBucketable(value)) {
+                return false;
+            }
+            if (i == 0) {
+                first[row] = bucket(value);
+            } else {
+                second[row] = bucket(value);
+            }
+        }
+        return indexed.length > 0;
+    }
+
+    private static boolean isBucketable(double value) {
+        return Math.abs(value) < MAX_BUCKETED_MAGNITUDE;   // false for NaN and infinities
+    }
+
+    private static long bucket(double value) {
+        return (long) Math.floor(value / BUCKET_WIDTH);
+    }
+
+    private int findSlot(long first, long second) {
+        long hash = first * 0x9E3779B97F4A7C15L + second;
+        hash ^= (hash >>> 32);
+        hash *= 0xD6E8FEB86659FD93L;
+        hash ^= (hash >>> 32);
+        int slot = (int) hash & mask;
+        while (slotGroup[slot] >= 0 && (slotFirst[slot] != first || slotSecond[slot] != second)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * The quasi-identifiers with the most distinct buckets on a sample of rows
+     * (none when no quasi-identifier has a bucketable value)
+     */
+    private int[] selectIndexedColumns() {
+        int numColumns = columns.length;
+        int sample = Math.min(numRows, SELECTIVITY_SAMPLE);
+        int step = Math.max(1, numRows / Math.max(1, sample));
+        int[] distinct = new int[numColumns];
+        long[] values = new long[sample];
+        for (int q = 0; q < numColumns; q++) {
+            int size = 0;
+            for (int row = 0; row < numRows && size < sample; row += step) {
+                double value = columns[q][row];
+                values[size++] = isBucketable(value) ? bucket(value) : Long.MIN_VALUE;
+            }
+            Arrays.sort(values, 0, size);
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (values[i] != Long.MIN_VALUE && (i == 0 || values[i] != values[i - 1])) count++;
+            }
+            distinct[q] = count;
+        }
+
+        int candidates = 0;
+        for (int q = 0; q < numColumns; q++) {
+            if (distinct[q] > 0) candidates++;
+        }
+        int numIndexed = Math.min(MAX_INDEXED, candidates);
+        int[] chosen = new int[numIndexed];
+        boolean[] used = new boolean[numColumns];
+        for (int i = 0; i < numIndexed; i++) {
+            int best = -1;
+            for (int q = 0; q < numColumns; q++) {
+                if (!used[q] && (best < 0 || distinct[q] > distinct[best])) best = q;
+            }
+            used[best] = true;
+            chosen[i] = best;
+        }
+        return chosen;
+    }
+}
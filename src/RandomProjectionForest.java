@@ -0,0 +1,384 @@
+package privacyguard;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Random-Projection Forest for Approximate Nearest-Neighbour Candidates
+ *
+ * Indexes n points of d dimensions (row-major) in several random-projection
+ * trees. Every node splits its points at the median of their projections on
+ * the direction between two random points of the node, so each tree partitions
+ * the space into leaves of at most leafSize points, and different trees cut it
+ * along different hyperplanes.
+ *
+ * A query descends all trees at once with a priority queue ordered by the
+ * query's distance to the hyperplanes on its path (as in Annoy), so the leaves
+ * closest to the query are visited first, and collects the points of the
+ * leaves it reaches until it has 'searchK' distinct candidates. The forest only
+ * proposes candidates: callers compute exact distances to them, so a reported
+ * nearest neighbour is always a real point at its exact distance, but it may
+ * not be the true nearest neighbour (the recall depends on searchK, numTrees
+ * and leafSize).
+ *
+ * Missing values (NaN) are replaced by the attribute mean for projections only.
+ * Queries are thread-safe; each thread keeps its own search workspace.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class RandomProjectionForest {
+
+    private static final int DIRECTION_ATTEMPTS = 8;
+
+    private final int numPoints;
+    private final int dims;
+    private final int numTrees;
+    private final int leafSize;
+    private final double[] points;      // row-major, missing values imputed
+    private final double[] means;
+
+    private final int[] items;          // tree t: points ordered by leaf in items[t * n .. (t + 1) * n)
+    private final int[] roots;
+
+    // Nodes
+    private int numNodes;
+    private int[] nodeStart;            // range in items
+    private int[] nodeEnd;
+    private int[] nodeLeft;             // -1 = leaf
+    private int[] nodeRight;
+    private double[] nodeOffset;        // split: projection < offset goes left
+    private float[] normals;            // [node * dims + k]
+
+    private final ThreadLocal<Workspace> workspaces;
+
+    /**
+     * Build the forest
+     *
+     * @param data Points, row-major (data[i * dims + k], NaN = missing); not modified
+     * @param numPoints Number of points
+     * @param dims Number of dimensions
+     * @param numTrees Number of trees (at least 1)
+     * @param leafSize Maximum points per leaf (at least 2)
+     * @param seed Seed of the random directions
+     */
+    public RandomProjectionForest(double[] data, int numPoints, int dims, int numTrees, int leafSize, long seed) {
+        if (numTrees < 1 || leafSize < 2) {
+            throw new IllegalArgumentException("Need at least 1 tree and a leaf size of at least 2");
+        }
+        this.numPoints = numPoints;
+        this.dims = dims;
+        this.numTrees = numTrees;
+        this.leafSize = leafSize;
+        this.means = new double[dims];
+        this.points = impute(data, numPoints, dims, means);
+        this.items = new int[numTrees * numPoints];
+        this.roots = new int[numTrees];
+        this.workspaces = ThreadLocal.withInitial(() -> new Workspace(numPoints, dims));
+
+        int capacity = numTrees * (2 * (numPoints / Math.max(1, leafSize / 2)) + 2);
+        nodeStart = new int[capacity];
+        nodeEnd = new int[capacity];
+        nodeLeft = new int[capacity];
+        nodeRight = new int[capacity];
+        nodeOffset = new double[capacity];
+        normals = new float[capacity * dims];
+
+        Random random = new Random(seed);
+        double[] projections = new double[numPoints];
+        double[] direction = new double[dims];
+        for (int t = 0; t < numTrees; t++) {
+            int base = t * numPoints;
+            for (int i = 0; i < numPoints; i++) {
+                items[base + i] = i;
+            }
+            roots[t] = build(base, base + numPoints, random, projections, direction);
+        }
+    }
+
+    /**
+     * Approximate heap use of a forest: leaf orders, node arrays and split
+     * normals, the imputed copy of the points when values are missing, and one
+     * search workspace per querying thread
+     */
+    public static long estimateBytes(long numPoints, long dims, int numTrees, int leafSize,
+                                     boolean missingValues, int threads) {
+        long capacity = numTrees * (2 * (numPoints / Math.max(1, leafSize / 2)) + 2);
+        long nodes = capacity * (4 * 4 + 8 + 4 * dims);
+        long imputed = missingValues ? 8 * numPoints * dims : 0;
+        long workspaces = (long) threads * (4 * numPoints + 8 * dims);
+        return 4L * numTrees * numPoints + nodes + imputed + workspaces;
+    }
+
+    public int numTrees() {
+        return numTrees;
+    }
+
+    public int leafSize() {
+        return leafSize;
+    }
+
+    /**
+     * Collect candidate neighbours of a query, leaves nearest to the query first
+     *
+     * @param query Query point (NaN = missing)
+     * @param queryOffset Offset of the query in its array
+     * @param searchK Number of distinct candidates to collect (all points when
+     *                searchK >= numPoints)
+     * @param candidatesOut Receives the candidates (room for searchK + leafSize entries)
+     * @return Number of candidates
+     */
+    public int candidates(double[] query, int queryOffset, int searchK, int[] candidatesOut) {
+        Workspace ws = workspaces.get();
+        double[] q = ws.query;
+        for (int k = 0; k < dims; k++) {
+            double value = query[queryOffset + k];
+            q[k] = Double.isNaN(value) ? means[k] : value;
+        }
+        if (++ws.stamp == 0) {
+            Arrays.fill(ws.visited, 0);
+            ws.stamp = 1;
+        }
+
+        ws.size = 0;
+        for (int root : roots) {
+            ws.push(root, Double.POSITIVE_INFINITY);
+        }
+
+        int count = 0;
+        while (ws.size > 0 && count < searchK) {
+            double priority = ws.topPriority();
+            int node = ws.pop();
+            if (nodeLeft[node] < 0) {
+                for (int p = nodeStart[node]; p < nodeEnd[node]; p++) {
+                    int point = items[p];
+                    if (ws.visited[point] != ws.stamp) {
+                        ws.visited[point] = ws.stamp;
+                        candidatesOut[count++] = point;
+                    }
+                }
+            } else {
+                double margin = project(q, 0, node) - nodeOffset[node];
+                ws.push(nodeRight[node], Math.min(priority, margin));
+                ws.push(nodeLeft[node], Math.min(priority, -margin));
+            }
+        }
+        return count;
+    }
+
+    // ==================== CONSTRUCTION ====================
+
+    private int build(int start, int end, Random random, double[] projections, double[] direction) {
+        int node = numNodes++;
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        nodeLeft[node] = -1;
+        nodeRight[node] = -1;
+        if (end - start <= leafSize || !chooseDirection(start, end, random, direction)) {
+            return node;
+        }
+
+        int offset = node * dims;
+        for (int k = 0; k < dims; k++) {
+            normals[offset + k] = (float) direction[k];
+        }
+        for (int p = start; p < end; p++) {
+            projections[p - start] = project(points, items[p] * dims, node);
+        }
+
+        // Median split: projections[0..half) <= projections[half] <= projections[half..)
+        int half = (end - start) / 2;
+        select(projections, items, start, 0, end - start, half);
+        nodeOffset[node] = projections[half];
+
+        int left = build(start, start + half, random, projections, direction);
+        int right = build(start + half, end, random, projections, direction);
+        nodeLeft[node] = left;
+        nodeRight[node] = right;
+        return node;
+    }
+
+    /**
+     * Unit direction between two random distinct points of the node (a random
+     * Gaussian direction when all sampled pairs coincide)
+     *
+     * @return false when the node's points cannot be split (dims == 0)
+     */
+    private boolean chooseDirection(int start, int end, Random random, double[] direction) {
+        if (dims == 0) {
+            return false;
+        }
+        int size = end - start;
+        for (int attempt = 0; attempt < DIRECTION_ATTEMPTS; attempt++) {
+            int a = items[start + random.nextInt(size)] * dims;
+            int b = items[start + random.nextInt(size)] * dims;
+            double norm = 0.0;
+            for (int k = 0; k < dims; k++) {
+                direction[k] = points[a + k] - points[b + k];
+                norm += direction[k] * direction[k];
+            }
+            if (norm > 0.0 && !Double.isInfinite(norm)) {
+                normalise(direction, norm);
+                return true;
+            }
+        }
+        double norm = 0.0;
+        for (int k = 0; k < dims; k++) {
+            direction[k] = random.nextGaussian();
+            norm += direction[k] * direction[k];
+        }
+        normalise(direction, norm);
+        return true;
+    }
+
+    /**
+     * Scale to unit length, so margins are comparable across nodes and trees
+     */
+    private static void normalise(double[] direction, double squaredNorm) {
+        double scale = 1.0 / Math.sqrt(squaredNorm);
+        for (int k = 0; k < direction.length; k++) {
+            direction[k] *= scale;
+        }
+    }
+
+    private double project(double[] values, int offset, int node) {
+        int normal = node * dims;
+        double sum = 0.0;
+        for (int k = 0; k < dims; k++) {
+            sum += normals[normal + k] * values[offset + k];
+        }
+        return sum;
+    }
+
+    /**
+     * Reorder values[from..to) (and the matching items, at itemBase + index) so
+     * that the value at 'nth' is the one a full sort would put there, with no
+     * larger value before it and no smaller one after it. Three-way partitions
+     * keep runs of equal projections linear.
+     */
+    private static void select(double[] values, int[] items, int itemBase, int from, int to, int nth) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo < hi) {
+            double pivot = values[(lo + hi) >>> 1];
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                if (values[i] < pivot) {
+                    swap(values, items, itemBase, lt++, i++);
+                } else if (values[i] > pivot) {
+                    swap(values, items, itemBase, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            if (nth < lt) {
+                hi = lt - 1;
+            } else if (nth > gt) {
+                lo = gt + 1;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void swap(double[] values, int[] items, int itemBase, int i, int j) {
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+        int item = items[itemBase + i];
+        items[itemBase + i] = items[itemBase + j];
+        items[itemBase + j] = item;
+    }
+
+    /**
+     * Copy of the points with missing values replaced by the attribute means
+     * (the data itself when nothing is missing)
+     */
+    private static double[] impute(double[] data, int numPoints, int dims, double[] meansOut) {
+        int[] present = new int[dims];
+        boolean missing = false;
+        for (int i = 0; i < numPoints; i++) {
+            for (int k = 0; k < dims; k++) {
+                double value = data[i * dims + k];
+                if (Double.isNaN(value)) {
+                    missing = true;
+                } else {
+                    meansOut[k] += value;
+                    present[k]++;
+                }
+            }
+        }
+        for (int k = 0; k < dims; k++) {
+            meansOut[k] = (present[k] > 0) ? meansOut[k] / present[k] : 0.0;
+        }
+        if (!missing) {
+            return data;
+        }
+
+        double[] imputed = data.clone();
+        for (int i = 0; i < imputed.length; i++) {
+            if (Double.isNaN(imputed[i])) {
+                imputed[i] = meansOut[i % dims];
+            }
+        }
+        return imputed;
+    }
+
+    /**
+     * Per-thread search state: a max-heap of (priority, node) and visit stamps
+     */
+    private static class Workspace {
+        final double[] query;
+        final int[] visited;
+        int stamp;
+        double[] priorities = new double[64];
+        int[] nodes = new int[64];
+        int size;
+
+        Workspace(int numPoints, int dims) {
+            this.query = new double[dims];
+            this.visited = new int[numPoints];
+        }
+
+        void push(int node, double priority) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, 2 * size);
+                priorities = Arrays.copyOf(priorities, 2 * size);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (priorities[parent] >= priority) break;
+                priorities[i] = priorities[parent];
+                nodes[i] = nodes[parent];
+                i = parent;
+            }
+            priorities[i] = priority;
+            nodes[i] = node;
+        }
+
+        double topPriority() {
+            return priorities[0];
+        }
+
+        int pop() {
+            int top = nodes[0];
+            double priority = priorities[--size];
+            int node = nodes[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && priorities[child + 1] > priorities[child]) child++;
+                if (priorities[child] <= priority) break;
+                priorities[i] = priorities[child];
+                nodes[i] = nodes[child];
+                i = child;
+            }
+            priorities[i] = priority;
+            nodes[i] = node;
+            return top;
+        }
+    }
+}
@@ -2,9 +2,9 @@ package privacyguard;
 
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Statistics;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.IntStream;
 
 /**
  * Re-identification Attack: Attempts to match synthetic records back to original records
@@ -20,21 +20,58 @@ import java.util.stream.IntStream;
  * - Assumption: π(j) = j (index-aligned: s_j generated from x_j)
  * - ReID@K = (number of records with r_j ≤ K) / m
  *
- * OPTIMIZATION: Uses parallel processing across all CPU cores for distance calculations.
+ * OPTIMIZATION: Uses parallel processing across all CPU cores for distance calculations,
+ * with a cache-blocked, allocation-free distance kernel (see DistanceKernel).
+ * With the "kdtree" search mode (see setSearchMode), the original records are
+ * indexed in a KDTreeIndex: the closest match and the rank of the correct record
+ * are found without computing all n distances, with identical results.
+ *
+ * BOUNDED MODE (see setMaxRank): ReID@K only needs to know whether r_j ≤ K. With
+ * a rank bound K_max, counting stops once K_max records are closer than the true
+ * source; such ranks are stored as K_max + 1 and flagged as capped. ReID@K is then
+ * exact for K ≤ K_max and the reported ACR is a lower bound.
+ *
+ * IDENTICAL RECORDS: generalising methods (PrivacyGuard, k-anonymity, binning)
+ * produce many identical synthetic records. The brute-force search computes one
+ * distance vector per distinct record and ranks every copy against its own
+ * source record from that sorted vector (see setDeduplicate).
+ *
+ * SAMPLED MODE (see setSampling): a random, class-stratified subset of synthetic
+ * records is attacked batch by batch, and sampling stops as soon as the Wilson
+ * confidence interval of every reported ReID@K is narrower than the target width.
+ * All metrics then describe the sample; the report states its size and precision.
  *
  * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
  */
 public class ReIdentificationAttack {
 
+    private SharedOriginalData sharedOriginal;
     private Instances originalData;
     private Instances syntheticData;
     private int classIndex;
     private int numThreads;
+    private String searchMode = SEARCH_BRUTE_FORCE;
+    private int maxRank = 0;   // K_max of the bounded mode (0 = exact ranks)
+    private double sampleWidth = 0.0;   // target CI width of the sampled mode (0 = every record)
+    private double confidence = 0.95;
+    private long sampleSeed = 1;
+    private boolean deduplicate = true;   // share one distance vector among identical synthetic records
+
+    // Search modes
+    public static final String SEARCH_BRUTE_FORCE = "bruteforce";
+    public static final String SEARCH_KD_TREE = "kdtree";
+
+    private static final int BLOCK_SIZE = 4 * DistanceKernel.SYNTHETIC_TILE;   // synthetic records per task
+    private static final int SAMPLE_BATCH = 512;   // records between two precision checks
+    private static final int[] K_VALUES = {1, 5, 10, 25, 50, 100};
 
     // Results (r_j values for all synthetic records)
     private int[] ranks;  // ranks[j] = r_j (rank of correct source record for s_j)
     private int[] closestMatchIndices;  // Closest match found by attack
     private double[] minDistances;      // Distance to closest match
+    private boolean[] rankCapped;       // r_j > K_max (bounded mode only)
+    private int[] sampleRows;           // synthetic record of every result (sampled mode only)
+    private double achievedWidth;       // widest ReID@K interval reached (sampled mode only)
 
     /**
      * Constructor with automatic thread detection
@@ -50,10 +87,86 @@ public class ReIdentificationAttack {
      * @param numThreads Number of parallel threads (0 = auto-detect)
      */
     public ReIdentificationAttack(Instances originalData, Instances syntheticData, int numThreads) {
-        this.originalData = new Instances(originalData);
+        this(new SharedOriginalData(originalData), syntheticData, numThreads);
+    }
+
+    /**
+     * Constructor with an original dataset shared with other attacks (not copied;
+     * its matrix and indexes are reused)
+     * @param original Original dataset D = {x_1,...,x_n}, pre-processed
+     * @param syntheticData Synthetic dataset D' = {s_1,...,s_m}
+     * @param numThreads Number of parallel threads (0 = all threads of the
+     *                   shared AttackScheduler pool)
+     */
+    public ReIdentificationAttack(SharedOriginalData original, Instances syntheticData, int numThreads) {
+        this.sharedOriginal = original;
+        this.originalData = original.data();
         this.syntheticData = new Instances(syntheticData);
         this.classIndex = originalData.classIndex();
-        this.numThreads = (numThreads <= 0) ? Runtime.getRuntime().availableProcessors() : numThreads;
+        this.numThreads = (numThreads <= 0) ? AttackScheduler.parallelism() : numThreads;
+    }
+
+    /**
+     * Select the nearest-neighbour search ("bruteforce" or "kdtree")
+     */
+    public void setSearchMode(String searchMode) {
+        if (!SEARCH_BRUTE_FORCE.equals(searchMode) && !SEARCH_KD_TREE.equals(searchMode)) {
+            throw new IllegalArgumentException("Unknown search mode: " + searchMode);
+        }
+        this.searchMode = searchMode;
+    }
+
+    /**
+     * Get the nearest-neighbour search mode
+     */
+    public String getSearchMode() {
+        return searchMode;
+    }
+
+    /**
+     * Bound the computed ranks at K_max (0 = exact ranks). K_max must be at
+     * least 5, since ReID@1 and ReID@5 form the re-identification risk score.
+     */
+    public void setMaxRank(int maxRank) {
+        if (maxRank < 0 || (maxRank > 0 && maxRank < 5)) {
+            throw new IllegalArgumentException("Maximum rank must be 0 (exact) or at least 5: " + maxRank);
+        }
+        this.maxRank = maxRank;
+    }
+
+    /**
+     * Get the rank bound K_max (0 = exact ranks)
+     */
+    public int getMaxRank() {
+        return maxRank;
+    }
+
+    /**
+     * Share one distance vector among identical synthetic records (brute-force
+     * search; results are unchanged)
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * Attack a class-stratified random sample of synthetic records, stopping once
+     * every reported ReID@K has a Wilson interval at most 'width' wide
+     *
+     * @param width Target full width of the intervals (0 = attack every record)
+     * @param confidence Confidence level of the intervals, e.g. 0.95
+     * @param seed Seed of the sampling order
+     */
+    public void setSampling(double width, double confidence, long seed) {
+        if (width < 0 || width >= 1) {
+            throw new IllegalArgumentException("Interval width must be in [0, 1): " + width);
+        }
+        if (confidence <= 0 || confidence >= 1) {
+            throw new IllegalArgumentException("Confidence must be in (0, 1): " + confidence);
+        }
+        this.sampleWidth = width;
+        this.confidence = confidence;
+        this.sampleSeed = seed;
     }
 
     /**
@@ -61,6 +174,10 @@ public class ReIdentificationAttack {
      * For each synthetic record s_j:
      *   1. Compute distances to all original records
      *   2. Find rank r_j of correct source record x_j
+     *
+     * Both datasets are first copied, without the class column, into row-major
+     * matrices; blocks of synthetic records are then processed by at most
+     * numThreads workers of the shared AttackScheduler pool.
      */
     public void performAttack() {
         int m = syntheticData.numInstances();  // Number of synthetic records
@@ -69,115 +186,562 @@ public class ReIdentificationAttack {
         ranks = new int[m];
         closestMatchIndices = new int[m];
         minDistances = new double[m];
+        rankCapped = new boolean[m];
+        sampleRows = null;
 
         System.out.println("\n=== Re-Identification Attack ===");
         System.out.println("Original records (n): " + n);
         System.out.println("Synthetic records (m): " + m);
         System.out.println("Parallel threads: " + numThreads);
+        if (maxRank > 0) {
+            System.out.println("Rank bound (K_max): " + maxRank);
+        }
         System.out.println("Processing...");
 
         long startTime = System.currentTimeMillis();
 
-        // Parallel processing using Java Streams
-        IntStream.range(0, m)
-            .parallel()
-            .forEach(synIdx -> {
-                Instance syntheticInstance = syntheticData.instance(synIdx);
+        int[] features = sharedOriginal.features();
+        int dims = features.length;
+        double[] original = sharedOriginal.matrix();
+        double[] synthetic = SharedOriginalData.toMatrix(syntheticData, features);
+
+        RowSearch search;
+        boolean dense = n > 0 && dims > 0 && !sharedOriginal.hasMissingValues() && !hasMissingValues(synthetic);
+        boolean indexed = SEARCH_KD_TREE.equals(searchMode) && dense;
+        if (indexed) {
+            search = prepareIndexedSearch(original, synthetic, dims);
+        } else {
+            if (SEARCH_KD_TREE.equals(searchMode)) {
+                System.out.println("  Missing values present: using brute-force search");
+            }
+            if (maxRank > 0 && dense) {
+                search = prepareBoundedScan(original, synthetic, dims);
+            } else {
+                search = prepareFullScan(original, synthetic, dims);
+            }
+        }
+
+        if (sampleWidth > 0 && m > 0) {
+            performSampledAttack(search);
+        } else if (deduplicate && !indexed && n > 0) {
+            performDeduplicatedAttack(search, original, synthetic, dims);
+        } else {
+            int[] rows = new int[m];
+            for (int j = 0; j < m; j++) {
+                rows[j] = j;
+            }
+            forEachBlock(rows, 0, m, search);
+        }
 
-                // Compute distance vector m_j = (d(s_j, x_1), ..., d(s_j, x_n))
-                double[] distances = new double[n];
-                for (int origIdx = 0; origIdx < n; origIdx++) {
-                    distances[origIdx] = calculateDistance(syntheticInstance,
-                                                          originalData.instance(origIdx));
+        long endTime = System.currentTimeMillis();
+        System.out.println("Attack completed in " + (endTime - startTime) + " ms");
+    }
+
+    /**
+     * Brute-force attack with identical synthetic records grouped: each group gets
+     * one distance vector, sorted once, and the rank of every member against its
+     * own source record x_j is the number of sorted distances below d(s_j, x_j),
+     * found by binary search. Records without duplicates use the regular search.
+     */
+    private void performDeduplicatedAttack(RowSearch search, double[] original, double[] synthetic, int dims) {
+        int m = syntheticData.numInstances();
+        int n = originalData.numInstances();
+        int[][] groups = groupIdenticalRows(synthetic, m, dims);
+
+        int grouped = 0;
+        for (int[] group : groups) {
+            grouped += group.length;
+        }
+        int[] singles = new int[m - grouped];
+        boolean[] inGroup = new boolean[m];
+        for (int[] group : groups) {
+            for (int j : group) {
+                inGroup[j] = true;
+            }
+        }
+        int next = 0;
+        for (int j = 0; j < m; j++) {
+            if (!inGroup[j]) {
+                singles[next++] = j;
+            }
+        }
+
+        if (groups.length > 0) {
+            System.out.println(String.format("  Identical synthetic records: %d in %d groups (%d distance vectors instead of %d)",
+                    grouped, groups.length, groups.length + singles.length, m));
+        }
+
+        forEachBlock(singles, 0, singles.length, search);
+
+        // Groups: one distance vector each
+        boolean dense = !sharedOriginal.hasMissingValues() && !hasMissingValues(synthetic);
+        ThreadLocal<double[][]> buffers = ThreadLocal.withInitial(() -> new double[][]{new double[n], new double[n]});
+        int[] groupIds = new int[groups.length];
+        for (int g = 0; g < groups.length; g++) {
+            groupIds[g] = g;
+        }
+        forEachBlock(groupIds, 0, groups.length, (ids, start, end) -> {
+            double[][] buffer = buffers.get();
+            for (int p = start; p < end; p++) {
+                rankGroup(groups[ids[p]], original, synthetic, dims, dense, buffer[0], buffer[1]);
+            }
+        });
+    }
+
+    /**
+     * Closest match and ranks of a group of identical synthetic records. Small
+     * groups count the closer records with one pass per member; larger groups
+     * sort the vector once and binary-search every member's source distance.
+     */
+    private void rankGroup(int[] group, double[] original, double[] synthetic, int dims, boolean dense,
+                           double[] distances, double[] sorted) {
+        int n = originalData.numInstances();
+        int offset = group[0] * dims;
+
+        int closestIdx = 0;
+        for (int origIdx = 0; origIdx < n; origIdx++) {
+            distances[origIdx] = dense
+                    ? Math.sqrt(sumOfSquares(synthetic, offset, original, origIdx * dims, dims) / dims)
+                    : DistanceKernel.distance(synthetic, offset, original, origIdx * dims, dims);
+            if (distances[origIdx] < distances[closestIdx]) {
+                closestIdx = origIdx;
+            }
+        }
+        boolean useSort = group.length > 32 - Integer.numberOfLeadingZeros(n);   // k > log2(n)
+        if (useSort) {
+            System.arraycopy(distances, 0, sorted, 0, n);
+            Arrays.sort(sorted, 0, n);
+        }
+
+        for (int synIdx : group) {
+            closestMatchIndices[synIdx] = closestIdx;
+            minDistances[synIdx] = distances[closestIdx];
+            if (synIdx < n) {
+                int closer = useSort ? countBelow(sorted, n, distances[synIdx])
+                                     : countBelow(distances, n, distances[synIdx], synIdx);
+                setRank(synIdx, 1 + closer);
+            } else {
+                setRank(synIdx, n);  // Out of bounds, assign worst rank
+            }
+        }
+    }
+
+    /**
+     * Number of values in distances[0..length) strictly below 'value', skipping index 'self'
+     */
+    private static int countBelow(double[] distances, int length, double value, int self) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (distances[i] < value && i != self) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Number of values in sorted[0..length) strictly below 'value'
+     */
+    private static int countBelow(double[] sorted, int length, double value) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Groups of two or more synthetic records with bit-identical feature vectors
+     * (members in increasing order), found with an open-addressing hash table
+     */
+    private static int[][] groupIdenticalRows(double[] synthetic, int m, int dims) {
+        long[] hashes = new long[m];
+        for (int j = 0; j < m; j++) {
+            long hash = 1125899906842597L;
+            for (int k = 0; k < dims; k++) {
+                hash = 31 * hash + Double.doubleToLongBits(synthetic[j * dims + k]);
+            }
+            hashes[j] = hash ^ (hash >>> 29);
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(2, m) * 2 - 1) << 1;
+        int mask = capacity - 1;
+        int[] table = new int[capacity];   // row + 1, 0 = empty
+        int[] first = new int[m];          // first row with the same features
+        int[] size = new int[m];
+        for (int j = 0; j < m; j++) {
+            int slot = (int) hashes[j] & mask;
+            while (true) {
+                int entry = table[slot] - 1;
+                if (entry < 0) {
+                    table[slot] = j + 1;
+                    first[j] = j;
+                    break;
                 }
+                if (hashes[entry] == hashes[j] && sameRow(synthetic, entry, j, dims)) {
+                    first[j] = entry;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            size[first[j]]++;
+        }
+
+        List<int[]> groups = new ArrayList<>();
+        int[] slotOf = new int[m];
+        for (int j = 0; j < m; j++) {
+            if (first[j] == j && size[j] > 1) {
+                slotOf[j] = groups.size();
+                groups.add(new int[size[j]]);
+            }
+        }
+        int[] filled = new int[groups.size()];
+        for (int j = 0; j < m; j++) {
+            if (size[first[j]] > 1) {
+                int g = slotOf[first[j]];
+                groups.get(g)[filled[g]++] = j;
+            }
+        }
+        return groups.toArray(new int[0][]);
+    }
+
+    private static boolean sameRow(double[] data, int a, int b, int dims) {
+        for (int k = 0; k < dims; k++) {
+            if (Double.doubleToLongBits(data[a * dims + k]) != Double.doubleToLongBits(data[b * dims + k])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sampled attack: synthetic records are attacked in a random, class-stratified
+     * order, batch by batch, until the Wilson interval of every reported ReID@K is
+     * at most sampleWidth wide (or all records are used). The results are then
+     * reduced to the attacked records (see getSampleRows).
+     */
+    private void performSampledAttack(RowSearch search) {
+        int m = syntheticData.numInstances();
+        int[] order = stratifiedOrder();
+        int[] kValues = reportedKValues();
+        int[] hits = new int[kValues.length];
+        // The batch is fixed, so the stopping point (and with it the sample and its
+        // estimates) depends on the seed only; the threads share each batch instead
+        int tiles = (SAMPLE_BATCH / DistanceKernel.SYNTHETIC_TILE + numThreads - 1) / numThreads;
+        int blockSize = Math.min(BLOCK_SIZE, Math.max(1, tiles) * DistanceKernel.SYNTHETIC_TILE);
+
+        int used = 0;
+        achievedWidth = 1.0;
+        while (used < m) {
+            int next = Math.min(m, used + SAMPLE_BATCH);
+            forEachBlock(order, used, next, blockSize, search);
+            for (int p = used; p < next; p++) {
+                int rank = ranks[order[p]];
+                for (int k = 0; k < kValues.length; k++) {
+                    if (rank > 0 && rank <= kValues[k]) {
+                        hits[k]++;
+                    }
+                }
+            }
+            used = next;
+
+            achievedWidth = 0.0;
+            for (int k = 0; k < kValues.length; k++) {
+                double[] interval = wilsonInterval(hits[k], used);
+                achievedWidth = Math.max(achievedWidth, interval[1] - interval[0]);
+            }
+            if (achievedWidth <= sampleWidth) {
+                break;
+            }
+        }
+
+        System.out.println(String.format("  Sampled %d of %d records: widest %.0f%% CI = %.4f (target %.4f)",
+                used, m, confidence * 100, achievedWidth, sampleWidth));
+
+        // Keep the attacked records only
+        sampleRows = Arrays.copyOf(order, used);
+        int[] sampledRanks = new int[used];
+        int[] sampledClosest = new int[used];
+        double[] sampledDistances = new double[used];
+        boolean[] sampledCapped = new boolean[used];
+        for (int p = 0; p < used; p++) {
+            int j = sampleRows[p];
+            sampledRanks[p] = ranks[j];
+            sampledClosest[p] = closestMatchIndices[j];
+            sampledDistances[p] = minDistances[j];
+            sampledCapped[p] = rankCapped[j];
+        }
+        ranks = sampledRanks;
+        closestMatchIndices = sampledClosest;
+        minDistances = sampledDistances;
+        rankCapped = sampledCapped;
+    }
+
+    /**
+     * Brute-force attack: every synthetic record against every original record,
+     * with the blocked distance kernel (see DistanceKernel)
+     */
+    private RowSearch prepareFullScan(double[] original, double[] synthetic, int dims) {
+        int m = syntheticData.numInstances();
+        int n = originalData.numInstances();
+        DistanceKernel kernel = new DistanceKernel(sharedOriginal.kernelReference(), synthetic, m);
+        int[] closer = new int[m];
+
+        return (rows, start, end) -> {
+            kernel.scan(rows, start, end, closestMatchIndices, minDistances, closer);
+
+            // Rank r_j of correct source record x_π(j), assuming π(j) = j
+            for (int p = start; p < end; p++) {
+                int synIdx = rows[p];
+                if (closer[synIdx] >= 0) {
+                    setRank(synIdx, 1 + closer[synIdx]);
+                } else {
+                    setRank(synIdx, n);  // Out of bounds, assign worst rank
+                }
+            }
+            reportProgress(start, end, m);
+        };
+    }
+
+    /**
+     * Same attack with the original records indexed in a KD-tree. Distances are
+     * computed over the same attributes in the same order as the brute-force
+     * kernel, so closest matches, minimum distances and ranks are identical.
+     */
+    private RowSearch prepareIndexedSearch(double[] original, double[] synthetic, int dims) {
+        int m = syntheticData.numInstances();
+        int n = originalData.numInstances();
+
+        System.out.println("Search: KD-tree");
+        KDTreeIndex index = sharedOriginal.kdTree();   // built once per original dataset
+
+        return (rows, start, end) -> {
+            double[] distance = new double[1];
+            for (int p = start; p < end; p++) {
+                int synIdx = rows[p];
+                int offset = synIdx * dims;
 
-                // Find closest match
-                int closestIdx = findMinIndex(distances);
+                int closestIdx = index.nearest(synthetic, offset, distance);
                 closestMatchIndices[synIdx] = closestIdx;
-                minDistances[synIdx] = distances[closestIdx];
+                minDistances[synIdx] = distance[0];
 
-                // Calculate rank r_j of correct source record x_π(j)
-                // Assumption: π(j) = j (s_j generated from x_j)
                 int correctIdx = synIdx;
                 if (correctIdx < n) {
-                    ranks[synIdx] = calculateRank(distances, correctIdx);
+                    double correctDistance = KDTreeIndex.distance(synthetic, offset, original,
+                                                                  correctIdx * dims, dims);
+                    int limit = (maxRank > 0) ? maxRank : Integer.MAX_VALUE;
+                    setRank(synIdx, 1 + index.countCloser(synthetic, offset, correctDistance, correctIdx, limit));
                 } else {
-                    ranks[synIdx] = n;  // Out of bounds, assign worst rank
+                    setRank(synIdx, n);  // Out of bounds, assign worst rank
                 }
+            }
+            reportProgress(start, end, m);
+        };
+    }
+
+    /**
+     * Bounded brute-force attack: one pass per synthetic record that tracks the
+     * closest match and counts closer records at the same time. A distance is
+     * abandoned as soon as its partial sum of squares exceeds both the best sum
+     * so far and, while counting, the sum of the correct record; after K_max
+     * closer records are found only the closest match remains to be decided, so
+     * most distances stop after a few attributes. Abandoned records can neither
+     * be the closest match nor be closer than the correct one, so the results
+     * equal the full scan apart from the capped ranks.
+     */
+    private RowSearch prepareBoundedScan(double[] original, double[] synthetic, int dims) {
+        int m = syntheticData.numInstances();
+        int n = originalData.numInstances();
+
+        System.out.println("Search: bounded scan");
 
-                // Progress reporting (thread-safe)
-                if ((synIdx + 1) % 1000 == 0) {
-                    synchronized(System.out) {
-                        System.out.println("  Processed " + (synIdx + 1) + "/" + m + " records");
+        return (rows, start, end) -> {
+            for (int p = start; p < end; p++) {
+                int synIdx = rows[p];
+                int offset = synIdx * dims;
+                int correctIdx = synIdx;
+                boolean counting = correctIdx < n;
+                double correctSum = counting ? sumOfSquares(synthetic, offset, original, correctIdx * dims, dims) : 0.0;
+                double correctDistance = Math.sqrt(correctSum / dims);
+
+                int closestIdx = -1;
+                double bestDistance = Double.POSITIVE_INFINITY;
+                double bestSum = Double.POSITIVE_INFINITY;
+                int closer = 0;
+
+                for (int origIdx = 0; origIdx < n; origIdx++) {
+                    double threshold = counting ? Math.max(bestSum, correctSum) : bestSum;
+                    int row = origIdx * dims;
+                    double sum = 0.0;
+                    for (int k = 0; k < dims && sum <= threshold; k++) {
+                        double diff = synthetic[offset + k] - original[row + k];
+                        sum += diff * diff;
+                    }
+                    if (sum > threshold) {
+                        continue;   // abandoned: neither closest nor closer than the correct record
+                    }
+
+                    double distance = Math.sqrt(sum / dims);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        bestSum = sum;
+                        closestIdx = origIdx;
+                    }
+                    if (counting && origIdx != correctIdx && distance < correctDistance) {
+                        closer++;
+                        counting = closer < maxRank;
                     }
                 }
-            });
 
-        long endTime = System.currentTimeMillis();
-        System.out.println("Attack completed in " + (endTime - startTime) + " ms");
+                closestMatchIndices[synIdx] = closestIdx;
+                minDistances[synIdx] = bestDistance;
+                setRank(synIdx, (correctIdx < n) ? 1 + closer : n);
+            }
+            reportProgress(start, end, m);
+        };
     }
 
     /**
-     * Calculate Euclidean distance between two instances (excluding class attribute)
-     * Formula: d(s_j, x_i) = sqrt((1/d') * Σ(s_j^(k) - x_i^(k))^2)
+     * Run a search over the synthetic records rows[from..to) in blocks of
+     * BLOCK_SIZE records on at most numThreads workers of the shared pool
      */
-    private double calculateDistance(Instance inst1, Instance inst2) {
-        double sumSquaredDiff = 0.0;
-        int numAttributes = 0;
+    private void forEachBlock(int[] rows, int from, int to, RowSearch search) {
+        forEachBlock(rows, from, to, BLOCK_SIZE, search);
+    }
 
-        for (int i = 0; i < inst1.numAttributes(); i++) {
-            if (i == classIndex) continue;  // Skip class attribute
+    private void forEachBlock(int[] rows, int from, int to, int blockSize, RowSearch search) {
+        AttackScheduler.forEachBlock(from, to, blockSize, numThreads,
+                (blockStart, blockEnd) -> search.run(rows, blockStart, blockEnd));
+    }
 
-            double val1 = inst1.value(i);
-            double val2 = inst2.value(i);
+    /**
+     * Attack of the synthetic records rows[start..end)
+     */
+    private interface RowSearch {
+        void run(int[] rows, int start, int end);
+    }
 
-            if (!Double.isNaN(val1) && !Double.isNaN(val2)) {
-                sumSquaredDiff += Math.pow(val1 - val2, 2);
-                numAttributes++;
+    /**
+     * Progress reporting (thread-safe): one line per 1000 records
+     */
+    private static void reportProgress(int start, int end, int m) {
+        for (int processed = (start / 1000 + 1) * 1000; processed <= end; processed += 1000) {
+            synchronized(System.out) {
+                System.out.println("  Processed " + processed + "/" + m + " records");
             }
         }
+    }
+
+    /**
+     * Store r_j, capped at K_max + 1 in bounded mode
+     */
+    private void setRank(int synIdx, int rank) {
+        if (maxRank > 0 && rank > maxRank) {
+            ranks[synIdx] = maxRank + 1;
+            rankCapped[synIdx] = true;
+        } else {
+            ranks[synIdx] = rank;
+        }
+    }
 
-        return numAttributes > 0 ? Math.sqrt(sumSquaredDiff / numAttributes) : Double.MAX_VALUE;
+    private static double sumOfSquares(double[] a, int aOffset, double[] b, int bOffset, int dims) {
+        double sum = 0.0;
+        for (int k = 0; k < dims; k++) {
+            double diff = a[aOffset + k] - b[bOffset + k];
+            sum += diff * diff;
+        }
+        return sum;
     }
 
     /**
-     * Calculate rank r_j = Rank(m_j, x_correctIdx)
-     * Returns the position of x_correctIdx in the sorted distance list
-     * Rank 1 = closest match, Rank 2 = second closest, etc.
+     * Random order of the synthetic records in which every prefix keeps the class
+     * proportions: each stratum is shuffled, then the next record comes from the
+     * stratum furthest behind its share
      */
-    private int calculateRank(double[] distances, int correctIdx) {
-        if (correctIdx >= distances.length) {
-            return distances.length;
+    private int[] stratifiedOrder() {
+        int m = syntheticData.numInstances();
+        Random random = new Random(sampleSeed);
+
+        boolean nominalClass = classIndex >= 0 && syntheticData.attribute(classIndex).isNominal();
+        int numStrata = nominalClass ? syntheticData.attribute(classIndex).numValues() + 1 : 1;
+        int[] stratum = new int[m];
+        int[] sizes = new int[numStrata];
+        for (int j = 0; j < m; j++) {
+            if (nominalClass) {
+                Instance instance = syntheticData.instance(j);
+                stratum[j] = instance.isMissing(classIndex) ? numStrata - 1 : (int) instance.value(classIndex);
+            }
+            sizes[stratum[j]]++;
         }
 
-        double correctDistance = distances[correctIdx];
-        int rank = 1;
+        int[][] members = new int[numStrata][];
+        for (int c = 0; c < numStrata; c++) {
+            members[c] = new int[sizes[c]];
+        }
+        int[] filled = new int[numStrata];
+        for (int j = 0; j < m; j++) {
+            members[stratum[j]][filled[stratum[j]]++] = j;
+        }
+        for (int[] group : members) {
+            for (int i = group.length - 1; i > 0; i--) {
+                int swap = random.nextInt(i + 1);
+                int tmp = group[i];
+                group[i] = group[swap];
+                group[swap] = tmp;
+            }
+        }
 
-        // Count how many records are closer than the correct one
-        for (int i = 0; i < distances.length; i++) {
-            if (i != correctIdx && distances[i] < correctDistance) {
-                rank++;
+        int[] order = new int[m];
+        int[] taken = new int[numStrata];
+        for (int p = 0; p < m; p++) {
+            int best = -1;
+            double bestDeficit = Double.NEGATIVE_INFINITY;
+            for (int c = 0; c < numStrata; c++) {
+                if (taken[c] < sizes[c]) {
+                    double deficit = (double) (p + 1) * sizes[c] / m - taken[c];
+                    if (deficit > bestDeficit) {
+                        bestDeficit = deficit;
+                        best = c;
+                    }
+                }
             }
+            order[p] = members[best][taken[best]++];
         }
+        return order;
+    }
 
-        return rank;
+    /**
+     * Wilson score interval {lower, upper} for 'successes' out of 'trials'
+     */
+    private double[] wilsonInterval(int successes, int trials) {
+        double z = Statistics.normalInverse(1 - (1 - confidence) / 2);
+        double p = (double) successes / trials;
+        double z2n = z * z / trials;
+        double centre = (p + z2n / 2) / (1 + z2n);
+        double halfWidth = z * Math.sqrt(p * (1 - p) / trials + z2n / (4.0 * trials)) / (1 + z2n);
+        return new double[]{Math.max(0.0, centre - halfWidth), Math.min(1.0, centre + halfWidth)};
     }
 
     /**
-     * Find index of minimum value in array
+     * K values of ReID@K that are reported (bounded mode: K ≤ K_max only)
      */
-    private int findMinIndex(double[] array) {
-        int minIndex = 0;
-        double minValue = array[0];
+    private int[] reportedKValues() {
+        return Arrays.stream(K_VALUES).filter(K -> maxRank == 0 || K <= maxRank).toArray();
+    }
 
-        for (int i = 1; i < array.length; i++) {
-            if (array[i] < minValue) {
-                minValue = array[i];
-                minIndex = i;
+    private static boolean hasMissingValues(double[] matrix) {
+        for (double value : matrix) {
+            if (Double.isNaN(value)) {
+                return true;
             }
         }
-
-        return minIndex;
+        return false;
     }
 
     /**
@@ -185,17 +749,17 @@ public class ReIdentificationAttack {
      * ReID@K = (number of records with r_j ≤ K) / m
      *
      * @return Map of K -> ReID@K values for K ∈ {1, 5, 10, 25, 50, 100}
+     *         (bounded mode: only K ≤ K_max, for which ReID@K is exact)
      */
     public Map<Integer, Double> calculateReIDAtK() {
         if (ranks == null) {
             throw new IllegalStateException("Must perform attack first");
         }
 
-        int[] K_VALUES = {1, 5, 10, 25, 50, 100};
         Map<Integer, Double> results = new LinkedHashMap<>();
         int m = ranks.length;
 
-        for (int K : K_VALUES) {
+        for (int K : reportedKValues()) {
             int count = 0;
             for (int rank : ranks) {
                 if (rank <= K && rank > 0) {
@@ -240,10 +804,28 @@ public class ReIdentificationAttack {
         Map<Integer, Double> reidAtK = calculateReIDAtK();
         for (Map.Entry<Integer, Double> entry : reidAtK.entrySet()) {
             stats.put("ReID@" + entry.getKey(), entry.getValue());
+            if (sampleRows != null) {
+                int hits = (int) Math.round(entry.getValue() * ranks.length);
+                double[] interval = wilsonInterval(hits, ranks.length);
+                stats.put(String.format("ReID@%d %.0f%% CI", entry.getKey(), confidence * 100),
+                          String.format("[%.4f, %.4f]", interval[0], interval[1]));
+            }
+        }
+
+        // Sample size and precision of the sampled mode
+        if (sampleRows != null) {
+            stats.put("Sample Size", (double) sampleRows.length);
+            stats.put("Sampled Fraction", (double) sampleRows.length / syntheticData.numInstances());
+            stats.put("Widest ReID@K CI", achievedWidth);
         }
 
-        // Average rank
-        stats.put("Average Rank (ACR)", calculateAverageRank());
+        // Average rank (capped ranks make it a lower bound)
+        if (maxRank > 0) {
+            stats.put("Average Rank (ACR, lower bound)", calculateAverageRank());
+            stats.put("Capped Ranks (r > K_max)", (double) countCapped() / ranks.length);
+        } else {
+            stats.put("Average Rank (ACR)", calculateAverageRank());
+        }
 
         // Distance statistics
         double avgDistance = 0.0;
@@ -264,6 +846,14 @@ public class ReIdentificationAttack {
         return stats;
     }
 
+    private int countCapped() {
+        int count = 0;
+        for (boolean capped : rankCapped) {
+            if (capped) count++;
+        }
+        return count;
+    }
+
     /**
      * Print a summary report of the attack results
      */
@@ -275,6 +865,10 @@ public class ReIdentificationAttack {
         System.out.println("Synthetic records (m): " + syntheticData.numInstances());
         System.out.println("Original records (n): " + originalData.numInstances());
         System.out.println("Features (d'): " + (syntheticData.numAttributes() - (classIndex >= 0 ? 1 : 0)));
+        if (sampleRows != null) {
+            System.out.println(String.format("Sampled records: %d of %d (class-stratified), widest %.0f%% CI %.4f (target %.4f)",
+                    sampleRows.length, syntheticData.numInstances(), confidence * 100, achievedWidth, sampleWidth));
+        }
         System.out.println();
 
         Map<String, Object> stats = getDetailedStatistics();
@@ -299,6 +893,21 @@ public class ReIdentificationAttack {
         return ranks;
     }
 
+    /**
+     * Get the capped-rank flags (bounded mode: rankCapped[j] means r_j > K_max)
+     */
+    public boolean[] getRankCapped() {
+        return rankCapped;
+    }
+
+    /**
+     * Get the synthetic record behind every result (sampled mode), or null when
+     * every record was attacked and results are indexed by synthetic record
+     */
+    public int[] getSampleRows() {
+        return sampleRows;
+    }
+
     /**
      * Get ReID@1 (percentage where closest match is correct)
      */
@@ -0,0 +1,156 @@
+package privacyguard;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Original Dataset Shared by Privacy Attacks
+ *
+ * Holds the original dataset of one privacy evaluation together with the
+ * pre-processed forms the attacks need, so that the evaluations of several
+ * synthetic datasets (one per generation method, possibly running in
+ * parallel) and both attacks share a single copy:
+ *   - the non-class attributes as a row-major matrix (re-identification)
+ *     and as columns (linkage), missing values as NaN
+ *   - the KD-tree, the random-projection forest and the centred
+ *     distance-kernel side of the original records, built on first use
+ *
+ * The dataset and every array handed out are read-only: attacks must not
+ * modify them. All methods are thread-safe.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class SharedOriginalData {
+
+    private final Instances data;
+    private final int[] features;          // non-class attribute indices
+    private final double[] matrix;         // matrix[i * dims + f]
+    private final boolean missingValues;
+
+    private double[][] columns;            // columns[f][i], built on first use
+    private KDTreeIndex kdTree;
+    private DistanceKernel.Reference kernelReference;
+    private RandomProjectionForest projectionForest;
+    private long projectionForestSeed;
+
+    /**
+     * @param data Original dataset with its class index set; not copied, so it
+     *             must not be modified while shared
+     */
+    public SharedOriginalData(Instances data) {
+        this.data = data;
+
+        int classIndex = data.classIndex();
+        int numAttributes = data.numAttributes();
+        this.features = new int[(classIndex >= 0) ? numAttributes - 1 : numAttributes];
+        int f = 0;
+        for (int i = 0; i < numAttributes; i++) {
+            if (i != classIndex) {
+                features[f++] = i;
+            }
+        }
+
+        this.matrix = toMatrix(data, features);
+        boolean missing = false;
+        for (double value : matrix) {
+            missing |= Double.isNaN(value);
+        }
+        this.missingValues = missing;
+    }
+
+    public Instances data() {
+        return data;
+    }
+
+    public int numInstances() {
+        return data.numInstances();
+    }
+
+    /**
+     * Indices of the non-class attributes, in attribute order
+     */
+    public int[] features() {
+        return features;
+    }
+
+    /**
+     * Row-major copy of the given attributes of a dataset (missing values stay
+     * NaN); the layout of matrix(), also used for the synthetic side of the attacks
+     */
+    static double[] toMatrix(Instances data, int[] features) {
+        int dims = features.length;
+        double[] matrix = new double[data.numInstances() * dims];
+        for (int r = 0; r < data.numInstances(); r++) {
+            Instance instance = data.instance(r);
+            for (int f = 0; f < dims; f++) {
+                matrix[r * dims + f] = instance.value(features[f]);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Non-class attributes, row-major (missing values are NaN)
+     */
+    public double[] matrix() {
+        return matrix;
+    }
+
+    public boolean hasMissingValues() {
+        return missingValues;
+    }
+
+    /**
+     * Non-class attributes, one array per attribute (same order as features())
+     */
+    public synchronized double[][] columns() {
+        if (columns == null) {
+            int n = data.numInstances();
+            int dims = features.length;
+            columns = new double[dims][n];
+            for (int r = 0; r < n; r++) {
+                for (int k = 0; k < dims; k++) {
+                    columns[k][r] = matrix[r * dims + k];
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * KD-tree over the matrix (requires a dataset without missing values)
+     */
+    public synchronized KDTreeIndex kdTree() {
+        if (kdTree == null) {
+            long startTime = System.currentTimeMillis();
+            kdTree = new KDTreeIndex(matrix, data.numInstances(), features.length);
+            System.out.println("  Index built in " + (System.currentTimeMillis() - startTime) + " ms");
+        }
+        return kdTree;
+    }
+
+    /**
+     * Original side of the blocked distance kernel
+     */
+    public synchronized DistanceKernel.Reference kernelReference() {
+        if (kernelReference == null) {
+            kernelReference = new DistanceKernel.Reference(matrix, data.numInstances(), features.length);
+        }
+        return kernelReference;
+    }
+
+    /**
+     * Random-projection forest over the matrix (rebuilt when asked for other parameters)
+     */
+    public synchronized RandomProjectionForest projectionForest(int numTrees, int leafSize, long seed) {
+        if (projectionForest == null || projectionForest.numTrees() != numTrees
+                || projectionForest.leafSize() != leafSize || projectionForestSeed != seed) {
+            long startTime = System.currentTimeMillis();
+            projectionForest = new RandomProjectionForest(matrix, data.numInstances(), features.length,
+                    numTrees, leafSize, seed);
+            projectionForestSeed = seed;
+            System.out.println("  Projection forest built in " + (System.currentTimeMillis() - startTime) + " ms");
+        }
+        return projectionForest;
+    }
+}
@@ -18,7 +18,6 @@ import weka.core.DenseInstance;
 import weka.core.EuclideanDistance;
 import weka.core.Instance;
 import weka.core.Instances;
-import weka.core.converters.ArffLoader;
 import weka.core.converters.CSVLoader;
 import weka.core.converters.CSVSaver;
 import weka.filters.Filter;
@@ -506,31 +505,53 @@ public class SyntheticDataGenerationWithParameterExploration {
     }
     
     /**
-     * Perform VWC clustering with specified parameters
+     * Perform VWC clustering with specified parameters, using the engine
+     * configured by privacyguard.engine ("weka" or "native")
      */
     public static ClusteringResults performVWCClusteringWithParams(Instances singleFeatureData, 
                                                                   int maxClusterSize) throws Exception {
-        // Instantiate the VWC class with the single-feature dataset
-        VWC myV = new VWC(singleFeatureData);
-        myV.setDistanceFunction(new EuclideanDistance(singleFeatureData));
-
-        // Set parameters - beta = 30% of maxClusterSize (rounded)
-        // s_Max=5 -> beta=2, s_Max=10 -> beta=3, s_Max=15 -> beta=5, etc.
-        int betaInstances = (int) Math.round(maxClusterSize * 0.30);
-        if (betaInstances < 2) betaInstances = 2; // minimum beta = 2
-        myV.setBeta(betaInstances);
-        myV.setMaxClusterSize(maxClusterSize);
-
-        // Perform the clustering
-        myV.buildClusterer(singleFeatureData);
-
-        // Get cluster assignments
-        int[] clusterAssignments = myV.getAssignments();
+        return performVWCClusteringWithParams(singleFeatureData, maxClusterSize,
+                ConfigLoader.getProperty("privacyguard.engine", PrivacyGuardGenerator.ENGINE_WEKA));
+    }
+
+    /**
+     * Perform VWC clustering with specified parameters and engine
+     * ("native" falls back to wekaknnvwc.VWC when the feature has missing values)
+     */
+    public static ClusteringResults performVWCClusteringWithParams(Instances singleFeatureData,
+                                                                  int maxClusterSize, String engine) throws Exception {
+        int[] clusterAssignments;
+        int numClusters;
+
+        double[] column = singleFeatureData.attributeToDoubleArray(0);
+        if (PrivacyGuardGenerator.ENGINE_NATIVE.equals(engine) && !hasMissingValues(column)) {
+            VWC1D nativeVWC = new VWC1D(maxClusterSize);
+            clusterAssignments = nativeVWC.cluster(column);
+            numClusters = nativeVWC.numberOfClusters();
+        } else {
+            // Instantiate the VWC class with the single-feature dataset
+            VWC myV = new VWC(singleFeatureData);
+            myV.setDistanceFunction(new EuclideanDistance(singleFeatureData));
+
+            // Set parameters - beta = 30% of maxClusterSize (rounded)
+            // s_Max=5 -> beta=2, s_Max=10 -> beta=3, s_Max=15 -> beta=5, etc.
+            int betaInstances = (int) Math.round(maxClusterSize * 0.30);
+            if (betaInstances < 2) betaInstances = 2; // minimum beta = 2
+            myV.setBeta(betaInstances);
+            myV.setMaxClusterSize(maxClusterSize);
+
+            // Perform the clustering
+            myV.buildClusterer(singleFeatureData);
+
+            // Get cluster assignments
+            clusterAssignments = myV.getAssignments();
+            numClusters = myV.numberOfClusters();
+        }
         
         // Calculate clustering statistics
         ClusteringResults results = new ClusteringResults();
         results.assignments = clusterAssignments;
-        results.numClusters = myV.numberOfClusters();
+        results.numClusters = numClusters;
         
         // Group values by cluster
         for (int i = 0; i < clusterAssignments.length; i++) {
@@ -556,6 +577,13 @@ public class SyntheticDataGenerationWithParameterExploration {
         return results;
     }
 
+    private static boolean hasMissingValues(double[] values) {
+        for (double value : values) {
+            if (Double.isNaN(value)) return true;
+        }
+        return false;
+    }
+
     
     public static void generateParameterExplorationReport(String datasetName, String outputDirectory) throws IOException {
         String reportFileName = outputDirectory + File.separator + 
@@ -1089,10 +1117,8 @@ public class SyntheticDataGenerationWithParameterExploration {
         Instances data;
 
         if (filePath.toLowerCase().endsWith(".arff")) {
-            // Load ARFF file
-            ArffLoader loader = new ArffLoader();
-            loader.setSource(file);
-            data = loader.getDataSet();
+            // Load ARFF file (parallel columnar parser)
+            data = FastArffLoader.loadDataset(filePath);
             System.out.println("Loaded ARFF dataset: " + filePath);
         } else {
             // Load CSV file
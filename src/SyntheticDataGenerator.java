@@ -1,8 +1,6 @@
 package privacyguard;
 
 import weka.core.Instances;
-import weka.core.converters.ConverterUtils.DataSource;
-import weka.core.converters.ArffSaver;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Normalize;
 
@@ -168,6 +166,11 @@ public class SyntheticDataGenerator {
             // Generate synthetic data from complete merged dataset
             String inputFile = ORIGINAL_DIR + datasetPrefix + ".arff";
             String outputFile = OUTPUT_DIR + methodFolder + "/" + datasetPrefix + "_synthetic.arff";
+            if (ConfigLoader.getBooleanProperty("output.compress")) {
+                // Readers prefer an uncompressed file, so drop one left by an earlier run
+                new File(outputFile).delete();
+                outputFile += ".gz";
+            }
 
             System.out.println("  Processing complete dataset...");
             GenerationInfo genInfo = generateSynthetic(inputFile, outputFile, m, datasetName, clusterSize);
@@ -204,6 +207,11 @@ public class SyntheticDataGenerator {
         try {
             long startTime = System.currentTimeMillis();
 
+            // PrivacyGuard can run out-of-core, streaming the ARFF instead of loading it
+            if (methodIndex == 0 && ConfigLoader.getBooleanProperty("privacyguard.outOfCore")) {
+                return generatePrivacyGuardOutOfCore(inputFile, outputFile, splitType, clusterSize, startTime);
+            }
+
             // Load original data
             Instances originalData = loadDataset(inputFile);
             originalData.setClassIndex(originalData.numAttributes() - 1);
@@ -214,6 +222,9 @@ public class SyntheticDataGenerator {
             switch (methodIndex) {
                 case 0: // PrivacyGuard (VWC)
                     PrivacyGuardGenerator privacyGuard = new PrivacyGuardGenerator(clusterSize, 0.5);
+                    privacyGuard.setNumThreads(ConfigLoader.getIntProperty("privacyguard.threads", 1));
+                    privacyGuard.setEngine(ConfigLoader.getProperty("privacyguard.engine", PrivacyGuardGenerator.ENGINE_WEKA));
+                    privacyGuard.setLowCardinalityThreshold(ConfigLoader.getIntProperty("privacyguard.lowCardinality", 16));
                     syntheticData = privacyGuard.generateSyntheticData(originalData);
                     break;
 
@@ -224,12 +235,21 @@ public class SyntheticDataGenerator {
 
                 case 2: // k-means
                     KMeansBaseline kmeans = new KMeansBaseline(1000);
+                    kmeans.setEngine(ConfigLoader.getProperty("kmeans.engine", KMeansBaseline.ENGINE_WEKA));
                     syntheticData = kmeans.generateSyntheticData(originalData);
                     break;
 
                 case 3: // k-anonymity
                     KAnonymity kanonymity = new KAnonymity(5);
-                    syntheticData = kanonymity.generateSyntheticData(originalData);
+                    String kSweep = ConfigLoader.getProperty("kanonymity.sweep", "").trim();
+                    if (kSweep.isEmpty()) {
+                        syntheticData = kanonymity.generateSyntheticData(originalData);
+                    } else {
+                        // One sort serves the dataset and the utility of every swept k
+                        KAnonymity.Sweep sweep = kanonymity.prepareSweep(originalData);
+                        syntheticData = sweep.generateSyntheticData(5);
+                        KAnonymity.printSummaries(sweep.summarize(KAnonymity.parseKValues(kSweep)));
+                    }
                     break;
 
                 case 4: // Laplace DP
@@ -274,6 +294,30 @@ public class SyntheticDataGenerator {
         }
     }
 
+    /**
+     * Generate PrivacyGuard synthetic data with bounded memory (see OutOfCorePrivacyGuard)
+     */
+    private static GenerationInfo generatePrivacyGuardOutOfCore(String inputFile, String outputFile, String splitType,
+                                                               int clusterSize, long startTime) throws Exception {
+        long budget = ConfigLoader.getIntProperty("privacyguard.memoryBudgetMB", 512) * 1024L * 1024L;
+        System.out.println("  Out-of-core mode (memory budget: " + (budget / (1024 * 1024)) + " MB)");
+
+        OutOfCorePrivacyGuard generator = new OutOfCorePrivacyGuard(clusterSize, budget);
+        String tempDir = ConfigLoader.getProperty("privacyguard.tempDir", "");
+        if (!tempDir.isEmpty()) {
+            generator.setTempDirectory(tempDir);
+        }
+        OutOfCorePrivacyGuard.GenerationResult result = generator.generate(inputFile, outputFile);
+
+        double elapsedSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        System.out.println("    Instances: " + result.numInstances +
+                         " | Time: " + String.format("%.2f", elapsedSeconds) + "s");
+        System.out.println("    Saved: " + outputFile);
+
+        return new GenerationInfo(splitType, result.numInstances, result.numClasses, result.numFeatures,
+                                elapsedSeconds, outputFile, result.clusterInfo());
+    }
+
     /**
      * Calculate cluster statistics for PrivacyGuard (VWC) method
      */
@@ -315,22 +359,15 @@ public class SyntheticDataGenerator {
      * Load dataset from file (auto-detects format)
      */
     private static Instances loadDataset(String filePath) throws Exception {
-        DataSource source = new DataSource(filePath);
-        return source.getDataSet();
+        return DatasetCache.load(filePath);
     }
 
     /**
      * Save dataset to ARFF file
      */
     private static void saveDataset(Instances data, String filePath) throws Exception {
-        // Ensure output directory exists
-        File outputFile = new File(filePath);
-        outputFile.getParentFile().mkdirs();
-
-        ArffSaver saver = new ArffSaver();
-        saver.setInstances(data);
-        saver.setFile(outputFile);
-        saver.writeBatch();
+        // Parallel writer (creates the output directory; gzip for .arff.gz)
+        FastArffWriter.write(data, filePath);
     }
 
     /**
@@ -394,7 +431,10 @@ public class SyntheticDataGenerator {
         switch (methodIndex) {
             case 0: return "maxClusterSize=" + clusterSize + ", betaPercentage=0.5%";
             case 1: return "numBins=10";
-            case 2: return "k=1000";
+            case 2: {
+                String engine = ConfigLoader.getProperty("kmeans.engine", KMeansBaseline.ENGINE_WEKA);
+                return KMeansBaseline.ENGINE_WEKA.equals(engine) ? "k=1000" : "k=1000, engine=" + engine;
+            }
             case 3: return "k=5";
             case 4: return "epsilon=1.0";
             default: return "unknown";
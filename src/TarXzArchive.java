@@ -0,0 +1,207 @@
+package privacyguard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+/**
+ * Streaming Reader for the .tar.xz Dataset Archives
+ *
+ * The datasets ship as datasets/Original/<name>.tar.xz. This reader streams a
+ * file out of such an archive without extracting it to disk. Decompression runs
+ * in an "xz -dc" process (weka.jar bundles commons-compress for the tar format,
+ * but not the XZ codec it needs); a background thread drains the process into a
+ * bounded queue of blocks, so decompression overlaps with whatever consumes the
+ * entry stream while memory use stays bounded. A second thread collects xz's
+ * error output, so xz never blocks on a full stderr pipe.
+ *
+ * Requires the xz command on the PATH; without it the constructor fails with
+ * an IOException that says so (the archive can then be extracted manually).
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class TarXzArchive implements Closeable {
+
+    public static final String EXTENSION = ".tar.xz";
+
+    private static final int BLOCK_BYTES = 1 << 20;
+    private static final int QUEUE_BLOCKS = 16;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final String archivePath;
+    private final Process process;
+    private final Thread pump;
+    private final Thread errorReader;
+    private final ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+    private final TarArchiveInputStream tar;
+    private volatile IOException pumpError;
+
+    /**
+     * Whether a path names a .tar.xz archive
+     */
+    public static boolean isArchive(String path) {
+        return path.toLowerCase().endsWith(EXTENSION);
+    }
+
+    /**
+     * Archive that ships a given ARFF file (<name>.arff -> <name>.tar.xz)
+     */
+    public static String archiveFor(String arffPath) {
+        String stem = arffPath.substring(0, arffPath.length() - ".arff".length());
+        return stem + EXTENSION;
+    }
+
+    /**
+     * Start decompressing an archive
+     */
+    public TarXzArchive(String archivePath) throws IOException {
+        this.archivePath = archivePath;
+        try {
+            this.process = new ProcessBuilder("xz", "-dc", "--", new File(archivePath).getPath()).start();
+        } catch (IOException e) {
+            throw new IOException("Cannot decompress " + archivePath
+                    + ": the 'xz' command is not available (extract the archive manually)", e);
+        }
+        process.getOutputStream().close();
+
+        this.errorReader = new Thread(this::readErrorOutput, "xz-stderr");
+        errorReader.setDaemon(true);
+        errorReader.start();
+
+        this.pump = new Thread(this::pumpDecompressedBlocks, "xz-reader");
+        pump.setDaemon(true);
+        pump.start();
+
+        this.tar = new TarArchiveInputStream(new QueueInputStream());
+    }
+
+    /**
+     * Position the archive at the first regular file whose name ends with the
+     * given suffix (e.g. ".arff") and return a stream over its content.
+     * The stream stays valid until the archive is closed.
+     */
+    public InputStream openEntry(String suffix) throws IOException {
+        TarArchiveEntry entry;
+        while ((entry = tar.getNextTarEntry()) != null) {
+            if (entry.isFile() && entry.getName().toLowerCase().endsWith(suffix)) {
+                return tar;
+            }
+        }
+        throw new IOException("No " + suffix + " file in " + archivePath);
+    }
+
+    @Override
+    public void close() {
+        process.destroy();
+        pump.interrupt();
+    }
+
+    /**
+     * Background thread: process output -> queue, ending with END_OF_STREAM
+     */
+    private void pumpDecompressedBlocks() {
+        try (InputStream in = process.getInputStream()) {
+            while (true) {
+                byte[] block = new byte[BLOCK_BYTES];
+                int length = in.readNBytes(block, 0, BLOCK_BYTES);
+                if (length > 0) {
+                    queue.put(length == BLOCK_BYTES ? block : Arrays.copyOf(block, length));
+                }
+                if (length < BLOCK_BYTES) {
+                    break;
+                }
+            }
+
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                errorReader.join();
+                String message = new String(errorOutput.toByteArray(), StandardCharsets.UTF_8).trim();
+                pumpError = new IOException("xz failed on " + archivePath + " (exit " + exitCode + "): " + message);
+            }
+        } catch (InterruptedException e) {
+            return;
+        } catch (IOException e) {
+            pumpError = e;
+        }
+
+        try {
+            queue.put(END_OF_STREAM);
+        } catch (InterruptedException e) {
+            // Closed while the consumer was not reading; nobody is waiting for the end
+        }
+    }
+
+    /**
+     * Background thread: collect the process's error output until it exits
+     */
+    private void readErrorOutput() {
+        try (InputStream in = process.getErrorStream()) {
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                errorOutput.write(buffer, 0, length);
+            }
+        } catch (IOException e) {
+            // The process was destroyed; its error output is not needed
+        }
+    }
+
+    /**
+     * Decompressed bytes, read from the queue filled by the background thread
+     */
+    private class QueueInputStream extends InputStream {
+        private byte[] block = new byte[0];
+        private int position;
+        private boolean finished;
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return block[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(length, block.length - position);
+            System.arraycopy(block, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        private boolean fill() throws IOException {
+            while (!finished && position == block.length) {
+                try {
+                    block = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading " + archivePath, e);
+                }
+                position = 0;
+                if (block == END_OF_STREAM) {
+                    finished = true;
+                }
+            }
+            if (finished && pumpError != null) {
+                throw pumpError;
+            }
+            return !finished;
+        }
+    }
+}
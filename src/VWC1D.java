@@ -0,0 +1,834 @@
+package privacyguard;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+/**
+ * Native 1-D Variable-Width Clustering (VWC) Engine
+ *
+ * Specialised re-implementation of wekaknnvwc.VWC for a single numeric feature.
+ * It works on a primitive double[] column instead of a one-column Weka Instances,
+ * and replaces the linear cluster scans and BallTree searches with rank lookups
+ * over the sorted distinct values. No objects are allocated per row.
+ *
+ * The clustering follows VWC step by step:
+ * 1. Width: mean normalised distance of a random sample of beta = 10% of the
+ *    values to the sample mean (VWC overrides setBeta() with this same rule)
+ * 2. Leader pass in row order: a row joins the first cluster (creation order)
+ *    whose centroid lies within the width, otherwise it starts a new cluster
+ * 3. Partitioning: clusters larger than maxClusterSize are re-clustered with the
+ *    leader pass, using their mean member distance as width, until no cluster
+ *    can be split further
+ * 4. Every value is assigned to its nearest centroid; cluster IDs follow the
+ *    final cluster order, as in VWC.getAssignments()
+ *
+ * Identical values always end up in the same cluster, so the passes run over
+ * the distinct values only (in order of first occurrence), each weighted by
+ * its number of rows. Columns dominated by duplicates (ports, flags, protocol
+ * codes) therefore cost little more than the initial sort.
+ *
+ * Distances use the same range normalisation as weka.core.EuclideanDistance,
+ * so given the same width sample the clusters and centroids match VWC. The only
+ * difference is a value lying halfway between two centroids (up to rounding):
+ * it goes to the lower one here, while VWC takes whichever its BallTree
+ * reports first.
+ * Missing values are not supported.
+ *
+ * Complexity: O(n log n) for the sort, plus O(log c) per distinct value and
+ * pass, where c is the number of distinct values. clusterDistinct() accepts a
+ * column that is already reduced to distinct values (e.g. by an external sort)
+ * and only needs O(c) memory; the rows are then read back through RowRanks.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class VWC1D {
+
+    private int maxClusterSize;
+    private Random random;
+
+    // Normalisation (same as EuclideanDistance ranges)
+    private double rangeMin;
+    private double rangeWidth;
+
+    // Per-row state
+    private int[] rank;             // index of the row's value in sortedDistinct (in-memory columns)
+    private RowRanks rowRanks;      // row-order access to the ranks
+    private int numRows;
+
+    // Per distinct value (indexed by rank)
+    private double[] sortedDistinct;     // normalised values, ascending
+    private double[] firstValue;         // original value at its first occurrence
+    private int[] weight;                // number of rows holding the value
+    private int[] firstOccurrenceOrder;  // ranks in order of first occurrence
+    private int[] slotOfRank;            // cluster currently holding the value
+    private double[] distanceOfRank;     // distance to that cluster's centroid
+
+    // Cluster slots (structure of arrays); a slot is never reused
+    private int slotCount;
+    private int[] centroidRank;
+    private int[] clusterSize;      // rows in the cluster
+    private int[] memberCount;      // distinct values in the cluster
+    private int[][] members;        // member ranks, in order of first occurrence
+    private double[] sumDistances;
+    private boolean[] partitionable;
+
+    // Current cluster list (order defines cluster IDs)
+    private int[] clusterList;
+    private int clusterListSize;
+
+    // Leader-pass lookup: centroid ranks present, and the slot owning each rank
+    private RankSet centroidRanks;
+    private int[] slotAtRank;
+
+    // Results
+    private double fixedWidth;
+    private int[] assignments;
+    private int[] clusterOfRank;
+    private double[] centroids;
+
+    /**
+     * Row-order access to the rank of every row, for columns kept outside the heap
+     */
+    public interface RowRanks {
+        /** Call 'action' with the rank of every row, in row order */
+        void forEach(IntConsumer action);
+    }
+
+    /**
+     * Constructor
+     * @param maxClusterSize Maximum cluster size (s_max); -1 = 10% of the data, as in VWC
+     */
+    public VWC1D(int maxClusterSize) {
+        this.maxClusterSize = maxClusterSize;
+        this.random = new Random();
+    }
+
+    /**
+     * Fix the seed of the width sample (VWC itself samples with Math.random())
+     */
+    public void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Cluster a column, drawing the width sample as VWC does
+     *
+     * @param values Feature values (no missing values)
+     * @return Cluster assignment per value
+     */
+    public int[] cluster(double[] values) {
+        int n = values.length;
+        int beta = (int) (n * 0.1);
+        if (beta <= 0 || beta > n) {
+            throw new IllegalArgumentException("Number of random instances must be positive and less than total instances");
+        }
+
+        prepare(values);
+
+        // Mean of beta randomly drawn values (with replacement)
+        double[] sample = new double[beta];
+        double sum = 0.0;
+        for (int b = 0; b < beta; b++) {
+            sample[b] = values[(int) (random.nextDouble() * n)];
+            sum += sample[b];
+        }
+        double sampleMean = sum / beta;
+
+        // Average distance of the sample to its mean
+        double normMean = normalise(sampleMean);
+        double totalDistance = 0.0;
+        for (int b = 0; b < beta; b++) {
+            totalDistance += distance(normMean, normalise(sample[b]));
+        }
+
+        return clusterPrepared(totalDistance / beta);
+    }
+
+    /**
+     * Cluster a column with an explicit initial width (normalised units).
+     * Useful to reproduce a VWC run whose width is already known.
+     */
+    public int[] cluster(double[] values, double fixedWidth) {
+        prepare(values);
+        return clusterPrepared(fixedWidth);
+    }
+
+    /**
+     * Cluster a column that has already been reduced to its distinct values.
+     * The width sample is drawn from the value weights (the same distribution
+     * as VWC's uniform draw over rows).
+     *
+     * @param distinctValues Distinct values in ascending order (no missing values)
+     * @param weights Number of rows holding each value
+     * @param firstRows Row of the first occurrence of each value
+     * @param rows Index into distinctValues of every row, in row order
+     * @return Cluster ID of every distinct value
+     */
+    public int[] clusterDistinct(double[] distinctValues, int[] weights, long[] firstRows, RowRanks rows) {
+        long total = 0;
+        for (int w : weights) {
+            total += w;
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("VWC1D supports at most " + Integer.MAX_VALUE + " rows");
+        }
+        int n = (int) total;
+        int beta = (int) (n * 0.1);
+        if (beta <= 0 || beta > n) {
+            throw new IllegalArgumentException("Number of random instances must be positive and less than total instances");
+        }
+
+        int[] rankOfValue = prepareDistinct(distinctValues, weights, firstRows, n);
+        this.rowRanks = action -> rows.forEach(v -> action.accept(rankOfValue[v]));
+
+        // Draw beta rows (with replacement) through the cumulative weights
+        long[] cumulative = new long[weights.length];
+        long running = 0;
+        for (int v = 0; v < weights.length; v++) {
+            running += weights[v];
+            cumulative[v] = running;
+        }
+        int[] hits = new int[weights.length];
+        for (int b = 0; b < beta; b++) {
+            long row = (long) (random.nextDouble() * n);
+            int pos = Arrays.binarySearch(cumulative, row + 1);
+            hits[(pos >= 0) ? pos : -pos - 1]++;
+        }
+
+        double sum = 0.0;
+        for (int v = 0; v < hits.length; v++) {
+            sum += hits[v] * distinctValues[v];
+        }
+        double normMean = normalise(sum / beta);
+        double totalDistance = 0.0;
+        for (int v = 0; v < hits.length; v++) {
+            if (hits[v] > 0) {
+                totalDistance += hits[v] * distance(normMean, normalise(distinctValues[v]));
+            }
+        }
+
+        clusterPrepared(totalDistance / beta);
+
+        int[] result = new int[distinctValues.length];
+        for (int v = 0; v < distinctValues.length; v++) {
+            result[v] = clusterOfRank[rankOfValue[v]];
+        }
+        return result;
+    }
+
+    /**
+     * Get the cluster assignments of the last run
+     */
+    public int[] getAssignments() {
+        return assignments;
+    }
+
+    /**
+     * Get the number of clusters of the last run
+     */
+    public int numberOfClusters() {
+        return (centroids == null) ? 0 : centroids.length;
+    }
+
+    /**
+     * Get the centroid value (original units) of every cluster ID
+     */
+    public double[] getCentroids() {
+        return centroids;
+    }
+
+    /**
+     * Get the initial width used by the last run (normalised units)
+     */
+    public double getFixedWidth() {
+        return fixedWidth;
+    }
+
+    // ==================== LOW-CARDINALITY SHORTCUTS ====================
+
+    /**
+     * Count the distinct values of a column, stopping as soon as the count
+     * exceeds 'limit' (returns limit + 1 in that case). O(n * limit).
+     */
+    public static int countDistinct(double[] values, int limit) {
+        double[] seen = new double[limit + 1];
+        int count = 0;
+        for (double v : values) {
+            boolean found = false;
+            for (int j = 0; j < count; j++) {
+                if (seen[j] == v) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                if (count == limit) {
+                    return limit + 1;
+                }
+                seen[count++] = v;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Direct assignment for a constant or binary column: the first value seen
+     * gets cluster 0 and the other value cluster 1.
+     *
+     * This is exactly what VWC produces: the width never reaches the distance
+     * between two values (the mean sample distance is at most 0.5 after
+     * normalisation), so each value forms its own cluster, and a cluster
+     * holding a single value cannot be partitioned.
+     */
+    public static int[] assignBinary(double[] values) {
+        int[] result = new int[values.length];
+        if (values.length == 0) {
+            return result;
+        }
+        double first = values[0];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (values[i] == first) ? 0 : 1;
+        }
+        return result;
+    }
+
+    /**
+     * Centroids matching assignBinary(): the first value, then the other value (if any)
+     */
+    public static double[] binaryCentroids(double[] values) {
+        if (values.length == 0) {
+            return new double[0];
+        }
+        for (double v : values) {
+            if (v != values[0]) {
+                return new double[] {values[0], v};
+            }
+        }
+        return new double[] {values[0]};
+    }
+
+    // ==================== CLUSTERING STEPS ====================
+
+    /**
+     * Normalise the column, collapse it to weighted distinct values and rank
+     * every row among them
+     */
+    private void prepare(double[] values) {
+        int n = values.length;
+
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            if (Double.isNaN(value)) {
+                throw new IllegalArgumentException("VWC1D does not support missing values");
+            }
+            double v = value + 0.0;   // -0.0 becomes 0.0, so both zeros are one value
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+        rangeMin = min;
+        rangeWidth = max - min;
+
+        // Sorted distinct normalised values
+        double[] sorted = new double[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = normalise(values[i]);
+        }
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        sortedDistinct = Arrays.copyOf(sorted, distinct);
+
+        // Rank of every row, weight and first occurrence of every distinct value
+        rank = new int[n];
+        weight = new int[distinct];
+        firstValue = new double[distinct];
+        firstOccurrenceOrder = new int[distinct];
+        int seen = 0;
+        for (int i = 0; i < n; i++) {
+            int r = Arrays.binarySearch(sortedDistinct, normalise(values[i]));
+            rank[i] = r;
+            if (weight[r]++ == 0) {
+                firstValue[r] = values[i];
+                firstOccurrenceOrder[seen++] = r;
+            }
+        }
+
+        final int[] ranks = rank;
+        rowRanks = action -> {
+            for (int r : ranks) {
+                action.accept(r);
+            }
+        };
+        numRows = n;
+        allocateClusterState(distinct);
+    }
+
+    /**
+     * Same state as prepare(), built from distinct values that may have been
+     * produced outside the heap. Values that normalise to the same number are
+     * merged, as prepare() would.
+     *
+     * @return Rank of every entry of distinctValues
+     */
+    private int[] prepareDistinct(double[] distinctValues, int[] weights, long[] firstRows, int n) {
+        int count = distinctValues.length;
+        rangeMin = distinctValues[0];
+        rangeWidth = distinctValues[count - 1] - distinctValues[0];
+
+        int[] rankOfValue = new int[count];
+        double[] norm = new double[count];
+        int distinct = 0;
+        for (int v = 0; v < count; v++) {
+            double x = normalise(distinctValues[v]);
+            if (distinct == 0 || x != norm[distinct - 1]) {
+                norm[distinct++] = x;
+            }
+            rankOfValue[v] = distinct - 1;
+        }
+        sortedDistinct = Arrays.copyOf(norm, distinct);
+
+        // Weight and first occurrence per rank
+        weight = new int[distinct];
+        firstValue = new double[distinct];
+        long[] firstRowOfRank = new long[distinct];
+        Arrays.fill(firstRowOfRank, Long.MAX_VALUE);
+        for (int v = 0; v < count; v++) {
+            int r = rankOfValue[v];
+            weight[r] += weights[v];
+            if (firstRows[v] < firstRowOfRank[r]) {
+                firstRowOfRank[r] = firstRows[v];
+                firstValue[r] = distinctValues[v];
+            }
+        }
+
+        // Ranks ordered by first occurrence (first rows are unique, so sort them directly)
+        long[] sortedFirstRows = firstRowOfRank.clone();
+        Arrays.sort(sortedFirstRows);
+        firstOccurrenceOrder = new int[distinct];
+        for (int r = 0; r < distinct; r++) {
+            firstOccurrenceOrder[Arrays.binarySearch(sortedFirstRows, firstRowOfRank[r])] = r;
+        }
+
+        rank = null;
+        numRows = n;
+        allocateClusterState(distinct);
+        return rankOfValue;
+    }
+
+    private void allocateClusterState(int distinct) {
+        centroidRanks = new RankSet(distinct);
+        slotAtRank = new int[distinct];
+        slotOfRank = new int[distinct];
+        distanceOfRank = new double[distinct];
+
+        int capacity = 16;
+        slotCount = 0;
+        centroidRank = new int[capacity];
+        clusterSize = new int[capacity];
+        memberCount = new int[capacity];
+        members = new int[capacity][];
+        sumDistances = new double[capacity];
+        partitionable = new boolean[capacity];
+    }
+
+    /**
+     * Run leader pass, partitioning and final assignment
+     */
+    private int[] clusterPrepared(double width) {
+        int n = numRows;
+        this.fixedWidth = width;
+        if (maxClusterSize == -1) {
+            maxClusterSize = (int) (n * 0.1);
+        }
+
+        // Leader pass over all distinct values in order of first occurrence
+        int firstSlot = slotCount;
+        for (int r : firstOccurrenceOrder) {
+            leaderStep(r, width, firstSlot);
+        }
+        clearCentroidRanks(firstSlot, slotCount);
+        accumulateDistances(firstSlot);
+
+        clusterList = new int[Math.max(16, slotCount)];
+        clusterListSize = 0;
+        for (int slot = firstSlot; slot < slotCount; slot++) {
+            appendToClusterList(slot);
+        }
+
+        partitionOversizedClusters();
+        assignToNearestCentroid();
+
+        // Drop per-run working state
+        rank = null;
+        rowRanks = null;
+        weight = null;
+        firstValue = null;
+        firstOccurrenceOrder = null;
+        slotOfRank = null;
+        distanceOfRank = null;
+        members = null;
+        centroidRanks = null;
+        slotAtRank = null;
+
+        return assignments;
+    }
+
+    /**
+     * Add one distinct value (with all its rows) to the first cluster (lowest
+     * slot >= firstSlot) whose centroid is within the width, or start a new
+     * cluster with the value as centroid.
+     *
+     * All centroids of one pass are more than 'width' apart, so at most two of
+     * them can be within the width of a value: its nearest neighbours on the
+     * left and right in sorted order.
+     */
+    private void leaderStep(int r, double width, int firstSlot) {
+        int bestSlot = -1;
+        double bestDistance = 0.0;
+
+        int left = centroidRanks.predecessor(r);
+        if (left >= 0) {
+            int slot = slotAtRank[left];
+            double d = distance(sortedDistinct[left], sortedDistinct[r]);
+            if (d <= width) {
+                bestSlot = slot;
+                bestDistance = d;
+            }
+        }
+
+        int right = (left == r) ? -1 : centroidRanks.successor(r);
+        if (right >= 0) {
+            int slot = slotAtRank[right];
+            double d = distance(sortedDistinct[right], sortedDistinct[r]);
+            if (d <= width && (bestSlot == -1 || slot < bestSlot)) {
+                bestSlot = slot;
+                bestDistance = d;
+            }
+        }
+
+        if (bestSlot == -1) {
+            bestSlot = newSlot(r);
+            centroidRanks.add(r);
+            slotAtRank[r] = bestSlot;
+        } else {
+            addMember(bestSlot, r);
+        }
+        slotOfRank[r] = bestSlot;
+        distanceOfRank[r] = bestDistance;
+    }
+
+    /**
+     * Sum the member distances of every cluster created from 'fromSlot' on.
+     *
+     * The sum drives the partition width, and VWC accumulates it row by row in
+     * row order; replaying that order (instead of adding weight * distance)
+     * keeps the floating-point result, and thus every later split, identical.
+     */
+    private void accumulateDistances(int fromSlot) {
+        rowRanks.forEach(r -> {
+            int slot = slotOfRank[r];
+            if (slot >= fromSlot) {
+                sumDistances[slot] += distanceOfRank[r];
+            }
+        });
+    }
+
+    /**
+     * Split oversized clusters until every cluster fits or cannot be split
+     * (mirrors VWC.partitioning: parents are replaced by their sub-clusters,
+     * which are appended at the end of the cluster list)
+     */
+    private void partitionOversizedClusters() {
+        while (hasOversizedCluster()) {
+            int[] snapshot = Arrays.copyOf(clusterList, clusterListSize);
+            boolean[] replaced = new boolean[slotCount];
+            int newListStart = slotCount;
+            boolean anySplit = false;
+
+            for (int slot : snapshot) {
+                if (clusterSize[slot] > maxClusterSize && partitionable[slot]) {
+                    if (partitionCluster(slot)) {
+                        replaced[slot] = true;
+                        anySplit = true;
+                    } else {
+                        partitionable[slot] = false;
+                    }
+                }
+            }
+
+            if (anySplit) {
+                accumulateDistances(newListStart);
+
+                int kept = 0;
+                for (int slot : snapshot) {
+                    if (!replaced[slot]) {
+                        clusterList[kept++] = slot;
+                    } else {
+                        members[slot] = null;
+                    }
+                }
+                clusterListSize = kept;
+                for (int slot = newListStart; slot < slotCount; slot++) {
+                    appendToClusterList(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Leader pass over one cluster's members with its mean member distance as width
+     * @return true if the cluster was split into more than one sub-cluster
+     */
+    private boolean partitionCluster(int parent) {
+        // A single distinct value can never be split
+        if (memberCount[parent] == 1) {
+            return false;
+        }
+
+        double cutoff = sumDistances[parent] / clusterSize[parent];
+        int[] parentMembers = members[parent];
+        int count = memberCount[parent];
+
+        int firstChild = slotCount;
+        for (int m = 0; m < count; m++) {
+            leaderStep(parentMembers[m], cutoff, firstChild);
+        }
+        clearCentroidRanks(firstChild, slotCount);
+
+        if (slotCount - firstChild <= 1) {
+            // Single sub-cluster: discard it, the parent stays as it is
+            for (int m = 0; m < count; m++) {
+                slotOfRank[parentMembers[m]] = parent;
+            }
+            for (int slot = firstChild; slot < slotCount; slot++) {
+                members[slot] = null;
+            }
+            slotCount = firstChild;
+            return false;
+        }
+        return true;
+    }
+
+    private boolean hasOversizedCluster() {
+        for (int i = 0; i < clusterListSize; i++) {
+            int slot = clusterList[i];
+            if (clusterSize[slot] > maxClusterSize && partitionable[slot]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Give every row the ID of its nearest centroid (equivalent to VWC.updateClusters1).
+     * A value exactly halfway between two centroids goes to the lower one;
+     * VWC picks whichever its ball tree returns first, which is not fixed.
+     */
+    private void assignToNearestCentroid() {
+        int k = clusterListSize;
+        double[] centroidNorm = new double[k];
+        centroids = new double[k];
+        for (int id = 0; id < k; id++) {
+            int r = centroidRank[clusterList[id]];
+            centroidNorm[id] = sortedDistinct[r];
+            centroids[id] = firstValue[r];
+        }
+
+        // Centroids in ascending order with their cluster IDs
+        double[] sortedCentroids = centroidNorm.clone();
+        Arrays.sort(sortedCentroids);
+        int[] idAtPosition = new int[k];
+        for (int id = 0; id < k; id++) {
+            idAtPosition[Arrays.binarySearch(sortedCentroids, centroidNorm[id])] = id;
+        }
+
+        // Nearest centroid of every distinct value, found by a merge of both sorted lists
+        int[] idAtRank = new int[sortedDistinct.length];
+        clusterOfRank = idAtRank;
+        int position = 0;
+        for (int r = 0; r < sortedDistinct.length; r++) {
+            double value = sortedDistinct[r];
+            while (position + 1 < k && sortedCentroids[position + 1] <= value) {
+                position++;
+            }
+            int nearest = position;
+            if (position + 1 < k && sortedCentroids[position] < value) {
+                double dLeft = distance(sortedCentroids[position], value);
+                double dRight = distance(sortedCentroids[position + 1], value);
+                if (dRight < dLeft) {
+                    nearest = position + 1;
+                }
+            }
+            idAtRank[r] = idAtPosition[nearest];
+        }
+
+        // Expand back to rows (in-memory columns only)
+        if (rank == null) {
+            assignments = null;
+            return;
+        }
+        int n = rank.length;
+        assignments = new int[n];
+        for (int i = 0; i < n; i++) {
+            assignments[i] = idAtRank[rank[i]];
+        }
+    }
+
+    // ==================== HELPERS ====================
+
+    private int newSlot(int r) {
+        if (slotCount == centroidRank.length) {
+            int capacity = centroidRank.length * 2;
+            centroidRank = Arrays.copyOf(centroidRank, capacity);
+            clusterSize = Arrays.copyOf(clusterSize, capacity);
+            memberCount = Arrays.copyOf(memberCount, capacity);
+            members = Arrays.copyOf(members, capacity);
+            sumDistances = Arrays.copyOf(sumDistances, capacity);
+            partitionable = Arrays.copyOf(partitionable, capacity);
+        }
+        int slot = slotCount++;
+        centroidRank[slot] = r;
+        clusterSize[slot] = 0;
+        memberCount[slot] = 0;
+        members[slot] = new int[4];
+        sumDistances[slot] = 0.0;
+        partitionable[slot] = true;
+        addMember(slot, r);
+        return slot;
+    }
+
+    private void addMember(int slot, int r) {
+        int[] list = members[slot];
+        if (memberCount[slot] == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+            members[slot] = list;
+        }
+        list[memberCount[slot]++] = r;
+        clusterSize[slot] += weight[r];
+    }
+
+    private void appendToClusterList(int slot) {
+        if (clusterListSize == clusterList.length) {
+            clusterList = Arrays.copyOf(clusterList, clusterList.length * 2);
+        }
+        clusterList[clusterListSize++] = slot;
+    }
+
+    private void clearCentroidRanks(int fromSlot, int toSlot) {
+        for (int slot = fromSlot; slot < toSlot; slot++) {
+            centroidRanks.remove(centroidRank[slot]);
+        }
+    }
+
+    /**
+     * Range normalisation, as in NormalizableDistance.norm(). Never returns
+     * -0.0: the distinct values are compared with != but looked up with
+     * Arrays.binarySearch, which orders -0.0 before 0.0.
+     */
+    private double normalise(double value) {
+        if (rangeWidth == 0) {
+            return 0;
+        }
+        return (value - rangeMin) / rangeWidth + 0.0;
+    }
+
+    /**
+     * 1-D Euclidean distance between two normalised values, as computed by
+     * EuclideanDistance (square, then square root)
+     */
+    private static double distance(double a, double b) {
+        double diff = a - b;
+        return Math.sqrt(diff * diff);
+    }
+
+    /**
+     * Ordered set of ranks in [0, size) with predecessor/successor queries,
+     * stored as a hierarchy of 64-bit words (O(log64 size) per operation)
+     */
+    private static final class RankSet {
+        private final long[][] levels;
+
+        RankSet(int size) {
+            int numLevels = 1;
+            for (int words = (size + 63) >>> 6; words > 1; words = (words + 63) >>> 6) {
+                numLevels++;
+            }
+            levels = new long[numLevels][];
+            int words = Math.max(1, (size + 63) >>> 6);
+            for (int level = 0; level < numLevels; level++) {
+                levels[level] = new long[words];
+                words = (words + 63) >>> 6;
+            }
+        }
+
+        void add(int index) {
+            for (long[] level : levels) {
+                level[index >>> 6] |= 1L << (index & 63);
+                index >>>= 6;
+            }
+        }
+
+        void remove(int index) {
+            for (long[] level : levels) {
+                int word = index >>> 6;
+                level[word] &= ~(1L << (index & 63));
+                if (level[word] != 0) {
+                    return;
+                }
+                index = word;
+            }
+        }
+
+        /** Largest member <= index, or -1 */
+        int predecessor(int index) {
+            int level = 0;
+            while (true) {
+                if (index < 0 || level == levels.length) {
+                    return -1;
+                }
+                int word = index >>> 6;
+                long bits = levels[level][word] & (-1L >>> (63 - (index & 63)));
+                if (bits != 0) {
+                    index = (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+                    break;
+                }
+                index = word - 1;
+                level++;
+            }
+            while (level > 0) {
+                level--;
+                index = (index << 6) + 63 - Long.numberOfLeadingZeros(levels[level][index]);
+            }
+            return index;
+        }
+
+        /** Smallest member >= index, or -1 */
+        int successor(int index) {
+            int level = 0;
+            while (true) {
+                if (level == levels.length || (index >>> 6) >= levels[level].length) {
+                    return -1;
+                }
+                int word = index >>> 6;
+                long bits = levels[level][word] & (-1L << (index & 63));
+                if (bits != 0) {
+                    index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    break;
+                }
+                index = word + 1;
+                level++;
+            }
+            while (level > 0) {
+                level--;
+                index = (index << 6) + Long.numberOfTrailingZeros(levels[level][index]);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package privacyguard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import weka.clusterers.Clusterer;
+import weka.core.DistanceFunction;
+import weka.core.EuclideanDistance;
+import weka.core.Instances;
+
+/**
+ * Re-entrant VWC Clustering Context
+ *
+ * wekaknnvwc keeps its working state in static fields (VWC.allDistances,
+ * Cluster.data, Cluster.distanceFunction and Cluster.counter), so two VWC runs
+ * sharing one class loader overwrite each other's state. A context loads its own
+ * copy of the wekaknnvwc classes through a private class loader, which gives every
+ * context an independent set of those statics while Weka itself stays shared.
+ *
+ * A context can be reused for any number of runs, but only by one thread at a time.
+ * Use acquire()/release() to borrow contexts from the process-wide pool.
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class VWCContext {
+
+    private static final String VWC_PACKAGE = "wekaknnvwc.";
+
+    // Idle contexts kept for reuse, so each worker thread loads the classes only once
+    private static final ConcurrentLinkedQueue<VWCContext> POOL = new ConcurrentLinkedQueue<>();
+
+    private final Constructor<?> vwcConstructor;
+    private final Method setDistanceFunction;
+    private final Method setBeta;
+    private final Method setMaxClusterSize;
+    private final Method getAssignments;
+    private final Method getClusterCentroids;
+
+    /**
+     * Create a context with its own copy of the wekaknnvwc classes
+     */
+    public VWCContext() throws Exception {
+        ClassLoader loader = new IsolatingClassLoader(VWCContext.class.getClassLoader());
+        Class<?> vwcClass = loader.loadClass(VWC_PACKAGE + "VWC");
+
+        this.vwcConstructor = vwcClass.getConstructor(Instances.class);
+        this.setDistanceFunction = vwcClass.getMethod("setDistanceFunction", DistanceFunction.class);
+        this.setBeta = vwcClass.getMethod("setBeta", int.class);
+        this.setMaxClusterSize = vwcClass.getMethod("setMaxClusterSize", int.class);
+        this.getAssignments = vwcClass.getMethod("getAssignments");
+        this.getClusterCentroids = vwcClass.getMethod("getClusterCentroids");
+    }
+
+    /**
+     * Borrow a context from the pool (creates one if none is idle)
+     */
+    public static VWCContext acquire() throws Exception {
+        VWCContext context = POOL.poll();
+        return (context != null) ? context : new VWCContext();
+    }
+
+    /**
+     * Return a context to the pool once the calling thread is done with it
+     */
+    public static void release(VWCContext context) {
+        if (context != null) {
+            POOL.offer(context);
+        }
+    }
+
+    /**
+     * Run VWC on a single-feature dataset, exactly as PrivacyGuardGenerator does
+     * with a directly constructed wekaknnvwc.VWC
+     *
+     * @param singleFeatureData One-column dataset (no class attribute)
+     * @param beta Number of beta instances
+     * @param maxClusterSize Maximum cluster size (s_max)
+     * @return Cluster assignment per instance, with the centroid of every cluster
+     */
+    public PrivacyGuardGenerator.FeatureClusters cluster(Instances singleFeatureData, int beta,
+                                                         int maxClusterSize) throws Exception {
+        try {
+            Clusterer vwc = (Clusterer) vwcConstructor.newInstance(singleFeatureData);
+            setDistanceFunction.invoke(vwc, new EuclideanDistance(singleFeatureData));
+            setBeta.invoke(vwc, beta);
+            setMaxClusterSize.invoke(vwc, maxClusterSize);
+
+            vwc.buildClusterer(singleFeatureData);
+
+            int[] assignments = (int[]) getAssignments.invoke(vwc);
+            Instances centroids = (Instances) getClusterCentroids.invoke(vwc);
+            return new PrivacyGuardGenerator.FeatureClusters(assignments,
+                    PrivacyGuardGenerator.centroidValues(centroids));
+        } catch (InvocationTargetException e) {
+            // Surface the exception VWC itself threw
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Child-first class loader for the wekaknnvwc package only.
+     * Everything else (Weka, the JDK, privacyguard) is delegated to the parent,
+     * so the isolated VWC still works with the shared Instances/DistanceFunction types.
+     */
+    private static class IsolatingClassLoader extends ClassLoader {
+
+        IsolatingClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(VWC_PACKAGE)) {
+                return super.loadClass(name, resolve);
+            }
+
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    String resource = name.replace('.', '/') + ".class";
+                    try (InputStream in = getParent().getResourceAsStream(resource)) {
+                        if (in == null) {
+                            throw new ClassNotFoundException(name);
+                        }
+                        byte[] bytes = in.readAllBytes();
+                        loaded = defineClass(name, bytes, 0, bytes.length);
+                    } catch (IOException e) {
+                        throw new ClassNotFoundException(name, e);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+    }
+}
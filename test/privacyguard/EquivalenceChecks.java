@@ -0,0 +1,1061 @@
+package privacyguard;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.EuclideanDistance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffSaver;
+import wekaknnvwc.VWC;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Equivalence Checks of the Optimised Paths
+ *
+ * Runs every optimised implementation against the path it replaced (or a
+ * direct reference computation) on generated data, and prints one ✓/✗ line
+ * per check. The data is generated with fixed seeds and covers the cases the
+ * fast paths special-case: duplicates, low cardinality, signed zeros and
+ * missing values.
+ *
+ * Usage: ant check (exits with status 1 when a check fails)
+ *
+ * @author Abdulmohsen Almalawi <balmalowy@kau.edu.sa>
+ */
+public class EquivalenceChecks {
+
+    private static int passed;
+    private static int failed;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("╔═══════════════════════════════════════════════════════════════╗");
+        System.out.println("║              PrivacyGuard Equivalence Checks                  ║");
+        System.out.println("╚═══════════════════════════════════════════════════════════════╝");
+
+        checkVWC1DSignedZeros();
+        checkVWC1DMatchesVWC();
+        checkLowCardinalitySignedZeros();
+        checkModelMatchesGenerator();
+        checkModelEdgeCases();
+        checkOutOfCoreMatchesInMemory();
+        checkFastArffLoaderMatchesWeka();
+        checkColumnarCache();
+        checkCorruptArchive();
+        checkFastArffWriterMatchesArffSaver();
+        checkReIdentificationBruteForce();
+        checkReIdentificationDeduplicated();
+        checkReIdentificationKDTree();
+        checkReIdentificationBounded();
+        checkLinkage();
+        checkLinkageManyLevels();
+        checkLinkageClassSizes();
+        checkLinkageMonteCarlo();
+
+        System.out.println();
+        System.out.println("  Passed: " + passed + ", Failed: " + failed);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    // ==================== VWC1D ====================
+
+    /**
+     * A column holding both 0.0 and -0.0 clusters without error, and both
+     * zeros land in the same cluster
+     */
+    private static void checkVWC1DSignedZeros() {
+        double[] column = new double[50];
+        for (int i = 0; i < column.length; i++) {
+            column[i] = (i % 5 == 0) ? 0.0 : (i % 5 == 1) ? -0.0 : i % 7;
+        }
+        try {
+            int[] assignments = new VWC1D(5).cluster(column);
+            check("VWC1D clusters a column with 0.0 and -0.0", assignments[0] == assignments[1]);
+        } catch (RuntimeException e) {
+            check("VWC1D clusters a column with 0.0 and -0.0 (" + e + ")", false);
+        }
+    }
+
+    /**
+     * VWC1D finds the same centroids as wekaknnvwc.VWC for the same initial
+     * width, and gives every row the same cluster unless the row is exactly
+     * halfway between two centroids (VWC breaks those ties by the traversal
+     * order of its ball tree)
+     */
+    private static void checkVWC1DMatchesVWC() throws Exception {
+        Random random = new Random(11);
+        int mismatches = 0;
+        for (int c = 0; c < 12; c++) {
+            double[] column = generateColumn(random, 1500, c);
+            int maxClusterSize = 2 + c % 4;
+
+            Instances single = singleColumn(column);
+            VWC vwc = new VWC(single);
+            vwc.setDistanceFunction(new EuclideanDistance(single));
+            vwc.setBeta(Math.max(1, column.length / 10));
+            vwc.setMaxClusterSize(maxClusterSize);
+            quietly(() -> vwc.buildClusterer(single));
+
+            double width = (Double) field(vwc, "fixedWidth");
+
+            int[] expected = vwc.getAssignments();
+            Instances expectedCentroids = vwc.getClusterCentroids();
+            VWC1D native1D = new VWC1D(maxClusterSize);
+            int[] actual = native1D.cluster(column, width);
+            double[] actualCentroids = native1D.getCentroids();
+
+            boolean same = expectedCentroids.numInstances() == actualCentroids.length;
+            for (int id = 0; same && id < actualCentroids.length; id++) {
+                same = expectedCentroids.instance(id).value(0) == actualCentroids[id];
+            }
+            for (int i = 0; same && i < column.length; i++) {
+                if (expected[i] != actual[i]) {
+                    double expectedDistance = Math.abs(actualCentroids[expected[i]] - column[i]);
+                    double actualDistance = Math.abs(actualCentroids[actual[i]] - column[i]);
+                    same = expectedDistance == actualDistance;
+                }
+            }
+            if (!same) {
+                mismatches++;
+            }
+        }
+        check("VWC1D matches wekaknnvwc.VWC on 12 columns", mismatches == 0);
+    }
+
+    // ==================== PRIVACYGUARD GENERATOR ====================
+
+    /**
+     * The default generator routes features with few distinct values to
+     * VWC1D; with both zeros in such a feature it must run, and equal values
+     * (0.0 and -0.0 included) must get the same cluster ID
+     */
+    private static void checkLowCardinalitySignedZeros() {
+        Random random = new Random(3);
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int f = 0; f < 3; f++) {
+            attributes.add(new Attribute("f" + f));
+        }
+        Instances data = new Instances("zeros", attributes, 400);
+        for (int i = 0; i < 400; i++) {
+            double[] row = new double[3];
+            for (int f = 0; f < 3; f++) {
+                int value = random.nextInt(3 + 5 * f);
+                row[f] = (value == 0 && random.nextBoolean()) ? -0.0 : value;
+            }
+            data.add(new DenseInstance(1.0, row));
+        }
+
+        try {
+            Instances synthetic = new PrivacyGuardGenerator(5, 0.5).generateSyntheticData(data);
+            boolean consistent = true;
+            for (int f = 0; f < 3; f++) {
+                Map<Double, Double> clusterOfValue = new HashMap<>();
+                for (int i = 0; i < data.numInstances(); i++) {
+                    double value = data.instance(i).value(f) + 0.0;
+                    Double cluster = clusterOfValue.putIfAbsent(value, synthetic.instance(i).value(f));
+                    if (cluster != null && cluster != synthetic.instance(i).value(f)) {
+                        consistent = false;
+                    }
+                }
+            }
+            check("Low-cardinality path clusters features with 0.0 and -0.0", consistent);
+        } catch (Exception e) {
+            check("Low-cardinality path clusters features with 0.0 and -0.0 (" + e + ")", false);
+        }
+    }
+
+    // ==================== PRIVACYGUARD MODEL ====================
+
+    /**
+     * transform(fit(x)) gives the same cluster IDs as generateSyntheticData(x).
+     * The native engine is seeded so that both calls find the same clusters.
+     */
+    private static void checkModelMatchesGenerator() throws Exception {
+        Random random = new Random(5);
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int f = 0; f < 6; f++) {
+            attributes.add(new Attribute("f" + f));
+        }
+        double[][] columns = new double[6][];
+        for (int f = 0; f < 4; f++) {
+            columns[f] = generateColumn(random, 2000, f);
+        }
+        columns[4] = new double[2000];
+        columns[5] = new double[2000];
+        for (int i = 0; i < 2000; i++) {
+            columns[4][i] = random.nextInt(2);
+            columns[5][i] = 7;
+        }
+        Instances data = new Instances("model", attributes, 2000);
+        for (int i = 0; i < 2000; i++) {
+            double[] row = new double[6];
+            for (int f = 0; f < 6; f++) {
+                row[f] = columns[f][i];
+            }
+            data.add(new DenseInstance(1.0, row));
+        }
+
+        PrivacyGuardGenerator generator = new PrivacyGuardGenerator(10, 0.5);
+        generator.setEngine(PrivacyGuardGenerator.ENGINE_NATIVE);
+        generator.setRandomSeed(42);
+        Instances generated = generator.generateSyntheticData(data);
+        Instances transformed = generator.fit(data).transform(data, 2);
+
+        boolean same = true;
+        for (int i = 0; same && i < data.numInstances(); i++) {
+            same = Arrays.equals(generated.instance(i).toDoubleArray(), transformed.instance(i).toDoubleArray());
+        }
+        check("PrivacyGuardModel transform(fit(x)) matches generateSyntheticData(x)", same);
+    }
+
+    /**
+     * A feature fitted without any values has no clusters: assign() reports
+     * -1 and transform() leaves the column missing. Equal centroids keep
+     * their IDs, and a value on them goes to the lowest one.
+     */
+    private static void checkModelEdgeCases() {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("value"));
+        Instances data = new Instances("empty", attributes, 3);
+        for (int i = 0; i < 3; i++) {
+            data.add(new DenseInstance(1.0, new double[] {i}));
+        }
+        PrivacyGuardModel model = new PrivacyGuardModel(1, -1);
+        model.setFeature(0, "value", new double[] {Double.NaN, Double.NaN}, new double[0]);
+        try {
+            Instances transformed = model.transform(data, 1);
+            check("PrivacyGuardModel handles a feature without clusters",
+                    model.assign(0, 1.0) == -1 && transformed.instance(0).isMissing(0));
+        } catch (Exception e) {
+            check("PrivacyGuardModel handles a feature without clusters (" + e + ")", false);
+        }
+
+        model.setFeature(0, "value", new double[] {0, 1, 2}, new double[] {2, 1, 1, 0});
+        check("PrivacyGuardModel keeps the IDs of equal centroids",
+                model.assign(0, 2.0) == 0 && model.assign(0, 1.0) == 1 && model.assign(0, 1.2) == 1
+                        && model.assign(0, 0.2) == 3);
+    }
+
+    // ==================== OUT-OF-CORE ====================
+
+    /**
+     * The out-of-core generator (spill files, external sort into weighted
+     * distinct values) writes the same normalised cluster IDs as VWC1D run on
+     * the distinct values reduced in memory. The file has several sort runs
+     * per column and features holding both 0.0 and -0.0.
+     */
+    private static void checkOutOfCoreMatchesInMemory() throws Exception {
+        int n = 40000;
+        long seed = 17;
+        Random random = new Random(9);
+        double[][] columns = new double[3][n];
+        File input = File.createTempFile("privacyguard-check-", ".arff");
+        File output = File.createTempFile("privacyguard-check-", ".arff");
+        try {
+            try (PrintWriter writer = new PrintWriter(input, "UTF-8")) {
+                writer.println("@relation zeros");
+                for (int f = 0; f < 3; f++) {
+                    writer.println("@attribute f" + f + " numeric");
+                }
+                writer.println("@attribute class {a,b}");
+                writer.println("@data");
+                for (int i = 0; i < n; i++) {
+                    StringBuilder row = new StringBuilder();
+                    for (int f = 0; f < 3; f++) {
+                        double value = (f == 0) ? random.nextInt(12) : random.nextInt(3000) / 10.0 - 50;
+                        if (value == 0 && random.nextBoolean()) {
+                            value = -0.0;
+                        }
+                        columns[f][i] = value;
+                        row.append(value).append(',');
+                    }
+                    writer.println(row.append(random.nextBoolean() ? "a" : "b"));
+                }
+            }
+
+            OutOfCorePrivacyGuard outOfCore = new OutOfCorePrivacyGuard(5, 1024 * 1024);
+            outOfCore.setRandomSeed(seed);
+            outOfCore.generate(input.getPath(), output.getPath());
+            Instances actual = new Instances(new BufferedReader(new FileReader(output)));
+
+            boolean same = actual.numInstances() == n;
+            for (int f = 0; same && f < 3; f++) {
+                double[] expected = clusterDistinctInMemory(columns[f], seed + f);
+                for (int i = 0; same && i < n; i++) {
+                    same = Math.abs(actual.instance(i).value(f) - expected[i]) < 1e-6;
+                }
+            }
+            check("Out-of-core generator matches VWC1D on the distinct values in memory", same);
+        } finally {
+            input.delete();
+            output.delete();
+        }
+    }
+
+    /**
+     * Normalised cluster ID of every row, clustering the column's weighted
+     * distinct values (-0.0 counted as 0.0) with VWC1D.clusterDistinct
+     */
+    private static double[] clusterDistinctInMemory(double[] column, long seed) {
+        double[] values = new double[column.length];
+        for (int i = 0; i < column.length; i++) {
+            values[i] = column[i] + 0.0;
+        }
+        double[] distinct = Arrays.stream(values).distinct().sorted().toArray();
+        int[] weights = new int[distinct.length];
+        long[] firstRows = new long[distinct.length];
+        Arrays.fill(firstRows, -1);
+        int[] index = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            index[i] = Arrays.binarySearch(distinct, values[i]);
+            weights[index[i]]++;
+            if (firstRows[index[i]] < 0) {
+                firstRows[index[i]] = i;
+            }
+        }
+
+        VWC1D engine = new VWC1D(5);
+        engine.setSeed(seed);
+        int[] clusterOfValue = engine.clusterDistinct(distinct, weights, firstRows, action -> {
+            for (int v : index) {
+                action.accept(v);
+            }
+        });
+        int maxId = Arrays.stream(clusterOfValue).max().getAsInt();
+
+        double[] normalised = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            normalised[i] = (maxId == 0) ? 0 : (double) clusterOfValue[index[i]] / maxId;
+        }
+        return normalised;
+    }
+
+    // ==================== ARFF I/O ====================
+
+    /**
+     * FastArffLoader parses every value bit-identically to Weka's ArffLoader,
+     * for number formats its String-free parser handles and those it hands to
+     * Double.parseDouble, with missing values and a quoted nominal class
+     */
+    private static void checkFastArffLoaderMatchesWeka() throws Exception {
+        String[] special = {"0", "-0", "-0.0", "1e308", "4.9E-324", "1.7976931348623157E308",
+                "0.1000000000000000055511151231257827", "123456789012345678901234567890",
+                "9007199254740993", "2.2250738585072011e-308", "-.5", "+3", "?"};
+        Random random = new Random(13);
+        File input = File.createTempFile("privacyguard-check-", ".arff");
+        try {
+            try (PrintWriter writer = new PrintWriter(input, "UTF-8")) {
+                writer.println("% generated by EquivalenceChecks");
+                writer.println("@relation formats");
+                for (int f = 0; f < 4; f++) {
+                    writer.println("@attribute f" + f + " numeric");
+                }
+                writer.println("@attribute class {'normal traffic',attack}");
+                writer.println();
+                writer.println("@data");
+                for (int i = 0; i < 30000; i++) {
+                    writer.print(random.nextInt(100000) - 50000);
+                    writer.print(',');
+                    writer.print(String.format(Locale.ROOT, "%.3f", random.nextGaussian() * 1000));
+                    writer.print(',');
+                    writer.print(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20));
+                    writer.print(',');
+                    writer.print(special[random.nextInt(special.length)]);
+                    writer.println(random.nextBoolean() ? ",'normal traffic'" : ",attack");
+                }
+            }
+
+            Instances expected = new Instances(new BufferedReader(new FileReader(input)));
+            FastArffLoader.ColumnarData actual = FastArffLoader.load(input.getPath(), 4);
+
+            boolean same = actual.numRows == expected.numInstances();
+            for (int i = 0; same && i < actual.numRows; i++) {
+                for (int a = 0; same && a < expected.numAttributes(); a++) {
+                    same = Double.compare(actual.value(i, a), expected.instance(i).value(a)) == 0;
+                }
+            }
+            check("FastArffLoader matches Weka's ArffLoader bit for bit", same);
+        } finally {
+            input.delete();
+        }
+    }
+
+    /**
+     * A stored ColumnarCache loads back the same values, and a failed store
+     * leaves no temporary file behind
+     */
+    private static void checkColumnarCache() throws Exception {
+        Random random = new Random(15);
+        File input = File.createTempFile("privacyguard-check-", ".arff");
+        File cache = ColumnarCache.cacheFile(input.getPath());
+        try {
+            try (PrintWriter writer = new PrintWriter(input, "UTF-8")) {
+                writer.println("@relation cache");
+                writer.println("@attribute f0 numeric");
+                writer.println("@attribute f1 numeric");
+                writer.println("@attribute class {a,b,c}");
+                writer.println("@data");
+                for (int i = 0; i < 501; i++) {
+                    writer.println(random.nextGaussian() + "," + (i % 9 == 0 ? "?" : random.nextInt(50))
+                            + "," + "abc".charAt(random.nextInt(3)));
+                }
+            }
+            FastArffLoader.ColumnarData data = FastArffLoader.load(input.getPath(), 1);
+
+            ColumnarCache.store(input.getPath(), data);
+            FastArffLoader.ColumnarData cached = ColumnarCache.load(input.getPath());
+            boolean same = cached != null && cached.numRows == data.numRows;
+            for (int i = 0; same && i < data.numRows; i++) {
+                for (int a = 0; same && a < 3; a++) {
+                    same = Double.compare(cached.value(i, a), data.value(i, a)) == 0;
+                }
+            }
+            check("ColumnarCache loads back the stored values", same);
+
+            // A non-empty directory in place of the cache makes the move fail
+            cache.delete();
+            File blocker = new File(cache, "blocker");
+            cache.mkdir();
+            blocker.createNewFile();
+            try {
+                ColumnarCache.store(input.getPath(), data);
+                check("ColumnarCache.store fails when the cache cannot be replaced", false);
+            } catch (IOException e) {
+                File[] leftovers = input.getParentFile().listFiles(
+                        (dir, name) -> name.startsWith(cache.getName() + ".tmp"));
+                check("ColumnarCache.store removes its temporary file on failure",
+                        leftovers != null && leftovers.length == 0);
+            } finally {
+                blocker.delete();
+            }
+        } finally {
+            cache.delete();
+            input.delete();
+        }
+    }
+
+    /**
+     * A corrupt .tar.xz (or a missing xz command) fails with an IOException
+     * that names xz, instead of hanging
+     */
+    private static void checkCorruptArchive() throws Exception {
+        File archive = File.createTempFile("privacyguard-check-", TarXzArchive.EXTENSION);
+        try {
+            try (PrintWriter writer = new PrintWriter(archive, "UTF-8")) {
+                writer.println("not an xz stream");
+            }
+            try (TarXzArchive reader = new TarXzArchive(archive.getPath())) {
+                reader.openEntry(".arff");
+                check("TarXzArchive rejects a corrupt archive", false);
+            } catch (IOException e) {
+                check("TarXzArchive rejects a corrupt archive naming xz", String.valueOf(e.getMessage()).contains("xz"));
+            }
+        } finally {
+            archive.delete();
+        }
+    }
+
+    /**
+     * FastArffWriter writes the same bytes as ArffSaver, plain and gzipped,
+     * including values close to a rounding tie, large and tiny magnitudes,
+     * signed zeros, missing values and quoted nominal labels
+     */
+    private static void checkFastArffWriterMatchesArffSaver() throws Exception {
+        Random random = new Random(19);
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int f = 0; f < 4; f++) {
+            attributes.add(new Attribute("f" + f));
+        }
+        attributes.add(new Attribute("class", Arrays.asList("normal traffic", "attack", "a,b")));
+        Instances data = new Instances("writer check", attributes, 20000);
+        double[] special = {0.0, -0.0, 0.0000005, -0.0000005, 1.2345675, 2.5e-7, 1e15, 123456789.1234565,
+                Double.MAX_VALUE, Double.MIN_VALUE, Double.NaN};
+        for (int i = 0; i < 20000; i++) {
+            data.add(new DenseInstance(1.0, new double[] {
+                    random.nextInt(1000),
+                    random.nextDouble(),
+                    random.nextGaussian() * Math.pow(10, random.nextInt(30) - 15),
+                    special[random.nextInt(special.length)],
+                    random.nextInt(3)}));
+        }
+        data.setClassIndex(4);
+
+        File expected = File.createTempFile("privacyguard-check-", ".arff");
+        File actual = File.createTempFile("privacyguard-check-", ".arff");
+        File actualGzip = File.createTempFile("privacyguard-check-", ".arff.gz");
+        try {
+            ArffSaver saver = new ArffSaver();
+            saver.setInstances(data);
+            saver.setFile(expected);
+            saver.writeBatch();
+            FastArffWriter.write(data, actual.getPath(), 4);
+            FastArffWriter.write(data, actualGzip.getPath(), 4);
+
+            byte[] expectedBytes = Files.readAllBytes(expected.toPath());
+            byte[] gzipBytes;
+            try (InputStream in = new GZIPInputStream(new FileInputStream(actualGzip))) {
+                gzipBytes = in.readAllBytes();
+            }
+            check("FastArffWriter writes the same bytes as ArffSaver",
+                    Arrays.equals(expectedBytes, Files.readAllBytes(actual.toPath())));
+            check("FastArffWriter writes the same bytes as ArffSaver, gzipped",
+                    Arrays.equals(expectedBytes, gzipBytes));
+        } finally {
+            expected.delete();
+            actual.delete();
+            actualGzip.delete();
+        }
+    }
+
+    // ==================== RE-IDENTIFICATION ====================
+
+    private static Instances reIdOriginal;
+    private static Instances reIdSynthetic;
+    private static int[] referenceRanks;
+    private static int[] referenceClosest;
+    private static double[] referenceDistances;
+
+    /**
+     * The brute-force scan through the blocked DistanceKernel (one distance
+     * vector per record) matches the original scan bit for bit
+     */
+    private static void checkReIdentificationBruteForce() throws Exception {
+        ReIdentificationAttack attack = runReIdentification(a -> {
+            a.setSearchMode(ReIdentificationAttack.SEARCH_BRUTE_FORCE);
+            a.setDeduplicate(false);
+        });
+        check("ReIdentificationAttack blocked brute force matches the original brute force",
+                matchesReference(attack));
+    }
+
+    /**
+     * Sharing one distance vector among identical synthetic records (the
+     * default) gives every copy the same results as the original scan
+     */
+    private static void checkReIdentificationDeduplicated() throws Exception {
+        ReIdentificationAttack attack = runReIdentification(a -> {
+            a.setSearchMode(ReIdentificationAttack.SEARCH_BRUTE_FORCE);
+            a.setDeduplicate(true);
+        });
+        check("ReIdentificationAttack deduplicated brute force matches the original brute force",
+                matchesReference(attack));
+    }
+
+    /**
+     * The "kdtree" search finds the same ranks, closest matches and distances
+     * as the original brute-force scan
+     */
+    private static void checkReIdentificationKDTree() throws Exception {
+        ReIdentificationAttack attack = runReIdentification(a -> a.setSearchMode(ReIdentificationAttack.SEARCH_KD_TREE));
+        check("ReIdentificationAttack kdtree matches the original brute force", matchesReference(attack));
+    }
+
+    /**
+     * With a rank bound K_max, both search modes report min(r_j, K_max + 1),
+     * flag exactly the ranks above K_max, and find the same closest matches
+     */
+    private static void checkReIdentificationBounded() throws Exception {
+        int maxRank = 10;
+        for (String mode : new String[] {ReIdentificationAttack.SEARCH_BRUTE_FORCE,
+                ReIdentificationAttack.SEARCH_KD_TREE}) {
+            ReIdentificationAttack attack = runReIdentification(a -> {
+                a.setSearchMode(mode);
+                a.setMaxRank(maxRank);
+            });
+            boolean same = Arrays.equals(referenceClosest, (int[]) field(attack, "closestMatchIndices"))
+                    && Arrays.equals(referenceDistances, (double[]) field(attack, "minDistances"));
+            for (int j = 0; same && j < referenceRanks.length; j++) {
+                same = attack.getRanks()[j] == Math.min(referenceRanks[j], maxRank + 1)
+                        && attack.getRankCapped()[j] == (referenceRanks[j] > maxRank);
+            }
+            check("ReIdentificationAttack " + mode + " with K_max " + maxRank + " matches the exact ranks", same);
+        }
+    }
+
+    /**
+     * Run the attack on the shared test data, silencing its progress output
+     */
+    private static ReIdentificationAttack runReIdentification(Consumer<ReIdentificationAttack> configure)
+            throws Exception {
+        if (reIdOriginal == null) {
+            prepareReIdentificationData();
+        }
+        ReIdentificationAttack attack = new ReIdentificationAttack(reIdOriginal, reIdSynthetic, 2);
+        configure.accept(attack);
+        quietly(attack::performAttack);
+        return attack;
+    }
+
+    /**
+     * Whether an attack reproduced the reference ranks, closest matches and distances
+     */
+    private static boolean matchesReference(ReIdentificationAttack attack) throws Exception {
+        return Arrays.equals(referenceRanks, attack.getRanks())
+                && Arrays.equals(referenceClosest, (int[]) field(attack, "closestMatchIndices"))
+                && Arrays.equals(referenceDistances, (double[]) field(attack, "minDistances"));
+    }
+
+    /**
+     * Original records, and synthetic records derived from them as the
+     * generators do: noisy, rounded, swapped with another record, identical
+     * copies, extra records without a source, and a few missing values. The
+     * reference results come from the original brute-force algorithm.
+     */
+    private static void prepareReIdentificationData() {
+        Random random = new Random(21);
+        int n = 1500;
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int f = 0; f < 6; f++) {
+            attributes.add(new Attribute("f" + f));
+        }
+        attributes.add(new Attribute("class", Arrays.asList("a", "b")));
+        reIdOriginal = new Instances("original", attributes, n);
+        for (int i = 0; i < n; i++) {
+            double[] row = new double[7];
+            for (int f = 0; f < 6; f++) {
+                row[f] = (f < 3) ? random.nextInt(20) : random.nextGaussian() * 10;
+            }
+            row[6] = random.nextInt(2);
+            reIdOriginal.add(new DenseInstance(1.0, row));
+        }
+        reIdOriginal.setClassIndex(6);
+
+        reIdSynthetic = new Instances(reIdOriginal);
+        for (int j = 0; j < n; j++) {
+            for (int f = 0; f < 6; f++) {
+                double value = reIdOriginal.instance(j).value(f);
+                switch (j % 5) {
+                    case 1:
+                        reIdSynthetic.instance(j).setValue(f, value + random.nextGaussian() * 0.1);
+                        break;
+                    case 2:
+                        reIdSynthetic.instance(j).setValue(f, Math.round(value));
+                        break;
+                    case 3:
+                        reIdSynthetic.instance(j).setValue(f, reIdOriginal.instance((j * 7) % n).value(f));
+                        break;
+                    case 4:
+                        reIdSynthetic.instance(j).setValue(f, reIdSynthetic.instance(j - j % 20).value(f));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        for (int extra = 0; extra < 50; extra++) {
+            reIdSynthetic.add(new DenseInstance(reIdSynthetic.instance(extra)));
+        }
+        for (int q = 0; q < 30; q++) {
+            reIdSynthetic.instance(random.nextInt(reIdSynthetic.numInstances())).setMissing(random.nextInt(6));
+            reIdOriginal.instance(random.nextInt(n)).setMissing(random.nextInt(6));
+        }
+
+        int m = reIdSynthetic.numInstances();
+        referenceRanks = new int[m];
+        referenceClosest = new int[m];
+        referenceDistances = new double[m];
+        for (int j = 0; j < m; j++) {
+            double[] distances = new double[n];
+            for (int i = 0; i < n; i++) {
+                distances[i] = referenceDistance(reIdSynthetic.instance(j), reIdOriginal.instance(i));
+            }
+            int closest = 0;
+            for (int i = 1; i < n; i++) {
+                if (distances[i] < distances[closest]) {
+                    closest = i;
+                }
+            }
+            referenceClosest[j] = closest;
+            referenceDistances[j] = distances[closest];
+            if (j < n) {
+                int rank = 1;
+                for (int i = 0; i < n; i++) {
+                    if (i != j && distances[i] < distances[j]) {
+                        rank++;
+                    }
+                }
+                referenceRanks[j] = rank;
+            } else {
+                referenceRanks[j] = n;
+            }
+        }
+    }
+
+    /**
+     * Distance of the original ReIdentificationAttack: root mean square
+     * difference over the features both records have
+     */
+    private static double referenceDistance(Instance a, Instance b) {
+        double sumSquaredDiff = 0.0;
+        int numAttributes = 0;
+        for (int f = 0; f < a.numAttributes(); f++) {
+            if (f == a.classIndex()) continue;
+            double v1 = a.value(f);
+            double v2 = b.value(f);
+            if (!Double.isNaN(v1) && !Double.isNaN(v2)) {
+                sumSquaredDiff += Math.pow(v1 - v2, 2);
+                numAttributes++;
+            }
+        }
+        return numAttributes > 0 ? Math.sqrt(sumSquaredDiff / numAttributes) : Double.MAX_VALUE;
+    }
+
+    // ==================== LINKAGE ====================
+
+    private static Instances linkageOriginal;
+    private static Instances linkageSynthetic;
+
+    /**
+     * The hash-indexed LinkageAttack reports the same statistics as the
+     * original scan at the default knowledge levels
+     */
+    private static void checkLinkage() throws Exception {
+        LinkageAttack attack = runLinkage(a -> { });
+        check("LinkageAttack matches the original scan at the default levels",
+                matchesLinkageReference(attack, new double[] {0.25, 0.5, 0.75}));
+    }
+
+    /**
+     * Evaluating many knowledge levels in one pass (matches and classes
+     * refined from level to level) gives every level the original statistics
+     */
+    private static void checkLinkageManyLevels() throws Exception {
+        double[] ratios = {0.1, 0.3, 0.5, 0.6, 0.9, 1.0};
+        LinkageAttack attack = runLinkage(a -> a.setKnowledgeLevels(ratios));
+        check("LinkageAttack matches the original scan at " + ratios.length + " levels in one pass",
+                matchesLinkageReference(attack, ratios));
+    }
+
+    /**
+     * The primitive equivalence classes have the sizes of the original
+     * string-keyed grouping: same minimum, median, 95th percentile and
+     * number of singleton classes at every level
+     */
+    private static void checkLinkageClassSizes() throws Exception {
+        double[] ratios = {0.1, 0.25, 0.5, 0.75, 1.0};
+        LinkageAttack attack = runLinkage(a -> a.setKnowledgeLevels(ratios));
+        Map<String, Object> stats = attack.getDetailedStatistics();
+        boolean same = true;
+        for (double ratio : ratios) {
+            int[] sizes = referenceClassSizes(linkageQuasiIdentifiers(ratio, new Random(42)));
+            String prefix = "Knowledge_" + (int) (ratio * 100) + "%_";
+            int singletons = 0;
+            while (singletons < sizes.length && sizes[singletons] == 1) {
+                singletons++;
+            }
+            double median = sizes[(int) Math.ceil(0.5 * sizes.length) - 1];
+            double p95 = sizes[(int) Math.ceil(0.95 * sizes.length) - 1];
+            same &= Double.valueOf(sizes[0]).equals(stats.get(prefix + "Min_Group_Size"))
+                    && Double.valueOf(median).equals(stats.get(prefix + "Median_Group_Size"))
+                    && Double.valueOf(p95).equals(stats.get(prefix + "P95_Group_Size"))
+                    && Double.valueOf(singletons).equals(stats.get(prefix + "Singleton_Classes"));
+        }
+        check("LinkageAttack class sizes match the original string-keyed grouping", same);
+    }
+
+    /**
+     * Monte-Carlo trials (range-coded attributes, records grouped by class)
+     * average the statistics the original scan gives for each trial's random
+     * quasi-identifiers; trial t shuffles the attributes with seed + t
+     */
+    private static void checkLinkageMonteCarlo() throws Exception {
+        int trials = 10;
+        long seed = 7;
+        double[] ratios = {0.25, 0.5, 0.75};
+        LinkageAttack attack = runLinkage(a -> a.setMonteCarlo(trials, seed));
+        Map<String, Object> stats = attack.getDetailedStatistics();
+        boolean same = true;
+        for (double ratio : ratios) {
+            double[] sums = new double[4];
+            double worstRisk = Double.NEGATIVE_INFINITY;
+            for (int t = 0; t < trials; t++) {
+                double[] reference = referenceLinkage(linkageQuasiIdentifiers(ratio, new Random(seed + t)));
+                for (int s = 0; s < 4; s++) {
+                    sums[s] += reference[s];
+                }
+                worstRisk = Math.max(worstRisk, (0.7 * reference[0]) + (0.3 * reference[2]));
+            }
+            String prefix = "Knowledge_" + (int) (ratio * 100) + "%_";
+            same &= close(sums[0] / trials, stats.get(prefix + "MC_Mean_Unique_Match_Rate"))
+                    && close(sums[1] / trials, stats.get(prefix + "MC_Mean_Correct_Match_Rate"))
+                    && close(sums[2] / trials, stats.get(prefix + "MC_Mean_Avg_Linkability"))
+                    && close(sums[3] / trials, stats.get(prefix + "MC_Mean_Avg_Group_Size"))
+                    && close(worstRisk, stats.get(prefix + "MC_Worst_Risk"));
+        }
+        check("LinkageAttack Monte-Carlo trials match the original scan on the same subsets", same);
+    }
+
+    /**
+     * Equal up to rounding (the trials sum linkability scores in another order)
+     */
+    private static boolean close(double expected, Object actual) {
+        return actual instanceof Double && Math.abs(expected - (Double) actual) <= 1e-12 * Math.max(1, Math.abs(expected));
+    }
+
+    /**
+     * Run the attack on the shared test data, silencing its progress output
+     */
+    private static LinkageAttack runLinkage(Consumer<LinkageAttack> configure) throws Exception {
+        if (linkageOriginal == null) {
+            prepareLinkageData();
+        }
+        LinkageAttack attack = new LinkageAttack(linkageOriginal, linkageSynthetic);
+        configure.accept(attack);
+        quietly(attack::performAttack);
+        return attack;
+    }
+
+    /**
+     * Whether the attack's statistics equal those of the original algorithm at
+     * every knowledge level, and its risk score that of the highest level
+     */
+    private static boolean matchesLinkageReference(LinkageAttack attack, double[] ratios) {
+        Map<String, Object> stats = attack.getDetailedStatistics();
+        boolean same = true;
+        double[] reference = null;
+        for (double ratio : ratios) {
+            reference = referenceLinkage(linkageQuasiIdentifiers(ratio, new Random(42)));
+            String prefix = "Knowledge_" + (int) (ratio * 100) + "%_";
+            same &= Double.valueOf(reference[0]).equals(stats.get(prefix + "Unique_Match_Rate"))
+                    && Double.valueOf(reference[1]).equals(stats.get(prefix + "Correct_Match_Rate"))
+                    && Double.valueOf(reference[2]).equals(stats.get(prefix + "Avg_Linkability"))
+                    && Double.valueOf(reference[3]).equals(stats.get(prefix + "Avg_Group_Size"));
+        }
+        double risk = (0.7 * reference[0]) + (0.3 * reference[2]);
+        return same && Double.valueOf(risk).equals(stats.get("Overall_Privacy_Risk_Score"));
+    }
+
+    /**
+     * Quasi-identifiers of a knowledge level: the first attributes of the
+     * non-class attributes shuffled with the given generator
+     */
+    private static List<Integer> linkageQuasiIdentifiers(double ratio, Random random) {
+        List<Integer> attributes = new ArrayList<>();
+        for (int a = 0; a < linkageOriginal.numAttributes(); a++) {
+            if (a != linkageOriginal.classIndex()) {
+                attributes.add(a);
+            }
+        }
+        Collections.shuffle(attributes, random);
+        int numKnown = Math.max(1, (int) (ratio * attributes.size()));
+        return attributes.subList(0, Math.min(numKnown, attributes.size()));
+    }
+
+    /**
+     * The original linkage attack on one quasi-identifier set: every original
+     * record is compared with every synthetic record (tolerance 0.0001), and
+     * equivalence classes are grouped on the values' string form
+     *
+     * @return {unique match rate, correct match rate, average linkability,
+     *          average equivalence class size}
+     */
+    private static double[] referenceLinkage(List<Integer> quasiIdentifiers) {
+        int numRecords = Math.min(linkageOriginal.numInstances(), linkageSynthetic.numInstances());
+        int uniqueMatches = 0;
+        int correctUniqueMatches = 0;
+        List<Double> linkabilityScores = new ArrayList<>();
+        for (int origIdx = 0; origIdx < numRecords; origIdx++) {
+            Instance original = linkageOriginal.instance(origIdx);
+            List<Integer> matches = new ArrayList<>();
+            for (int synIdx = 0; synIdx < linkageSynthetic.numInstances(); synIdx++) {
+                boolean allMatch = true;
+                for (int a : quasiIdentifiers) {
+                    if (Math.abs(original.value(a) - linkageSynthetic.instance(synIdx).value(a)) > 0.0001) {
+                        allMatch = false;
+                        break;
+                    }
+                }
+                if (allMatch) {
+                    matches.add(synIdx);
+                }
+            }
+            if (matches.isEmpty()) {
+                linkabilityScores.add(0.0);
+            } else if (matches.size() == 1) {
+                uniqueMatches++;
+                if (matches.get(0) == origIdx) {
+                    correctUniqueMatches++;
+                }
+                linkabilityScores.add(1.0);
+            } else {
+                linkabilityScores.add(1.0 / matches.size());
+            }
+        }
+
+        int[] classSizes = referenceClassSizes(quasiIdentifiers);
+        return new double[] {
+                (double) uniqueMatches / numRecords,
+                (double) correctUniqueMatches / numRecords,
+                linkabilityScores.stream().mapToDouble(Double::doubleValue).average().orElse(0.0),
+                (double) linkageSynthetic.numInstances() / classSizes.length
+        };
+    }
+
+    /**
+     * Sizes of the synthetic equivalence classes, grouped as the original
+     * attack grouped them (on the string form of the values), in increasing order
+     */
+    private static int[] referenceClassSizes(List<Integer> quasiIdentifiers) {
+        Map<String, Integer> equivalenceClasses = new HashMap<>();
+        for (int i = 0; i < linkageSynthetic.numInstances(); i++) {
+            StringBuilder key = new StringBuilder();
+            for (int a : quasiIdentifiers) {
+                key.append(linkageSynthetic.instance(i).value(a)).append("|");
+            }
+            equivalenceClasses.merge(key.toString(), 1, Integer::sum);
+        }
+        return equivalenceClasses.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    /**
+     * Original records over few distinct values, and synthetic records that
+     * are exact copies, copies shifted around the 0.0001 match tolerance,
+     * rounded, swapped, scaled far out of range or partly missing
+     */
+    private static void prepareLinkageData() {
+        Random random = new Random(23);
+        int n = 1200;
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int f = 0; f < 8; f++) {
+            attributes.add(new Attribute("f" + f));
+        }
+        attributes.add(new Attribute("class", Arrays.asList("a", "b")));
+        linkageOriginal = new Instances("original", attributes, n);
+        for (int i = 0; i < n; i++) {
+            double[] row = new double[9];
+            for (int f = 0; f < 8; f++) {
+                row[f] = (f < 4) ? random.nextInt(6)
+                        : (f < 6) ? random.nextInt(50)
+                        : (f < 7) ? Math.round(random.nextGaussian() * 100) / 100.0
+                        : random.nextDouble() * 1000;
+            }
+            if (row[0] == 0 && random.nextBoolean()) {
+                row[0] = -0.0;
+            }
+            row[8] = random.nextInt(2);
+            linkageOriginal.add(new DenseInstance(1.0, row));
+        }
+        linkageOriginal.setClassIndex(8);
+
+        double[] offsets = {0.0001, -0.0001, 0.00009999, 0.00010001, 0.0002, 0.00005, 1e-12};
+        linkageSynthetic = new Instances(linkageOriginal);
+        for (int i = 0; i < n; i++) {
+            Instance record = linkageSynthetic.instance(i);
+            for (int f = 0; f < 8; f++) {
+                double value = record.value(f);
+                switch (i % 6) {
+                    case 1:
+                        record.setValue(f, value + offsets[random.nextInt(offsets.length)]);
+                        break;
+                    case 2:
+                        record.setValue(f, Math.round(value));
+                        break;
+                    case 3:
+                        record.setValue(f, linkageOriginal.instance((i * 7) % n).value(f));
+                        break;
+                    case 4:
+                        if (random.nextInt(10) == 0) record.setValue(f, value * 1e12);
+                        break;
+                    case 5:
+                        if (random.nextInt(20) == 0) record.setMissing(f);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        for (int q = 0; q < 40; q++) {
+            linkageOriginal.instance(random.nextInt(n)).setMissing(random.nextInt(8));
+        }
+    }
+
+    // ==================== DATA ====================
+
+    /**
+     * Column of one of several shapes: few distinct values, rounded uniform,
+     * skewed with ties, and a wide uniform range
+     */
+    static double[] generateColumn(Random random, int n, int shape) {
+        double[] column = new double[n];
+        for (int i = 0; i < n; i++) {
+            switch (shape % 4) {
+                case 0:
+                    column[i] = random.nextInt(6);
+                    break;
+                case 1:
+                    column[i] = Math.round(random.nextDouble() * 200) / 10.0;
+                    break;
+                case 2:
+                    column[i] = Math.floor(Math.exp(random.nextGaussian() * 2));
+                    break;
+                default:
+                    column[i] = random.nextDouble() * 1000 - 500;
+                    break;
+            }
+        }
+        return column;
+    }
+
+    static Instances singleColumn(double[] column) {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("value"));
+        Instances data = new Instances("column", attributes, column.length);
+        for (double value : column) {
+            data.add(new DenseInstance(1.0, new double[] {value}));
+        }
+        return data;
+    }
+
+    /**
+     * Run a step with System.out silenced (the attacks and VWC report progress)
+     */
+    static void quietly(Step step) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            step.run();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    interface Step {
+        void run() throws Exception;
+    }
+
+    static Object field(Object target, String name) throws Exception {
+        java.lang.reflect.Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(target);
+    }
+
+    static void check(String name, boolean ok) {
+        if (ok) {
+            passed++;
+            System.out.println("  ✓ " + name);
+        } else {
+            failed++;
+            System.out.println("  ✗ " + name);
+        }
+    }
+}